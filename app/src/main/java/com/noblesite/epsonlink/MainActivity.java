@@ -3,43 +3,20 @@ package com.noblesite.epsonlink;
 import android.os.Bundle;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
-import android.app.PendingIntent;
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.hardware.usb.UsbDevice;
-import android.hardware.usb.UsbManager;
-import android.util.Log;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.ViewModelProvider;
 import com.noblesite.epsonlink.viewmodel.PrinterViewModel;
 import com.noblesite.epsonlink.web.EpsonLinkWebViewClient;
 import com.noblesite.epsonlink.web.CustomWebChromeClient;
+import com.noblesite.epsonlink.web.EpsonLinkJsBridge;
+import com.noblesite.epsonlink.web.StatusPushChannel;
 
 public class MainActivity extends AppCompatActivity {
 
-    private static final String USB_PERMISSION_ACTION = "com.noblesite.epsonlink.USB_PERMISSION";
     private PrinterViewModel viewModel;
-    private final BroadcastReceiver usbPermissionReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            String action = intent.getAction();
-            if (USB_PERMISSION_ACTION.equals(action)) {
-                UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
-                if (device != null && intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false)) {
-                    Log.i("MainActivity", "USB permission granted.");
-                    viewModel.setUsbPermissionGranted(true);
-                } else {
-                    Log.e("MainActivity", "USB permission denied.");
-                    viewModel.setUsbPermissionGranted(false);
-                }
-            }
-        }
-    };
-
     private WebView webView;
+    private StatusPushChannel statusPushChannel;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -48,8 +25,8 @@ public class MainActivity extends AppCompatActivity {
 
         viewModel = new ViewModelProvider(this).get(PrinterViewModel.class);
 
-        IntentFilter filter = new IntentFilter(USB_PERMISSION_ACTION);
-        registerReceiver(usbPermissionReceiver, filter, Context.RECEIVER_EXPORTED);
+        // Reads the config and binds the print service, which sets up printers in the background.
+        viewModel.start();
 
         webView = findViewById(R.id.epsonLink);
 
@@ -57,8 +34,9 @@ public class MainActivity extends AppCompatActivity {
         webSettings.setJavaScriptEnabled(true);
         webSettings.setCacheMode(WebSettings.LOAD_DEFAULT);
 
-        webView.setWebViewClient(new EpsonLinkWebViewClient(viewModel, ""));
+        webView.setWebViewClient(new EpsonLinkWebViewClient(viewModel, viewModel.getHomeUrl()));
         webView.setWebChromeClient(new CustomWebChromeClient());
+        webView.addJavascriptInterface(new EpsonLinkJsBridge(viewModel, webView), EpsonLinkJsBridge.NAME);
 
         viewModel.getWebUrlToLoad().observe(this, url -> {
             if (url != null && !url.isEmpty()) {
@@ -66,16 +44,16 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        viewModel.loadAppConfig();
-        //TODO: Update to not hardcode vendor ID
-        viewModel.requestUsbPermissionIfNeeded(1208);
+        statusPushChannel = new StatusPushChannel(webView, StatusPushChannel.DEFAULT_DEBOUNCE_MS);
+        viewModel.getPrinterStatus().observe(this, statusPushChannel::publish);
+        viewModel.getRequestedStatus().observe(this, statusPushChannel::publishNow);
 
-        viewModel.connectPrinter();
+        statusPushChannel.setDebounceMs(viewModel.getStatusDebounceMs());
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        unregisterReceiver(usbPermissionReceiver);
+        statusPushChannel.cancel();
     }
 }
@@ -0,0 +1,106 @@
+package com.noblesite.epsonlink.image;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Base64;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes base64 or asset images with BitmapFactory, scales them to the
+ * print width and dithers them. Results are cached by source hash, so a
+ * repeated logo is decoded once.
+ */
+public class BitmapRasterSource implements RasterSource {
+
+    private static final String ASSET_PREFIX = "asset:";
+
+    private final AssetManager assets;
+    private final RasterCache cache;
+    private final int printWidthDots;
+
+    public BitmapRasterSource(AssetManager assets, RasterCache cache, int printWidthDots) {
+        this.assets = assets;
+        this.cache = cache;
+        this.printWidthDots = printWidthDots;
+    }
+
+    @Override
+    public MonoRaster load(String source, int width) throws IOException {
+        int targetWidth = width > 0 ? Math.min(width, printWidthDots) : printWidthDots;
+        String key = RasterCache.key(source, targetWidth);
+        MonoRaster raster = cache.get(key);
+        if (raster != null) {
+            return raster;
+        }
+
+        Bitmap bitmap = decode(source, targetWidth);
+        try {
+            int w = Math.min(targetWidth, bitmap.getWidth());
+            int h = Math.max(1, Math.round(bitmap.getHeight() * (w / (float) bitmap.getWidth())));
+            Bitmap scaled = w == bitmap.getWidth() ? bitmap : Bitmap.createScaledBitmap(bitmap, w, h, true);
+            int[] pixels = new int[w * h];
+            scaled.getPixels(pixels, 0, w, 0, 0, w, h);
+            if (scaled != bitmap) {
+                scaled.recycle();
+            }
+            raster = Dithering.floydSteinberg(Dithering.luminance(pixels), w, h);
+        } finally {
+            bitmap.recycle();
+        }
+        cache.put(key, raster);
+        return raster;
+    }
+
+    private Bitmap decode(String source, int targetWidth) throws IOException {
+        if (source.startsWith(ASSET_PREFIX)) {
+            String path = source.substring(ASSET_PREFIX.length());
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            try (InputStream in = assets.open(path)) {
+                BitmapFactory.decodeStream(in, null, bounds);
+            }
+            BitmapFactory.Options options = sampledOptions(bounds, targetWidth);
+            try (InputStream in = assets.open(path)) {
+                return checkDecoded(BitmapFactory.decodeStream(in, null, options), source);
+            }
+        }
+
+        int comma = source.startsWith("data:") ? source.indexOf(',') : -1;
+        byte[] bytes;
+        try {
+            bytes = Base64.decode(comma >= 0 ? source.substring(comma + 1) : source, Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid base64 image data", e);
+        }
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, bounds);
+        return checkDecoded(
+            BitmapFactory.decodeByteArray(bytes, 0, bytes.length, sampledOptions(bounds, targetWidth)),
+            "base64 image");
+    }
+
+    /**
+     * Lets BitmapFactory subsample large images so we never decode far more pixels than we print.
+     */
+    private static BitmapFactory.Options sampledOptions(BitmapFactory.Options bounds, int targetWidth) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        int sampleSize = 1;
+        while (bounds.outWidth / (sampleSize * 2) >= targetWidth) {
+            sampleSize *= 2;
+        }
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        return options;
+    }
+
+    private static Bitmap checkDecoded(Bitmap bitmap, String source) throws IOException {
+        if (bitmap == null) {
+            throw new IOException("Could not decode " + source);
+        }
+        return bitmap;
+    }
+}
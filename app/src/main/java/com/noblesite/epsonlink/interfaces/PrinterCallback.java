@@ -1,4 +0,0 @@
-package com.noblesite.epsonlink.interfaces;
-
-public class PrinterCallback {
-}
@@ -1,4 +0,0 @@
-package com.noblesite.epsonlink.model;
-
-public class PrinterStatus {
-}
@@ -0,0 +1,43 @@
+package com.noblesite.epsonlink.repository;
+
+import com.epson.epos2.Epos2Exception;
+import com.noblesite.epsonlink.retry.ErrorDisposition;
+
+/**
+ * Maps ePOS2 error statuses onto retry dispositions.
+ */
+public final class Epos2Errors {
+
+    private Epos2Errors() {
+    }
+
+    /**
+     * @param errorStatus An Epos2Exception.getErrorStatus() value.
+     */
+    public static ErrorDisposition classify(int errorStatus) {
+        switch (errorStatus) {
+            case Epos2Exception.ERR_PARAM:
+            case Epos2Exception.ERR_TYPE_INVALID:
+            case Epos2Exception.ERR_UNSUPPORTED:
+                // The command itself is wrong; the same job would fail again.
+                return ErrorDisposition.FATAL;
+            case Epos2Exception.ERR_NOT_FOUND:
+            case Epos2Exception.ERR_RECOVERY_FAILURE:
+                // Device unplugged, powered off or stuck in an error it cannot clear itself.
+                return ErrorDisposition.NEEDS_OPERATOR;
+            default:
+                // Timeouts, busy device, dropped link, out of memory and generic failures.
+                return ErrorDisposition.RETRYABLE;
+        }
+    }
+
+    /**
+     * @return true if the error means the connection itself is broken and must be reopened.
+     */
+    public static boolean breaksConnection(int errorStatus) {
+        return errorStatus == Epos2Exception.ERR_DISCONNECT
+            || errorStatus == Epos2Exception.ERR_CONNECT
+            || errorStatus == Epos2Exception.ERR_ILLEGAL
+            || errorStatus == Epos2Exception.ERR_NOT_FOUND;
+    }
+}
@@ -0,0 +1,266 @@
+package com.noblesite.epsonlink.repository;
+
+import android.hardware.usb.UsbDevice;
+import android.util.Log;
+
+import com.epson.epos2.Epos2Exception;
+import com.epson.epos2.printer.Printer;
+import com.noblesite.epsonlink.metrics.PrintMetrics;
+import com.noblesite.epsonlink.model.JobPriority;
+import com.noblesite.epsonlink.model.PrintJob;
+import com.noblesite.epsonlink.model.PrinterStatus;
+import com.noblesite.epsonlink.queue.JobDispatcher;
+import com.noblesite.epsonlink.queue.PrintJobQueue;
+import com.noblesite.epsonlink.queue.PrintJournal;
+import com.noblesite.epsonlink.queue.PrinterUnavailableException;
+import com.noblesite.epsonlink.retry.CircuitBreaker;
+import com.noblesite.epsonlink.retry.ErrorDisposition;
+import com.noblesite.epsonlink.transport.PrintPipeline;
+import com.noblesite.epsonlink.transport.PrinterTransport;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One attached USB printer: its device, its own {@link PrinterSession}
+ * (with circuit breaker) and its own job queue and worker thread. Its
+ * worker runs jobs through the shared {@link PrintPipeline}, with this
+ * endpoint as the ePOS2 {@link PrinterTransport}.
+ */
+public class PrinterEndpoint implements JobDispatcher.Target, PrinterTransport {
+    private static final String TAG = "PrinterEndpoint";
+    // Longest a job may take to print before the next is sent anyway; a 5,000-line report takes about a minute.
+    private static final long COMPLETION_TIMEOUT_MS = 90_000;
+
+    private final UsbDevice device;
+    private final String usbTarget;
+    private final PrinterSession session;
+    private final PrintJobQueue queue;
+    private final PrintMetrics metrics = new PrintMetrics();
+    // When the last sendData returned, until the printer's receive callback; 0 when none is pending.
+    private final AtomicLong sentAtNanos = new AtomicLong();
+    private final Object completionLock = new Object();
+    private volatile boolean connectedBefore;
+    private volatile Printer printer;
+    private volatile String role;
+    private volatile PrinterStatus status = PrinterStatus.DISCONNECTED;
+
+    PrinterEndpoint(UsbDevice device, long idleTimeoutMs, PrintPipeline pipeline, PrintJournal journal) {
+        this.device = device;
+        this.usbTarget = "USB: " + device.getDeviceName();
+        this.session = new PrinterSession(idleTimeoutMs);
+        this.session.setTarget(usbTarget);
+        this.queue = new PrintJobQueue(device.getDeviceName(), PrintJobQueue.DEFAULT_CAPACITY,
+            pipeline.processorFor(this, metrics), journal);
+        this.queue.setLookahead(next -> pipeline.prepare(next, metrics));
+    }
+
+    public UsbDevice getDevice() {
+        return device;
+    }
+
+    public String getDeviceName() {
+        return device.getDeviceName();
+    }
+
+    PrinterSession getSession() {
+        return session;
+    }
+
+    PrintJobQueue getQueue() {
+        return queue;
+    }
+
+    /**
+     * @return Metrics recorded by this printer's worker.
+     */
+    public PrintMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void ensureReady() throws PrinterUnavailableException {
+        if (printer == null) {
+            // Lets the job fail over to another printer, or hold until this one is set up.
+            throw new PrinterUnavailableException("Printer " + getDeviceName() + " not initialized");
+        }
+    }
+
+    /**
+     * Waits for the receive callback of the job sent last. The worker renders
+     * the next job before calling this, so it is sent as soon as the printer
+     * confirms the previous one.
+     */
+    @Override
+    public void awaitIdle() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(COMPLETION_TIMEOUT_MS);
+        synchronized (completionLock) {
+            while (sentAtNanos.get() != 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    Log.w(TAG, "awaitIdle: No completion from " + getDeviceName() + " after "
+                        + COMPLETION_TIMEOUT_MS + " ms, sending anyway");
+                    sentAtNanos.set(0);
+                    return;
+                }
+                TimeUnit.NANOSECONDS.timedWait(completionLock, remaining);
+            }
+        }
+    }
+
+    /**
+     * Sends the commands over this printer's kept-open session. ePOS2 errors
+     * are classified: fatal ones fail the job, the rest hold or move it.
+     */
+    @Override
+    public void send(String jobId, byte[] commands) throws Exception {
+        PrinterStatus current = status;
+        if (current.getConnection() == Printer.TRUE && !current.isReadyToPrint()) {
+            throw new PrinterUnavailableException("Printer not ready: " + current.toJson());
+        }
+        CircuitBreaker breaker = session.getCircuitBreaker();
+        Printer connected = session.acquire();
+        if (connected == null) {
+            // Either the connect attempt failed or the breaker skipped it; retry after the cool-down.
+            throw new PrinterUnavailableException("Printer not connected",
+                ErrorDisposition.RETRYABLE, breaker.remainingOpenMs(), null);
+        }
+
+        try {
+            connected.addCommand(commands);
+            // Set before sending: the receive callback may report completion before sendData returns.
+            sentAtNanos.set(System.nanoTime());
+            connected.sendData(Printer.PARAM_DEFAULT);
+            breaker.recordSuccess();
+            Log.i(TAG, "send: Print job " + jobId + " sent to " + getDeviceName());
+
+        } catch (Epos2Exception e) {
+            // Nothing was sent, so no completion is coming.
+            sentAtNanos.set(0);
+            int errorStatus = e.getErrorStatus();
+            ErrorDisposition disposition = Epos2Errors.classify(errorStatus);
+            Log.e(TAG, "send: Epos2Exception " + errorStatus + " (" + disposition + ")", e);
+            if (Epos2Errors.breaksConnection(errorStatus)) {
+                session.invalidate();
+            }
+            if (disposition == ErrorDisposition.FATAL) {
+                throw e;
+            }
+            breaker.recordFailure();
+            throw new PrinterUnavailableException("Print failed with ePOS2 error " + errorStatus,
+                disposition, breaker.remainingOpenMs(), e);
+        } finally {
+            // The connection outlives the job, so drop its commands from the SDK buffer.
+            connected.clearCommandBuffer();
+            session.release();
+        }
+    }
+
+    /**
+     * Called from the SDK's receive callback once the printer has finished a job.
+     */
+    void onPrintCompleted() {
+        long sent = sentAtNanos.getAndSet(0);
+        if (sent != 0) {
+            metrics.record(PrintMetrics.Stage.COMPLETION, System.nanoTime() - sent);
+        }
+        synchronized (completionLock) {
+            completionLock.notifyAll();
+        }
+    }
+
+    /**
+     * Called when the connection drops; no receive callback will come for the job in flight.
+     */
+    void onDisconnected() {
+        sentAtNanos.set(0);
+        synchronized (completionLock) {
+            completionLock.notifyAll();
+        }
+    }
+
+    /**
+     * Called each time the session opens a connection.
+     */
+    void onConnected() {
+        if (connectedBefore) {
+            metrics.reconnected();
+        }
+        connectedBefore = true;
+    }
+
+    public Printer getPrinter() {
+        return printer;
+    }
+
+    void setPrinter(Printer printer) {
+        this.printer = printer;
+        session.setPrinter(printer);
+    }
+
+    @Override
+    public String getRole() {
+        return role;
+    }
+
+    void setRole(String role) {
+        this.role = role;
+    }
+
+    /**
+     * @return The latest status reported by this printer.
+     */
+    public PrinterStatus getStatus() {
+        return status;
+    }
+
+    void setStatus(PrinterStatus status) {
+        this.status = status;
+    }
+
+    /**
+     * Initialized, circuit not open, and not connected-but-not-ready
+     * (cover open, paper out). A printer that is merely disconnected counts
+     * as available; its session reconnects on the next job.
+     */
+    @Override
+    public boolean isAvailable() {
+        if (printer == null) return false;
+        if (session.getCircuitBreaker().remainingOpenMs() > 0) return false;
+        PrinterStatus current = status;
+        return current.getConnection() != Printer.TRUE || current.isReadyToPrint();
+    }
+
+    @Override
+    public int queuedJobs() {
+        return queue.size();
+    }
+
+    @Override
+    public boolean offer(PrintJob job) {
+        return queue.offer(job);
+    }
+
+    private String lanesJson() {
+        StringBuilder json = new StringBuilder("{");
+        for (JobPriority priority : JobPriority.values()) {
+            if (json.length() > 1) json.append(',');
+            json.append('"').append(priority.getJsonName()).append("\":").append(queue.size(priority));
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * @return This printer's state as JSON, for diagnostics.
+     */
+    public String toJson() {
+        return "{\"device\":\"" + device.getDeviceName() + "\""
+            + ",\"role\":" + (role != null ? "\"" + role.replace("\"", "\\\"") + "\"" : "null")
+            + ",\"available\":" + isAvailable()
+            + ",\"queued\":" + queue.size()
+            + ",\"lanes\":" + lanesJson()
+            + ",\"completed\":" + metrics.getCompleted()
+            + ",\"circuit\":\"" + session.getCircuitBreaker().getState() + "\""
+            + ",\"status\":" + status.toJson() + "}";
+    }
+}
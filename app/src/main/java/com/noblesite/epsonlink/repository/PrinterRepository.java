@@ -10,54 +10,214 @@ import android.util.Log;
 import com.epson.epos2.Epos2Exception;
 import com.epson.epos2.printer.Printer;
 import com.epson.epos2.printer.PrinterStatusInfo;
+import com.noblesite.epsonlink.R;
+import com.noblesite.epsonlink.image.BitmapRasterSource;
+import com.noblesite.epsonlink.image.RasterCache;
+import com.noblesite.epsonlink.image.RasterSource;
+import com.noblesite.epsonlink.interfaces.PrinterCallback;
+import com.noblesite.epsonlink.interfaces.PrinterStatusListener;
+import com.noblesite.epsonlink.metrics.PrintMetrics;
+import com.noblesite.epsonlink.model.JobPriority;
+import com.noblesite.epsonlink.model.PrintJob;
+import com.noblesite.epsonlink.model.PrinterStatus;
+import com.noblesite.epsonlink.parser.PrintJobFormatException;
+import com.noblesite.epsonlink.parser.PrintJobParser;
+import com.noblesite.epsonlink.queue.BatchPolicy;
+import com.noblesite.epsonlink.queue.DedupIndex;
+import com.noblesite.epsonlink.queue.JobDispatcher;
+import com.noblesite.epsonlink.queue.PrintJobQueue;
+import com.noblesite.epsonlink.queue.PrintJournal;
+import com.noblesite.epsonlink.queue.QueueSettings;
+import com.noblesite.epsonlink.queue.RoutingPolicy;
+import com.noblesite.epsonlink.render.EscPosEncoder;
+import com.noblesite.epsonlink.render.JobRenderer;
+import com.noblesite.epsonlink.render.TemplateCache;
+import com.noblesite.epsonlink.retry.CircuitBreaker;
+import com.noblesite.epsonlink.retry.RetryPolicy;
+import com.noblesite.epsonlink.transport.PrintPipeline;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.JSONArray;
-
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+/**
+ * Owns every attached Epson USB printer. Each printer is a {@link PrinterEndpoint}
+ * with its own session and worker; jobs are journaled once, then routed
+ * across the printers by a {@link JobDispatcher}.
+ */
 public class PrinterRepository {
     private static final String TAG = "PrinterRepository";
     private static final String USB_PERMISSION_ACTION = "com.noblesite.epsonlink.USB_PERMISSION";
+    // 80 mm paper on TM-T88 class printers.
+    private static final int PRINT_WIDTH_DOTS = 512;
+    private static final long RASTER_MEMORY_BYTES = 2 * 1024 * 1024;
+    private static final long RASTER_DISK_BYTES = 16 * 1024 * 1024;
+    private static final String JOURNAL_FILE = "print-journal.bin";
 
     private final Context context;
     private final UsbManager usbManager;
-    private UsbDevice targetDevice;
-    private Printer mPrinter;
-    private String usbTarget;
+    private final UsbDeviceIndex deviceIndex;
+    private final ExecutorService connectExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PrinterRepository-connect");
+        t.setDaemon(true);
+        return t;
+    });
+    private final PrintJournal journal;
+    private final JobDispatcher dispatcher;
+    // Keyed by USB device name, in attach order; the first is the primary printer.
+    private final Map<String, PrinterEndpoint> endpoints = new LinkedHashMap<>();
+    private final EscPosEncoder encoder = new EscPosEncoder();
+    private final JobRenderer jobRenderer;
+    private final TemplateCache templateCache;
+    private final PrintPipeline pipeline;
+    // Idempotency keys of recent jobs, so a resubmitted job is not printed twice.
+    private final DedupIndex dedupIndex = new DedupIndex(DedupIndex.DEFAULT_SLOTS, DedupIndex.DEFAULT_TTL_MS);
+    // Submissions, plus the totals of printers that have been detached.
+    private final PrintMetrics metrics = new PrintMetrics();
+    private volatile PrinterEndpoint primary;
+    private volatile Map<String, String> printerRoles = Collections.emptyMap();
+    private volatile long idleTimeoutMs = PrinterSession.DEFAULT_IDLE_TIMEOUT_MS;
+    // Applied to each printer's queue as it is registered.
+    private final QueueSettings queueSettings = new QueueSettings();
+    private volatile int failureThreshold = CircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+    private volatile long circuitOpenMs = CircuitBreaker.DEFAULT_OPEN_MS;
+    private volatile PrinterStatus statusSnapshot = PrinterStatus.DISCONNECTED;
+    private volatile PrinterStatusListener statusListener;
 
     public PrinterRepository(Context context) {
         this.context = context.getApplicationContext();
         this.usbManager = (UsbManager) context.getSystemService(Context.USB_SERVICE);
+        this.deviceIndex = new UsbDeviceIndex(
+            UsbDeviceIndex.loadFilter(this.context.getResources(), R.xml.device_filter));
+        RasterSource rasterSource = new BitmapRasterSource(
+            this.context.getAssets(),
+            new RasterCache(RASTER_MEMORY_BYTES, new File(this.context.getCacheDir(), "raster"), RASTER_DISK_BYTES),
+            PRINT_WIDTH_DOTS);
+        this.jobRenderer = new JobRenderer(encoder, rasterSource);
+        this.templateCache = new TemplateCache(jobRenderer,
+            TemplateCache.DEFAULT_MAX_ENTRIES, TemplateCache.DEFAULT_MAX_BYTES);
+        this.pipeline = new PrintPipeline(jobRenderer, templateCache);
+        this.dispatcher = new JobDispatcher(PrintJobQueue.DEFAULT_CAPACITY);
+        // Recovery runs on the journal's own thread, so opening it here does not block the caller.
+        this.journal = new PrintJournal(
+            new File(this.context.getFilesDir(), JOURNAL_FILE), PrintJournal.DEFAULT_COMPACT_THRESHOLD_BYTES);
+        Thread recovery = new Thread(this::replayJournal, "PrintJournal-replay");
+        recovery.setDaemon(true);
+        recovery.start();
     }
 
     /**
-     * Finds a USB printer by vendor ID.
+     * Queues jobs left pending by the previous run ahead of new ones.
+     * They wait in the dispatcher's backlog until a printer is set up.
+     * Their idempotency keys are claimed again, so a page resubmitting one
+     * after the restart gets the replayed job instead of a second print.
+     */
+    private void replayJournal() {
+        try {
+            List<PrintJob> recovered = journal.awaitRecovered();
+            if (!recovered.isEmpty()) {
+                Log.i(TAG, "replayJournal: Replaying " + recovered.size() + " unfinished jobs");
+                List<PrintJob> replayed = new ArrayList<>(recovered.size());
+                for (PrintJob job : recovered) {
+                    String key = dedupIndex.isEnabled() ? PrintJobParser.readIdempotencyKey(job.getPayload()) : null;
+                    if (key != null) {
+                        job = new PrintJob(job.getId(), job.getPayload(),
+                            DedupIndex.recordingOutcome(dedupIndex.claim(key, job.getId()), job.getCallback()),
+                            job.getRole(), job.getPriority());
+                    }
+                    replayed.add(job);
+                }
+                dispatcher.addRecovered(replayed);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "replayJournal: Journal recovery failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Scans the USB bus once and registers every printer matching
+     * {@code device_filter.xml}. Later changes arrive through
+     * {@link #onDeviceAttached} and {@link #onDeviceDetached}.
+     * @return The printers found, possibly empty.
+     */
+    public List<UsbDevice> discoverPrinters() {
+        List<UsbDevice> found = deviceIndex.rebuild(usbManager.getDeviceList().values());
+        for (UsbDevice device : found) {
+            setTargetDevice(device);
+        }
+        return found;
+    }
+
+    /**
+     * Finds the attached USB printers with a vendor ID. Answered from the device index.
      * @param vendorId The USB vendor ID to search for.
-     * @return The matching UsbDevice, or null if not found.
+     * @return The matching devices, possibly empty.
      */
-    public UsbDevice findPrinterByVendor(int vendorId) {
-        HashMap<String, UsbDevice> deviceList = usbManager.getDeviceList();
-        for (UsbDevice device : deviceList.values()) {
-            Log.i(TAG, "USB Device Found: " + device.getDeviceName());
+    public List<UsbDevice> findPrintersByVendor(int vendorId) {
+        List<UsbDevice> found = new ArrayList<>();
+        for (UsbDevice device : deviceIndex.getDevices()) {
             if (device.getVendorId() == vendorId) {
-                targetDevice = device;
-                return device;
+                found.add(device);
             }
         }
-        return null;
+        return found;
+    }
+
+    /**
+     * Finds a USB printer by vendor ID. Answered from the device index.
+     * @param vendorId The USB vendor ID to search for.
+     * @return The first matching UsbDevice, or null if not found.
+     */
+    public UsbDevice findPrinterByVendor(int vendorId) {
+        List<UsbDevice> found = findPrintersByVendor(vendorId);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Registers a printer from a USB_DEVICE_ATTACHED broadcast.
+     * @return true if the device is a printer that was not registered yet.
+     */
+    public boolean onDeviceAttached(UsbDevice device) {
+        if (!deviceIndex.onAttached(device)) return false;
+        setTargetDevice(device);
+        return true;
+    }
+
+    /**
+     * Drops a printer on a USB_DEVICE_DETACHED broadcast. Its unprinted
+     * jobs go back to the dispatcher for the other printers, or wait until
+     * a printer is attached again.
+     */
+    public void onDeviceDetached(UsbDevice device) {
+        if (deviceIndex.onDetached(device) == null) return;
+        removeTargetDevice(device);
+    }
+
+    /**
+     * @return true if USB permission has been granted for the device.
+     */
+    public boolean hasPermission(UsbDevice device) {
+        return device != null && usbManager.hasPermission(device);
     }
 
     /**
      * Requests permission for the given USB device.
      * @param context Context for PendingIntent.
      * @param device The UsbDevice to request permission for.
+     * @return true if permission was already granted, so no broadcast will follow.
      */
-    public void requestPermission(Context context, UsbDevice device) {
-        if (device == null) return;
+    public boolean requestPermission(Context context, UsbDevice device) {
+        if (device == null) return false;
         if (!usbManager.hasPermission(device)) {
-            Log.i(TAG, "Requesting USB permission");
+            Log.i(TAG, "Requesting USB permission for " + device.getDeviceName());
             Intent intent = new Intent(USB_PERMISSION_ACTION);
             intent.setPackage(context.getPackageName());
             PendingIntent permissionIntent = PendingIntent.getBroadcast(
@@ -65,145 +225,480 @@ public class PrinterRepository {
                 PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
             );
             usbManager.requestPermission(device, permissionIntent);
+            return false;
 
         } else {
             Log.i(TAG, "USB permission already granted.");
-
+            return true;
         }
     }
 
     /**
-     * Initializes the Printer object.
+     * Initializes a Printer object for every registered printer that has
+     * USB permission and is not initialized yet.
      */
     public void initializePrinter() {
-        try {
-            Log.d(TAG, "Initializing printer");
-            // Printer model/type may need to be parameterized
-            mPrinter = new Printer(Printer.TM_T88, Printer.MODEL_ANK, null);
-        } catch (Epos2Exception e) {
-            Log.e(TAG, "Printer initialization failed: " + e.getErrorStatus());
+        for (PrinterEndpoint endpoint : getEndpoints()) {
+            if (endpoint.getPrinter() != null || !usbManager.hasPermission(endpoint.getDevice())) continue;
+            try {
+                Log.d(TAG, "Initializing printer " + endpoint.getDeviceName());
+                // Printer model/type may need to be parameterized
+                Printer printer = new Printer(Printer.TM_T88, Printer.MODEL_ANK, null);
+                printer.setStatusChangeEventListener((p, eventType) -> updateStatus(endpoint, p.getStatus()));
+                printer.setReceiveEventListener((p, code, status, printJobId) -> {
+                    endpoint.onPrintCompleted();
+                    updateStatus(endpoint, status);
+                });
+                endpoint.setRole(resolveRole(endpoint.getDevice()));
+                endpoint.setPrinter(printer);
+            } catch (Epos2Exception e) {
+                Log.e(TAG, "Printer initialization failed: " + e.getErrorStatus());
+            }
         }
+        dispatcher.drainBacklog();
     }
 
     /**
-     * Connects the printer via USB.
+     * Connects every initialized printer via USB. Connections are kept open
+     * by each printer's session and reused by later print jobs.
      */
     public void connectPrinter() {
-        if (targetDevice == null) {
+        if (primary == null) {
             Log.e(TAG, "No USB device set for connection.");
             return;
         }
-        if (mPrinter == null) {
-            Log.e(TAG, "Printer not initialized.");
-            return;
+        boolean any = false;
+        for (PrinterEndpoint endpoint : getEndpoints()) {
+            if (endpoint.getPrinter() == null) continue;
+            any = true;
+            endpoint.getSession().connect();
         }
-        usbTarget = "USB: " + targetDevice.getDeviceName();
-        try {
-            mPrinter.connect(usbTarget, Printer.PARAM_DEFAULT);
-            Log.i(TAG, "Printer connected.");
-        } catch (Epos2Exception e) {
-            Log.e(TAG, "Printer connection failed: " + e.getErrorStatus(), e);
+        if (!any) {
+            Log.e(TAG, "Printer not initialized.");
         }
     }
 
     /**
-     * Checks if the printer is connected.
-     * @return true if connected, false otherwise.
+     * Connects every initialized printer off the calling thread, e.g. right
+     * after a replugged printer has been granted permission.
+     */
+    public void connectPrinterAsync() {
+        connectExecutor.execute(this::connectPrinter);
+    }
+
+    /**
+     * Checks if any printer is connected.
+     * @return true if at least one printer is connected, false otherwise.
      */
     public boolean isConnected() {
-        if (mPrinter == null) return false;
-        PrinterStatusInfo status = mPrinter.getStatus();
-        return status.getConnection() == Printer.TRUE;
+        for (PrinterEndpoint endpoint : getEndpoints()) {
+            if (endpoint.getSession().isHealthy()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sets how long an unused connection stays open before it is closed.
+     * @param idleTimeoutMs Idle timeout in milliseconds, 0 to keep it open.
+     */
+    public void setIdleTimeoutMs(long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+        for (PrinterEndpoint endpoint : getEndpoints()) {
+            endpoint.getSession().setIdleTimeoutMs(idleTimeoutMs);
+        }
+    }
+
+    /**
+     * Applies retry and circuit breaker settings from managed configuration.
+     * @param retryPolicy Backoff used for transient print errors.
+     * @param failureThreshold Consecutive failures that open a printer's circuit.
+     * @param circuitOpenMs How long an open circuit fails fast before a trial attempt.
+     */
+    public void setRetryConfig(RetryPolicy retryPolicy, int failureThreshold, long circuitOpenMs) {
+        queueSettings.setRetryPolicy(retryPolicy);
+        this.failureThreshold = failureThreshold;
+        this.circuitOpenMs = circuitOpenMs;
+        for (PrinterEndpoint endpoint : getEndpoints()) {
+            endpoint.getQueue().setRetryPolicy(retryPolicy);
+            endpoint.getSession().getCircuitBreaker().configure(failureThreshold, circuitOpenMs);
+        }
+    }
+
+    /**
+     * Sets how bursts of small jobs are combined into one transmission per printer.
+     */
+    public void setBatchPolicy(BatchPolicy batchPolicy) {
+        queueSettings.setBatchPolicy(batchPolicy);
+        for (PrinterEndpoint endpoint : getEndpoints()) {
+            endpoint.getQueue().setBatchPolicy(batchPolicy);
+        }
+    }
+
+    /**
+     * Sets how the priority lanes share each printer.
+     * @param maxLaneWaitMs Longest a kitchen or report job waits behind more urgent ones, 0 for strict priority.
+     * @param chunkBytes Smallest part a long job is split into at a cut, 0 to never split.
+     * @param streamThreshold Payload length above which a job is streamed a few lines at a time, 0 to never stream.
+     */
+    public void setSchedulingConfig(long maxLaneWaitMs, int chunkBytes, int streamThreshold) {
+        queueSettings.setMaxLaneWaitMs(maxLaneWaitMs);
+        pipeline.setChunkBytes(chunkBytes);
+        pipeline.setStreamThreshold(streamThreshold);
+        for (PrinterEndpoint endpoint : getEndpoints()) {
+            endpoint.getQueue().setMaxLaneWaitMs(maxLaneWaitMs);
+        }
+    }
+
+    /**
+     * @param dedupWindowMs How long a job's idempotency key is remembered, 0 to print every submission.
+     */
+    public void setDedupWindowMs(long dedupWindowMs) {
+        dedupIndex.setTtlMs(dedupWindowMs);
+    }
+
+    /**
+     * Sets how jobs without a role are spread across the printers.
+     */
+    public void setRoutingPolicy(RoutingPolicy policy) {
+        dispatcher.setPolicy(policy);
     }
 
     /**
-     * Gets the printer status as a JSONObject.
-     * @return JSONObject with printer status.
-     * @throws JSONException if JSON error occurs.
+     * Assigns roles (e.g. "kitchen", "receipt") to printers. Jobs sent with a
+     * role only print on printers with that role.
+     * @param roles Role by USB serial number or device name.
      */
-    public JSONObject getPrinterStatus() throws JSONException {
-        JSONObject printerStatus = new JSONObject();
-        if (mPrinter == null) {
-            printerStatus.put("Connection", 0);
-            return printerStatus;
+    public void setPrinterRoles(Map<String, String> roles) {
+        this.printerRoles = roles != null ? roles : Collections.emptyMap();
+        for (PrinterEndpoint endpoint : getEndpoints()) {
+            if (endpoint.getPrinter() != null) {
+                endpoint.setRole(resolveRole(endpoint.getDevice()));
+            }
         }
-        PrinterStatusInfo statusInfo = mPrinter.getStatus();
-        printerStatus.put("Connection", statusInfo.getConnection());
-        printerStatus.put("CoverOpen", statusInfo.getCoverOpen());
-        printerStatus.put("Paper", statusInfo.getPaper());
-        printerStatus.put("PaperFeed", statusInfo.getPaperFeed());
-        printerStatus.put("ErrorStatus", statusInfo.getErrorStatus());
-        printerStatus.put("AutoRecoverError", statusInfo.getAutoRecoverError());
+        dispatcher.drainBacklog();
+    }
+
+    /**
+     * The serial number can only be read once USB permission is granted.
+     */
+    private String resolveRole(UsbDevice device) {
+        Map<String, String> roles = printerRoles;
+        String role = null;
         try {
-            mPrinter.disconnect();
-        } catch (Epos2Exception e) {
-            Log.e(TAG, "Printer disconnect failed: " + e.getErrorStatus());
+            String serial = device.getSerialNumber();
+            if (serial != null) {
+                role = roles.get(serial);
+            }
+        } catch (SecurityException e) {
+            Log.w(TAG, "resolveRole: No permission to read serial of " + device.getDeviceName());
         }
-        return printerStatus;
+        return role != null ? role : roles.get(device.getDeviceName());
+    }
+
+    /**
+     * Draws barcodes and QR codes locally as raster images instead of
+     * having the printer generate them, for models where that is slow.
+     */
+    public void setSymbolsAsRaster(boolean symbolsAsRaster) {
+        jobRenderer.setSymbolsAsRaster(symbolsAsRaster);
     }
 
     /**
-     * Returns the current Printer object.
+     * Stops the print workers, closes the printer connections and the journal.
+     */
+    public void shutdown() {
+        statusListener = null;
+        connectExecutor.shutdownNow();
+        for (PrinterEndpoint endpoint : getEndpoints()) {
+            dispatcher.removeTarget(endpoint);
+            endpoint.getQueue().shutdown();
+            endpoint.getSession().shutdown();
+        }
+        for (PrintJob job : dispatcher.clearBacklog()) {
+            if (job.getCallback() != null) {
+                job.getCallback().onJobFailed(job.getId(), "Printer queue shut down");
+            }
+        }
+        journal.close();
+    }
+
+    /**
+     * Gets the latest status snapshot of the primary printer. Answered from
+     * memory; the snapshot is kept current by the SDK's status-change events.
+     * @return The most recent PrinterStatus.
+     */
+    public PrinterStatus getPrinterStatus() {
+        return statusSnapshot;
+    }
+
+    /**
+     * @return Every registered printer with its role, queue depth and status, as a JSON array.
+     */
+    public String getPrintersJson() {
+        StringBuilder json = new StringBuilder("[");
+        for (PrinterEndpoint endpoint : getEndpoints()) {
+            if (json.length() > 1) json.append(',');
+            json.append(endpoint.toJson());
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Replaces a printer's cached snapshot with the given SDK status.
+     */
+    private void updateStatus(PrinterEndpoint endpoint, PrinterStatusInfo info) {
+        if (info == null) return;
+        updateStatus(endpoint, PrinterStatus.of(
+            info.getConnection(),
+            info.getOnline(),
+            info.getCoverOpen(),
+            info.getPaper(),
+            info.getPaperFeed(),
+            info.getErrorStatus(),
+            info.getAutoRecoverError(),
+            info.getDrawer(),
+            System.currentTimeMillis()));
+    }
+
+    private void updateStatus(PrinterEndpoint endpoint, PrinterStatus status) {
+        PrinterStatus previous = endpoint.getStatus();
+        endpoint.setStatus(status);
+        if (endpoint == primary) {
+            publishStatus(status);
+        }
+        if (status.isReadyToPrint() && !previous.isReadyToPrint()) {
+            // Paper refilled or cover closed: retry its held job and hand it waiting work.
+            endpoint.getQueue().resume();
+            dispatcher.drainBacklog();
+        }
+    }
+
+    /**
+     * Stores the snapshot and notifies the listener if the state changed.
+     */
+    private void publishStatus(PrinterStatus status) {
+        PrinterStatus previous = statusSnapshot;
+        statusSnapshot = status;
+        PrinterStatusListener listener = statusListener;
+        if (listener != null && !status.sameStateAs(previous)) {
+            listener.onStatusChanged(status);
+        }
+    }
+
+    /**
+     * Registers the listener notified when the primary printer's state changes.
+     * @param listener The listener, or null to remove it.
+     */
+    public void setStatusListener(PrinterStatusListener listener) {
+        this.statusListener = listener;
+    }
+
+    /**
+     * Returns the primary printer's Printer object.
      */
     public Printer getPrinter() {
-        return mPrinter;
+        PrinterEndpoint endpoint = primary;
+        return endpoint != null ? endpoint.getPrinter() : null;
     }
 
     /**
-     * Sets the target USB device for this repository.
+     * Registers a USB printer, giving it its own session and print worker.
+     * Registering the same device again has no effect.
      */
     public void setTargetDevice(UsbDevice device) {
-        this.targetDevice = device;
+        if (device == null) return;
+        PrinterEndpoint endpoint;
+        synchronized (endpoints) {
+            if (endpoints.containsKey(device.getDeviceName())) return;
+            endpoint = new PrinterEndpoint(device, idleTimeoutMs, pipeline, journal);
+            queueSettings.applyTo(endpoint.getQueue());
+            endpoint.getSession().getCircuitBreaker().configure(failureThreshold, circuitOpenMs);
+            endpoints.put(device.getDeviceName(), endpoint);
+            if (primary == null) {
+                primary = endpoint;
+            }
+        }
+        endpoint.getQueue().setFailover(job -> {
+            if (!dispatcher.reroute(job, endpoint)) return false;
+            endpoint.getMetrics().rerouted();
+            return true;
+        });
+        // Room in its queue: hand it jobs that were waiting in the backlog.
+        endpoint.getQueue().setOnJobDone(dispatcher::drainBacklog);
+        endpoint.getSession().setStateListener(new PrinterSession.StateListener() {
+            @Override
+            public void onConnected(Printer printer) {
+                endpoint.onConnected();
+                updateStatus(endpoint, printer.getStatus());
+                // Replay anything held while the printer was away.
+                endpoint.getQueue().resume();
+            }
+
+            @Override
+            public void onDisconnected() {
+                endpoint.onDisconnected();
+                updateStatus(endpoint, endpoint.getStatus().asDisconnected(System.currentTimeMillis()));
+            }
+        });
+        dispatcher.addTarget(endpoint);
+        Log.i(TAG, "setTargetDevice: Registered printer " + device.getDeviceName());
     }
 
     /**
-     * Gets the current target USB device.
+     * Unregisters a USB printer, closing its session and stopping its worker.
+     * Jobs it had not printed go back to the dispatcher ahead of new ones.
+     */
+    public void removeTargetDevice(UsbDevice device) {
+        if (device == null) return;
+        PrinterEndpoint endpoint;
+        synchronized (endpoints) {
+            endpoint = endpoints.remove(device.getDeviceName());
+            if (endpoint == null) return;
+            if (primary == endpoint) {
+                primary = endpoints.isEmpty() ? null : endpoints.values().iterator().next();
+            }
+        }
+        dispatcher.removeTarget(endpoint);
+        List<PrintJob> pending = endpoint.getQueue().stop();
+        endpoint.getSession().shutdown();
+        metrics.merge(endpoint.getMetrics());
+        PrinterEndpoint next = primary;
+        if (next != null) {
+            publishStatus(next.getStatus());
+        } else {
+            publishStatus(statusSnapshot.asDisconnected(System.currentTimeMillis()));
+        }
+        if (!pending.isEmpty()) {
+            Log.i(TAG, "removeTargetDevice: Rerouting " + pending.size() + " jobs from " + device.getDeviceName());
+            dispatcher.addRecovered(pending);
+        }
+        Log.i(TAG, "removeTargetDevice: Removed printer " + device.getDeviceName());
+    }
+
+    /**
+     * Gets the primary USB device.
      */
     public UsbDevice getTargetDevice() {
-        return targetDevice;
+        PrinterEndpoint endpoint = primary;
+        return endpoint != null ? endpoint.getDevice() : null;
+    }
+
+    private List<PrinterEndpoint> getEndpoints() {
+        synchronized (endpoints) {
+            return new ArrayList<>(endpoints.values());
+        }
     }
 
     /**
-     * Sends a print job to the printer using the Epson SDK.
-     * @param jobPayload The text to print.
+     * Journals a print job and routes it to a printer, returning immediately.
+     * @param jobPayload The JSON print job.
+     * @param callback Notified on a worker thread when the job completes or fails.
+     * @return The job id, or null if the job could not be queued.
      */
-    public void sendPrintJob(String jobPayload) {
-        if (mPrinter == null || targetDevice == null) {
-            Log.e(TAG, "sendPrintJob: Printer or target device not initialized");
-            return;
+    public String sendPrintJob(String jobPayload, PrinterCallback callback) {
+        return sendPrintJob(jobPayload, null, callback);
+    }
+
+    /**
+     * Journals a print job and routes it to a printer, returning immediately.
+     * A job whose "idempotencyKey" matches a recent job is not printed
+     * again: the earlier job's id is returned, and {@code callback} is told
+     * that job's outcome, before returning if it is already known. A key
+     * whose job failed may be used again.
+     * @param jobPayload The JSON print job.
+     * @param role Only print on printers with this role, or null for any printer.
+     * @param callback Notified on a worker thread when the job completes or fails.
+     * @return The job id, or null if the job could not be queued.
+     */
+    public String sendPrintJob(String jobPayload, String role, PrinterCallback callback) {
+        String jobId = PrintJob.newId();
+        PrintJobParser.Header header = PrintJobParser.readHeader(jobPayload);
+        String key = dedupIndex.isEnabled() ? header.getIdempotencyKey() : null;
+        DedupIndex.Entry claimed = null;
+        if (key != null) {
+            claimed = dedupIndex.claim(key, jobId);
+            if (!claimed.getJobId().equals(jobId)) {
+                return reportDuplicate(claimed, callback);
+            }
+            callback = DedupIndex.recordingOutcome(claimed, callback);
         }
+        PrintJob job = new PrintJob(jobId, jobPayload, callback, role, header.getPriority());
+        // Journal first so a crash between here and the print does not lose the job.
+        journal.append(job);
+        metrics.jobSubmitted();
+        if (!dispatcher.dispatch(job)) {
+            Log.e(TAG, "sendPrintJob: All printer queues are full, rejecting job " + job.getId());
+            metrics.jobRejected();
+            journal.markDone(job.getId());
+            if (claimed != null) {
+                // Rejected, not printed, so a retry with the same key must go through.
+                dedupIndex.release(claimed);
+            }
+            return null;
+        }
+        return job.getId();
+    }
 
+    private String reportDuplicate(DedupIndex.Entry original, PrinterCallback callback) {
+        Log.i(TAG, "sendPrintJob: Key " + original.getKey() + " already used by job "
+            + original.getJobId() + ", not printing it again");
+        metrics.jobDuplicate();
+        if (callback != null) {
+            original.follow(callback);
+        }
+        return original.getJobId();
+    }
+
+    /**
+     * Compiles and caches a receipt template so later jobs only send its id and variables.
+     * @param templateId The id jobs use to reference the template.
+     * @param templateJson A job payload whose text may contain {{name}} placeholders.
+     * @return true if the template was registered.
+     */
+    public boolean registerTemplate(String templateId, String templateJson) {
         try {
-            JSONObject jobJson = new JSONObject(jobPayload);
-            JSONArray lines = jobJson.getJSONArray("lines");
-
-            for (int i = 0; i < lines.length(); i++) {
-                JSONObject line = lines.getJSONObject(i);
-                String type = line.optString("type", "text");
-
-                switch (type) {
-                    case "text":
-                        String value = line.optString("value", "");
-                        mPrinter.addText(value + "\n");
-                        break;
-
-                    case "cut":
-                        mPrinter.addCut(Printer.CUT_FEED);
-                        break;
-
-                    default:
-                        Log.w(TAG, "sendPrintJob: Unsupported line type: " + type);
-                        break;
-                }
-            }
+            templateCache.register(templateId, templateJson);
+            Log.i(TAG, "registerTemplate: Registered template " + templateId);
+            return true;
+        } catch (PrintJobFormatException | IOException | IllegalArgumentException e) {
+            Log.e(TAG, "registerTemplate: Invalid template " + templateId, e);
+            return false;
+        }
+    }
+
+    /**
+     * @return Template cache counters as JSON.
+     */
+    public String getTemplateStats() {
+        return templateCache.statsJson();
+    }
+
+    /**
+     * @return Job counters and per-stage latency histograms of all printers, as JSON.
+     */
+    public String getMetricsJson() {
+        return snapshotMetrics().toJson();
+    }
 
-            mPrinter.sendData(Printer.PARAM_DEFAULT);
-            Log.i(TAG, "sendPrintJob: Print job sent successfully.");
+    /**
+     * @return The metrics of all printers as a table, for debug dumps.
+     */
+    public String dumpMetrics() {
+        return snapshotMetrics().dump();
+    }
 
-        } catch (Epos2Exception e) {
-            Log.e(TAG, "sendPrintJob: Epos2Exception " + e.getErrorStatus(), e);
-        } catch (Exception e) {
-            Log.e(TAG, "sendPrintJob: Exception", e);
+    private PrintMetrics snapshotMetrics() {
+        PrintMetrics snapshot = new PrintMetrics();
+        snapshot.merge(metrics);
+        for (JobPriority priority : JobPriority.values()) {
+            snapshot.addQueued(priority, dispatcher.backlogSize(priority));
+        }
+        for (PrinterEndpoint endpoint : getEndpoints()) {
+            snapshot.merge(endpoint.getMetrics());
+            for (JobPriority priority : JobPriority.values()) {
+                snapshot.addQueued(priority, endpoint.getQueue().size(priority));
+            }
         }
+        return snapshot;
     }
 }
@@ -0,0 +1,289 @@
+package com.noblesite.epsonlink.repository;
+
+import android.util.Log;
+
+import com.epson.epos2.ConnectionListener;
+import com.epson.epos2.Epos2Exception;
+import com.epson.epos2.printer.Printer;
+import com.epson.epos2.printer.PrinterStatusInfo;
+import com.noblesite.epsonlink.retry.CircuitBreaker;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived owner of the ePOS2 {@link Printer} connection.
+ * Keeps the link open between jobs, reconnects lazily when it drops and
+ * only disconnects after an idle period or on shutdown.
+ * Connect attempts go through a {@link CircuitBreaker}, so a dead printer
+ * fails fast instead of costing every caller a full connect timeout.
+ */
+public class PrinterSession {
+    private static final String TAG = "PrinterSession";
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Notified when the session opens or loses its connection.
+     * Called with the session lock held, so implementations must not call back into the session.
+     */
+    public interface StateListener {
+        void onConnected(Printer printer);
+        void onDisconnected();
+    }
+
+    private final Object lock = new Object();
+    private final ScheduledExecutorService idleScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "PrinterSession-idle");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private Printer mPrinter;
+    private String target;
+    private boolean connected;
+    private int activeUsers;
+    private long idleTimeoutMs;
+    private ScheduledFuture<?> idleDisconnect;
+    private StateListener stateListener;
+    private final CircuitBreaker circuitBreaker =
+        new CircuitBreaker(CircuitBreaker.DEFAULT_FAILURE_THRESHOLD, CircuitBreaker.DEFAULT_OPEN_MS);
+
+    public PrinterSession(long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    public void setStateListener(StateListener stateListener) {
+        synchronized (lock) {
+            this.stateListener = stateListener;
+        }
+    }
+
+    /**
+     * Attaches the Printer instance this session manages.
+     * Any previous printer is disconnected first.
+     */
+    public void setPrinter(Printer printer) {
+        synchronized (lock) {
+            if (mPrinter != null && mPrinter != printer) {
+                disconnectLocked();
+                mPrinter.setConnectionEventListener(null);
+            }
+            mPrinter = printer;
+            if (printer != null) {
+                printer.setConnectionEventListener(connectionListener);
+            }
+        }
+    }
+
+    /**
+     * @return The breaker guarding this printer. Callers record the outcome of their own I/O on it.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public Printer getPrinter() {
+        synchronized (lock) {
+            return mPrinter;
+        }
+    }
+
+    /**
+     * Sets the ePOS2 target string (e.g. "USB:/dev/bus/usb/001/002").
+     * A change of target drops the current connection.
+     */
+    public void setTarget(String target) {
+        synchronized (lock) {
+            if (this.target != null && !this.target.equals(target)) {
+                disconnectLocked();
+            }
+            if (target != null && !target.equals(this.target)) {
+                // A newly attached device deserves a fresh attempt.
+                circuitBreaker.reset();
+            }
+            this.target = target;
+        }
+    }
+
+    public void setIdleTimeoutMs(long idleTimeoutMs) {
+        synchronized (lock) {
+            this.idleTimeoutMs = idleTimeoutMs;
+        }
+    }
+
+    /**
+     * Opens the connection eagerly so the first job does not pay the handshake.
+     * @return true if the session is connected afterwards.
+     */
+    public boolean connect() {
+        synchronized (lock) {
+            boolean ok = ensureConnectedLocked();
+            scheduleIdleDisconnectLocked();
+            return ok;
+        }
+    }
+
+    /**
+     * Returns a connected printer for exclusive use, reconnecting if needed.
+     * Every successful call must be paired with {@link #release()}.
+     * @return The connected Printer, or null if it could not be connected.
+     */
+    public Printer acquire() {
+        synchronized (lock) {
+            if (!ensureConnectedLocked()) {
+                return null;
+            }
+            activeUsers++;
+            cancelIdleDisconnectLocked();
+            return mPrinter;
+        }
+    }
+
+    /**
+     * Returns the printer after use and restarts the idle timer.
+     */
+    public void release() {
+        synchronized (lock) {
+            if (activeUsers > 0) {
+                activeUsers--;
+            }
+            scheduleIdleDisconnectLocked();
+        }
+    }
+
+    /**
+     * Cheap health probe. getStatus() reads the state the SDK already holds,
+     * so this does not start a new USB handshake.
+     * @return true if the printer reports an open connection.
+     */
+    public boolean isHealthy() {
+        synchronized (lock) {
+            return isHealthyLocked();
+        }
+    }
+
+    /**
+     * Marks the link as broken so the next {@link #acquire()} reconnects.
+     */
+    public void invalidate() {
+        synchronized (lock) {
+            disconnectLocked();
+        }
+    }
+
+    /**
+     * Disconnects and stops the idle timer. The session cannot be reused.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            cancelIdleDisconnectLocked();
+            disconnectLocked();
+        }
+        idleScheduler.shutdownNow();
+    }
+
+    private boolean isHealthyLocked() {
+        if (mPrinter == null || !connected) return false;
+        PrinterStatusInfo status = mPrinter.getStatus();
+        return status != null && status.getConnection() == Printer.TRUE;
+    }
+
+    private boolean ensureConnectedLocked() {
+        if (mPrinter == null) {
+            Log.e(TAG, "Printer not initialized.");
+            return false;
+        }
+        if (target == null) {
+            Log.e(TAG, "No connection target set.");
+            return false;
+        }
+        if (isHealthyLocked()) {
+            return true;
+        }
+        if (connected) {
+            // Link dropped underneath us; release the stale handle before reconnecting.
+            disconnectLocked();
+        }
+        if (!circuitBreaker.allowRequest()) {
+            Log.w(TAG, "Circuit open, skipping connect for " + circuitBreaker.remainingOpenMs() + " ms.");
+            return false;
+        }
+        try {
+            mPrinter.connect(target, Printer.PARAM_DEFAULT);
+            circuitBreaker.recordSuccess();
+            connected = true;
+            Log.i(TAG, "Printer connected: " + target);
+            try {
+                // Status-change events only fire while the SDK monitor is running.
+                mPrinter.startMonitor();
+            } catch (Epos2Exception e) {
+                Log.w(TAG, "Status monitor could not be started: " + e.getErrorStatus());
+            }
+            if (stateListener != null) {
+                stateListener.onConnected(mPrinter);
+            }
+            return true;
+        } catch (Epos2Exception e) {
+            Log.e(TAG, "Printer connection failed: " + e.getErrorStatus(), e);
+            circuitBreaker.recordFailure();
+            return false;
+        }
+    }
+
+    private void disconnectLocked() {
+        if (mPrinter == null || !connected) return;
+        connected = false;
+        if (stateListener != null) {
+            stateListener.onDisconnected();
+        }
+        try {
+            mPrinter.stopMonitor();
+        } catch (Epos2Exception e) {
+            Log.w(TAG, "Status monitor could not be stopped: " + e.getErrorStatus());
+        }
+        try {
+            mPrinter.disconnect();
+            Log.i(TAG, "Printer disconnected.");
+        } catch (Epos2Exception e) {
+            Log.e(TAG, "Printer disconnect failed: " + e.getErrorStatus());
+        }
+    }
+
+    private void scheduleIdleDisconnectLocked() {
+        cancelIdleDisconnectLocked();
+        if (activeUsers > 0 || !connected || idleTimeoutMs <= 0 || idleScheduler.isShutdown()) {
+            return;
+        }
+        idleDisconnect = idleScheduler.schedule(() -> {
+            synchronized (lock) {
+                if (activeUsers == 0) {
+                    Log.i(TAG, "Idle timeout reached, disconnecting printer.");
+                    disconnectLocked();
+                }
+            }
+        }, idleTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelIdleDisconnectLocked() {
+        if (idleDisconnect != null) {
+            idleDisconnect.cancel(false);
+            idleDisconnect = null;
+        }
+    }
+
+    private final ConnectionListener connectionListener = (device, eventType) -> {
+        if (eventType == ConnectionListener.EVENT_DISCONNECT) {
+            Log.w(TAG, "Printer reported disconnect; will reconnect on next use.");
+            synchronized (lock) {
+                if (connected) {
+                    connected = false;
+                    if (stateListener != null) {
+                        stateListener.onDisconnected();
+                    }
+                }
+            }
+        }
+    };
+}
@@ -0,0 +1,121 @@
+package com.noblesite.epsonlink.repository;
+
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.hardware.usb.UsbDevice;
+import android.util.Log;
+
+import com.noblesite.epsonlink.model.UsbDeviceFilter;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Attached printers, keyed by USB device name. Built from one bus scan at
+ * startup and then kept current by attach and detach broadcasts, so lookups
+ * never enumerate the bus. Devices not matching the filter are ignored.
+ */
+public class UsbDeviceIndex {
+    private static final String TAG = "UsbDeviceIndex";
+
+    private final UsbDeviceFilter filter;
+    private final Map<String, UsbDevice> devices = new ConcurrentHashMap<>();
+
+    public UsbDeviceIndex(UsbDeviceFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Reads the usb-device entries of a device filter resource such as
+     * {@code R.xml.device_filter}. Ids may be decimal or 0x-prefixed hex.
+     */
+    public static UsbDeviceFilter loadFilter(Resources resources, int xmlResId) {
+        UsbDeviceFilter filter = new UsbDeviceFilter();
+        try (XmlResourceParser parser = resources.getXml(xmlResId)) {
+            int event;
+            while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (event != XmlPullParser.START_TAG || !"usb-device".equals(parser.getName())) continue;
+                String vendor = parser.getAttributeValue(null, "vendor-id");
+                String product = parser.getAttributeValue(null, "product-id");
+                if (vendor == null) continue;
+                try {
+                    filter.add(Integer.decode(vendor),
+                        product != null ? Integer.decode(product) : UsbDeviceFilter.ANY_PRODUCT);
+                } catch (NumberFormatException e) {
+                    Log.w(TAG, "loadFilter: Ignoring invalid usb-device entry " + vendor + "/" + product);
+                }
+            }
+        } catch (XmlPullParserException | IOException e) {
+            Log.e(TAG, "loadFilter: Could not read device filter", e);
+        }
+        if (filter.isEmpty()) {
+            Log.w(TAG, "loadFilter: Device filter is empty, no printers will be found");
+        }
+        return filter;
+    }
+
+    public boolean matches(UsbDevice device) {
+        return device != null && filter.matches(device.getVendorId(), device.getProductId());
+    }
+
+    /**
+     * Replaces the index with the matching devices of a full bus scan.
+     * @return The matching devices.
+     */
+    public List<UsbDevice> rebuild(Collection<UsbDevice> attached) {
+        devices.clear();
+        List<UsbDevice> found = new ArrayList<>();
+        for (UsbDevice device : attached) {
+            if (onAttached(device)) {
+                found.add(device);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return true if the device matches the filter and was not indexed yet.
+     */
+    public boolean onAttached(UsbDevice device) {
+        if (!matches(device)) return false;
+        boolean added = devices.put(device.getDeviceName(), device) == null;
+        if (added) {
+            Log.i(TAG, "Printer attached: " + device.getDeviceName());
+        }
+        return added;
+    }
+
+    /**
+     * @return The indexed device that was removed, or null if it was not indexed.
+     */
+    public UsbDevice onDetached(UsbDevice device) {
+        if (device == null) return null;
+        UsbDevice removed = devices.remove(device.getDeviceName());
+        if (removed != null) {
+            Log.i(TAG, "Printer detached: " + device.getDeviceName());
+        }
+        return removed;
+    }
+
+    /**
+     * @return The attached printer with this device name, or null.
+     */
+    public UsbDevice get(String deviceName) {
+        return devices.get(deviceName);
+    }
+
+    public List<UsbDevice> getDevices() {
+        return new ArrayList<>(devices.values());
+    }
+
+    public int size() {
+        return devices.size();
+    }
+}
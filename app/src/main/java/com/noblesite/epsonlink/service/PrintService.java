@@ -0,0 +1,352 @@
+package com.noblesite.epsonlink.service;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.RestrictionsManager;
+import android.content.pm.ServiceInfo;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbManager;
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.noblesite.epsonlink.R;
+import com.noblesite.epsonlink.interfaces.PrinterCallback;
+import com.noblesite.epsonlink.interfaces.PrinterStatusListener;
+import com.noblesite.epsonlink.queue.BatchPolicy;
+import com.noblesite.epsonlink.queue.RoutingPolicy;
+import com.noblesite.epsonlink.repository.PrinterRepository;
+import com.noblesite.epsonlink.retry.CircuitBreaker;
+import com.noblesite.epsonlink.retry.RetryPolicy;
+import com.noblesite.epsonlink.startup.StartupOrchestrator;
+import com.noblesite.epsonlink.startup.StartupTrace;
+import com.noblesite.epsonlink.transport.PrintPipeline;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Foreground service that owns the printer engine: the {@link PrinterRepository},
+ * its connections and job queues, USB hot-plug and permission handling, and
+ * printer startup. It outlives the Activity, so a recreated UI binds to a warm
+ * connection and queued jobs keep printing while no UI is shown. It enters
+ * the foreground once a printer's USB permission is granted, which is what
+ * the connectedDevice service type requires.
+ */
+public class PrintService extends Service {
+    private static final String TAG = "PrintService";
+    private static final String USB_PERMISSION_ACTION = "com.noblesite.epsonlink.USB_PERMISSION";
+    private static final String CHANNEL_ID = "print_service";
+    private static final int NOTIFICATION_ID = 1;
+
+    /**
+     * Handed to clients bound in the same process.
+     */
+    public class LocalBinder extends Binder {
+        public PrintService getService() {
+            return PrintService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final ExecutorService startupExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PrintService-startup");
+        t.setDaemon(true);
+        return t;
+    });
+    private final StartupOrchestrator startup = new StartupOrchestrator(startupExecutor,
+        new StartupTrace(Process.getStartElapsedRealtime(), SystemClock::elapsedRealtime));
+    private PrinterRepository printerRepository;
+    private volatile PrinterStatusListener statusListener;
+    private boolean foreground;
+
+    private final BroadcastReceiver usbPermissionReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (!USB_PERMISSION_ACTION.equals(intent.getAction())) return;
+            UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+            if (device != null && intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false)) {
+                Log.i(TAG, "USB permission granted.");
+                onUsbPermissionGranted();
+            } else {
+                Log.e(TAG, "USB permission denied.");
+            }
+        }
+    };
+
+    private final BroadcastReceiver usbDeviceReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+            if (device == null) return;
+            if (UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(intent.getAction())) {
+                onUsbDeviceAttached(device);
+            } else if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(intent.getAction())) {
+                printerRepository.onDeviceDetached(device);
+            }
+        }
+    };
+
+    /**
+     * Starts the service, or does nothing if it is already running. Called
+     * from the visible Activity; the service goes foreground by itself once
+     * it has a USB printer to serve.
+     */
+    public static void start(Context context) {
+        context.startService(new Intent(context, PrintService.class));
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        startup.getTrace().setListener((name, elapsedMs) ->
+            Log.i(TAG, "Startup mark " + name + " at " + elapsedMs + " ms"));
+        printerRepository = new PrinterRepository(this);
+        printerRepository.setStatusListener(status -> {
+            if (status.isReadyToPrint()) {
+                startup.getTrace().mark(StartupTrace.PRINTER_READY);
+            }
+            PrinterStatusListener listener = statusListener;
+            if (listener != null) {
+                listener.onStatusChanged(status);
+            }
+        });
+        loadPrinterConfig();
+        startup.getTrace().mark(StartupTrace.CONFIG_LOADED);
+
+        registerReceiver(usbPermissionReceiver, new IntentFilter(USB_PERMISSION_ACTION), Context.RECEIVER_EXPORTED);
+        IntentFilter usbDeviceFilter = new IntentFilter(UsbManager.ACTION_USB_DEVICE_ATTACHED);
+        usbDeviceFilter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
+        registerReceiver(usbDeviceReceiver, usbDeviceFilter, Context.RECEIVER_NOT_EXPORTED);
+
+        startPrinters();
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Restarted after a process kill, the service reconnects and replays the journal.
+        return START_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        unregisterReceiver(usbPermissionReceiver);
+        unregisterReceiver(usbDeviceReceiver);
+        startupExecutor.shutdownNow();
+        statusListener = null;
+        printerRepository.shutdown();
+    }
+
+    /**
+     * Debug dump of printers, metrics and startup timings:
+     * {@code adb shell dumpsys activity service com.noblesite.epsonlink/.service.PrintService}
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("Printers: " + printerRepository.getPrintersJson());
+        writer.println("Startup: " + startup.getTrace().toJson());
+        writer.print(printerRepository.dumpMetrics());
+    }
+
+    public PrinterRepository getRepository() {
+        return printerRepository;
+    }
+
+    public StartupTrace getStartupTrace() {
+        return startup.getTrace();
+    }
+
+    /**
+     * Registers the bound UI's listener for printer state changes.
+     * @param listener The listener, or null when the UI goes away.
+     */
+    public void setStatusListener(PrinterStatusListener listener) {
+        this.statusListener = listener;
+    }
+
+    /**
+     * Queues a print job and records the first successful print as a startup mark.
+     * @param role The printer role, or null for any printer.
+     * @return The job id, or null if the job could not be queued.
+     */
+    public String sendPrintJob(String jobPayload, String role, PrinterCallback callback) {
+        return printerRepository.sendPrintJob(jobPayload, role, trackFirstPrint(callback));
+    }
+
+    /**
+     * Enters the foreground unless already there. Only called after USB permission is granted.
+     */
+    private synchronized void startForegroundNotification() {
+        if (foreground) return;
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+            getString(R.string.PrintService_channel), NotificationManager.IMPORTANCE_LOW);
+        getSystemService(NotificationManager.class).createNotificationChannel(channel);
+        Notification notification = new Notification.Builder(this, CHANNEL_ID)
+            .setSmallIcon(R.mipmap.ic_launcher)
+            .setContentTitle(getString(R.string.app_name))
+            .setContentText(getString(R.string.PrintService_running))
+            .setOngoing(true)
+            .build();
+        try {
+            startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_CONNECTED_DEVICE);
+            foreground = true;
+        } catch (RuntimeException e) {
+            // A sticky restart from the background may not be allowed to go foreground; keep serving bound clients.
+            Log.e(TAG, "startForegroundNotification: Could not enter the foreground", e);
+        }
+    }
+
+    /**
+     * Applies the printer settings from managed configuration.
+     */
+    private void loadPrinterConfig() {
+        RestrictionsManager restrictionsManager =
+            (RestrictionsManager) getSystemService(Context.RESTRICTIONS_SERVICE);
+        Bundle appRestrictions = restrictionsManager.getApplicationRestrictions();
+
+        int idleTimeoutSeconds = appRestrictions.getInt("PrinterIdleTimeoutSeconds", 300);
+        printerRepository.setIdleTimeoutMs(idleTimeoutSeconds * 1000L);
+
+        printerRepository.setSymbolsAsRaster(appRestrictions.getBoolean("RenderSymbolsAsRaster", false));
+
+        printerRepository.setRetryConfig(
+            new RetryPolicy(
+                appRestrictions.getInt("RetryMaxAttempts", RetryPolicy.DEFAULT_MAX_ATTEMPTS),
+                appRestrictions.getInt("RetryBaseDelayMs", (int) RetryPolicy.DEFAULT_BASE_DELAY_MS),
+                appRestrictions.getInt("RetryMaxDelayMs", (int) RetryPolicy.DEFAULT_MAX_DELAY_MS)),
+            appRestrictions.getInt("CircuitFailureThreshold", CircuitBreaker.DEFAULT_FAILURE_THRESHOLD),
+            appRestrictions.getInt("CircuitOpenSeconds", 30) * 1000L);
+
+        printerRepository.setBatchPolicy(new BatchPolicy(
+            appRestrictions.getInt("BatchWindowMs", 0),
+            appRestrictions.getInt("BatchMaxJobs", BatchPolicy.DEFAULT_MAX_JOBS),
+            appRestrictions.getInt("BatchMaxBytes", BatchPolicy.DEFAULT_MAX_BYTES)));
+
+        printerRepository.setSchedulingConfig(
+            appRestrictions.getInt("LaneMaxWaitSeconds", 30) * 1000L,
+            appRestrictions.getInt("JobChunkBytes", PrintPipeline.DEFAULT_CHUNK_BYTES),
+            appRestrictions.getInt("StreamThresholdBytes", PrintPipeline.DEFAULT_STREAM_THRESHOLD));
+        printerRepository.setDedupWindowMs(appRestrictions.getInt("DedupWindowSeconds", 600) * 1000L);
+
+        String routing = appRestrictions.getString("PrinterRouting", "least_queued");
+        printerRepository.setRoutingPolicy(
+            "round_robin".equals(routing) ? RoutingPolicy.ROUND_ROBIN : RoutingPolicy.LEAST_QUEUED);
+        printerRepository.setPrinterRoles(parsePrinterRoles(appRestrictions.getString("PrinterRoles", "")));
+    }
+
+    /**
+     * Parses the PrinterRoles restriction.
+     * @param value Comma-separated "serialOrDeviceName=role" pairs.
+     * @return Role by serial number or device name.
+     */
+    static Map<String, String> parsePrinterRoles(String value) {
+        Map<String, String> roles = new HashMap<>();
+        if (value == null) return roles;
+        for (String pair : value.split(",")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            String printer = pair.substring(0, eq).trim();
+            String role = pair.substring(eq + 1).trim();
+            if (!printer.isEmpty() && !role.isEmpty()) {
+                roles.put(printer, role);
+            }
+        }
+        return roles;
+    }
+
+    /**
+     * Discovers, initializes and connects the printers as background stages.
+     * Jobs submitted before a printer is ready wait in the dispatcher's backlog.
+     */
+    private void startPrinters() {
+        CompletableFuture<Void> discovered =
+            startup.stage(StartupTrace.PRINTERS_DISCOVERED, this::discoverPrinters);
+        CompletableFuture<Void> initialized = startup.stage(StartupTrace.PRINTER_INITIALIZED,
+            printerRepository::initializePrinter, discovered, startup.await(StartupTrace.USB_PERMISSION));
+        startup.stage(StartupTrace.PRINTER_CONNECTED, printerRepository::connectPrinter, initialized)
+            .whenComplete((ignored, error) -> {
+                if (error != null) {
+                    Log.e(TAG, "startPrinters: Printer startup failed", error);
+                } else {
+                    Log.i(TAG, "startPrinters: Printer startup done " + startup.getTrace().toJson());
+                }
+            });
+    }
+
+    /**
+     * Registers the printers already attached and asks for USB permission for each.
+     */
+    private void discoverPrinters() {
+        List<UsbDevice> devices = printerRepository.discoverPrinters();
+        if (devices.isEmpty()) {
+            Log.w(TAG, "No USB printer found matching device_filter.xml");
+        }
+        boolean granted = false;
+        for (UsbDevice device : devices) {
+            granted |= printerRepository.requestPermission(this, device);
+        }
+        if (granted) {
+            startForegroundNotification();
+            startup.signal(StartupTrace.USB_PERMISSION);
+        }
+    }
+
+    /**
+     * A replugged printer is registered, asked for permission and reconnected without a restart.
+     */
+    private void onUsbDeviceAttached(UsbDevice device) {
+        if (!printerRepository.onDeviceAttached(device)) return;
+        if (printerRepository.requestPermission(this, device)) {
+            onUsbPermissionGranted();
+        }
+    }
+
+    private void onUsbPermissionGranted() {
+        startForegroundNotification();
+        if (!startup.signal(StartupTrace.USB_PERMISSION)) {
+            // Startup is past this point, e.g. a printer was plugged in later.
+            printerRepository.initializePrinter();
+            printerRepository.connectPrinterAsync();
+        }
+    }
+
+    /**
+     * Wraps a callback to record the first successful print, until it has been recorded.
+     */
+    private PrinterCallback trackFirstPrint(PrinterCallback callback) {
+        if (startup.getTrace().get(StartupTrace.FIRST_PRINT) >= 0) return callback;
+        return new PrinterCallback() {
+            @Override
+            public void onJobCompleted(String jobId) {
+                startup.getTrace().mark(StartupTrace.FIRST_PRINT);
+                if (callback != null) callback.onJobCompleted(jobId);
+            }
+
+            @Override
+            public void onJobFailed(String jobId, String error) {
+                if (callback != null) callback.onJobFailed(jobId, error);
+            }
+        };
+    }
+}
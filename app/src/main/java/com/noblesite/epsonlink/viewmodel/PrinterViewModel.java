@@ -1,11 +1,14 @@
 package com.noblesite.epsonlink.viewmodel;
 
 import android.app.Application;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.RestrictionsManager;
-import android.hardware.usb.UsbDevice;
+import android.content.ServiceConnection;
 import android.os.Bundle;
+import android.os.IBinder;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -13,26 +16,111 @@ import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
-import com.epson.epos2.Epos2Exception;
-import com.epson.epos2.printer.Printer;
+import com.noblesite.epsonlink.interfaces.PrinterCallback;
 import com.noblesite.epsonlink.model.PrinterStatus;
-import com.noblesite.epsonlink.repository.PrinterRepository;
+import com.noblesite.epsonlink.service.PrintService;
+import com.noblesite.epsonlink.startup.StartupTrace;
+import com.noblesite.epsonlink.web.AssetCache;
+import com.noblesite.epsonlink.web.OfflineAssets;
 
-import org.json.JSONObject;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
+/**
+ * UI-side client of {@link PrintService}. Binds to the service, which owns
+ * the printers, and forwards page requests to it; the printer connection and
+ * queued jobs are unaffected when the Activity and this view model go away.
+ */
 public class PrinterViewModel extends AndroidViewModel {
 
     private static final String TAG = "PrinterViewModel";
+    private static final long BIND_TIMEOUT_MS = 5000;
 
-    private final PrinterRepository printerRepository;
     private final MutableLiveData<String> webUrlToLoad = new MutableLiveData<>();
     private final MutableLiveData<String> printerStatusJson = new MutableLiveData<>();
+    private final MutableLiveData<PrinterStatus> printerStatus = new MutableLiveData<>();
+    private final MutableLiveData<PrinterStatus> requestedStatus = new MutableLiveData<>();
     private final MutableLiveData<Boolean> reloadWebView = new MutableLiveData<>(false);
-    private final MutableLiveData<Boolean> usbPermissionGranted = new MutableLiveData<>(false);
+    private final CompletableFuture<PrintService> service = new CompletableFuture<>();
+    private long statusDebounceMs = 250;
+    private String homeUrl = "";
+    private OfflineAssets offlineAssets;
+    private String offlineManifestUrl = "";
+    private boolean started;
+    private boolean bound;
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            PrintService printService = ((PrintService.LocalBinder) binder).getService();
+            printService.setStatusListener(printerStatus::postValue);
+            printerStatus.postValue(printService.getRepository().getPrinterStatus());
+            service.complete(printService);
+            Log.i(TAG, "onServiceConnected: Bound to print service");
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // Same process, so this only happens if the process is going away.
+            Log.w(TAG, "onServiceDisconnected: Print service lost");
+        }
+    };
 
     public PrinterViewModel(@NonNull Application application) {
         super(application);
-        printerRepository = new PrinterRepository(application.getApplicationContext());
+    }
+
+    /**
+     * Reads the configuration so the page can load right away, then starts
+     * and binds the print service. On a cold start the service discovers and
+     * connects the printers in the background; after an Activity restart it is
+     * already running and connected. Runs once per view model.
+     */
+    public void start() {
+        if (started) return;
+        started = true;
+        loadAppConfig();
+        if (offlineAssets != null) {
+            offlineAssets.precacheInBackground(offlineManifestUrl, Collections.singletonList(homeUrl));
+        }
+        PrintService.start(getApplication());
+        bound = getApplication().bindService(
+            new Intent(getApplication(), PrintService.class), serviceConnection, Context.BIND_AUTO_CREATE);
+        if (!bound) {
+            Log.e(TAG, "start: Could not bind to print service");
+            // Releases jobs waiting for the bind, which will not come.
+            service.completeExceptionally(new IllegalStateException("Could not bind to print service"));
+        }
+    }
+
+    /**
+     * @return The configured home page URL, used to retry after load errors.
+     */
+    public String getHomeUrl() {
+        return homeUrl;
+    }
+
+    /**
+     * Called by the WebView client when a page has loaded. The bundled error page does not count.
+     */
+    public void onPageFinished(String url) {
+        if (url != null && !url.startsWith("file:///android_asset/")) {
+            service.thenAccept(s -> s.getStartupTrace().mark(StartupTrace.FIRST_PAGE));
+        }
+    }
+
+    /**
+     * @return Startup timing marks as JSON, in milliseconds since process start.
+     */
+    public String getStartupTimings() {
+        PrintService printService = awaitService();
+        return printService != null ? printService.getStartupTrace().toJson() : "{}";
     }
 
     public LiveData<String> getWebUrlToLoad() {
@@ -43,21 +131,76 @@ public class PrinterViewModel extends AndroidViewModel {
         return printerStatusJson;
     }
 
-    public LiveData<Boolean> getReloadWebView() {
-        return reloadWebView;
+    /**
+     * Status snapshots pushed whenever the printer state changes.
+     */
+    public LiveData<PrinterStatus> getPrinterStatus() {
+        return printerStatus;
     }
 
-    public LiveData<Boolean> getUsbPermissionGranted() {
-        return usbPermissionGranted;
+    /**
+     * Status snapshots produced in reply to an explicit status request.
+     */
+    public LiveData<PrinterStatus> getRequestedStatus() {
+        return requestedStatus;
+    }
+
+    /**
+     * @return The latest cached status snapshot. Does not touch the printer.
+     */
+    public PrinterStatus getCurrentPrinterStatus() {
+        PrintService printService = awaitService();
+        return printService != null ? printService.getRepository().getPrinterStatus() : PrinterStatus.DISCONNECTED;
+    }
+
+    /**
+     * @return Quiet period in milliseconds before a status change is pushed to the page.
+     */
+    public long getStatusDebounceMs() {
+        return statusDebounceMs;
+    }
+
+    public LiveData<Boolean> getReloadWebView() {
+        return reloadWebView;
     }
 
+    /**
+     * Reads the UI settings from managed configuration. Printer settings are
+     * read by {@link PrintService}.
+     */
     public void loadAppConfig() {
         RestrictionsManager restrictionsManager =
             (RestrictionsManager) getApplication().getSystemService(Context.RESTRICTIONS_SERVICE);
         Bundle appRestrictions = restrictionsManager.getApplicationRestrictions();
         String url = appRestrictions.getString("EpsonLinkUrl", "https://Noblesite.net");
         Log.i(TAG, "loadAppConfig: Web URL set to: " + url);
+        homeUrl = url;
         webUrlToLoad.postValue(url);
+
+        statusDebounceMs = appRestrictions.getInt("StatusDebounceMs", 250);
+
+        List<String> patterns = OfflineAssets.parsePatterns(appRestrictions.getString("OfflineCachePatterns", ""));
+        if (!patterns.isEmpty() && offlineAssets == null) {
+            long maxBytes = appRestrictions.getInt("OfflineCacheMaxMB", 64) * 1024L * 1024L;
+            File dir = new File(getApplication().getNoBackupFilesDir(), "web-assets");
+            offlineAssets = new OfflineAssets(new AssetCache(dir, maxBytes), patterns);
+            offlineManifestUrl = appRestrictions.getString("OfflineManifestUrl", "");
+            Log.i(TAG, "loadAppConfig: Offline cache for " + patterns);
+        }
+    }
+
+    /**
+     * @return The offline page cache, or null if no URL patterns are configured.
+     */
+    public OfflineAssets getOfflineAssets() {
+        return offlineAssets;
+    }
+
+    /**
+     * @return Offline page cache counters (entries, bytes, hits, misses, evictions) as JSON.
+     */
+    public String getOfflineCacheStats() {
+        return offlineAssets != null ? offlineAssets.getCache().statsJson() : "{}";
     }
 
     public void onIntentReceived(Intent intent) {
@@ -68,64 +211,150 @@ public class PrinterViewModel extends AndroidViewModel {
         }
     }
 
-    public void initializePrinter() {
-        printerRepository.initializePrinter();
+    /**
+     * Publishes the cached printer status. Does not touch the USB bus.
+     */
+    public void checkPrinterStatus() {
+        PrinterStatus status = getCurrentPrinterStatus();
+        printerStatusJson.postValue(status.toJson());
+        requestedStatus.postValue(status);
     }
 
-    public void connectPrinter() {
-        printerRepository.connectPrinter();
+    public void triggerReload() {
+        reloadWebView.postValue(true);
     }
 
-    public void checkPrinterStatus() {
-        try {
-            JSONObject statusJson = printerRepository.getPrinterStatus();
-            printerStatusJson.postValue(statusJson.toString());
-        } catch (Exception e) {
-            Log.e(TAG, "checkPrinterStatus: Failed to get printer status", e);
-            printerStatusJson.postValue("{\"Connection\":0}");
-        }
+    public void resetReloadFlag() {
+        reloadWebView.postValue(false);
     }
 
-    public void requestUsbPermission(UsbDevice device) {
-        printerRepository.requestPermission(getApplication(), device);
+    /**
+     * Registers a receipt template for jobs of the form {"template":"id","vars":{...}}.
+     * @return true if the template was compiled and cached.
+     */
+    public boolean registerTemplate(String templateId, String templateJson) {
+        PrintService printService = awaitService();
+        return printService != null && printService.getRepository().registerTemplate(templateId, templateJson);
     }
 
-    public void setUsbPermissionGranted(boolean granted) {
-        usbPermissionGranted.postValue(granted);
-        if (granted) {
-            initializePrinter();
-        }
+    public String getTemplateStats() {
+        PrintService printService = awaitService();
+        return printService != null ? printService.getRepository().getTemplateStats() : "{}";
     }
 
-    public void triggerReload() {
-        reloadWebView.postValue(true);
+    /**
+     * @return Every attached printer with its role, queue depth and status, as JSON.
+     */
+    public String getPrintersJson() {
+        PrintService printService = awaitService();
+        return printService != null ? printService.getRepository().getPrintersJson() : "[]";
     }
 
-    public void resetReloadFlag() {
-        reloadWebView.postValue(false);
+    /**
+     * @return Job counters and per-stage latency histograms, as JSON.
+     */
+    public String getMetricsJson() {
+        PrintService printService = awaitService();
+        return printService != null ? printService.getRepository().getMetricsJson() : "{}";
     }
 
-    public void requestUsbPermissionIfNeeded(int vendorId) {
-        UsbDevice device = printerRepository.findPrinterByVendor(vendorId);
-        if (device != null) {
-            requestUsbPermission(device);
-        } else {
-            Log.w(TAG, "No USB printer found with vendor ID: " + vendorId);
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        if (offlineAssets != null) {
+            offlineAssets.shutdown();
         }
+        // Only the UI goes away; the service keeps the printers connected.
+        PrintService printService = boundService();
+        if (printService != null) {
+            printService.setStatusListener(null);
+        }
+        if (bound) {
+            getApplication().unbindService(serviceConnection);
+            bound = false;
+        }
+    }
+
+    /**
+     * Queues a print job for the printer worker thread.
+     * Delegates to PrintService.sendPrintJob(String, String, PrinterCallback).
+     *
+     * @param jobPayload The print job payload, typically JSON or command string.
+     * @param callback Notified off the UI thread when the job completes or fails.
+     * @return The job id, or null if the job could not be queued.
+     */
+    public String sendPrintJob(String jobPayload, PrinterCallback callback) {
+        return sendPrintJob(jobPayload, null, callback);
     }
 
     /**
-     * Sends a print job to the printer using the Epson SDK.
-     * Delegates to PrinterRepository.sendPrintJob(String).
+     * Queues a print job for a printer with the given role, such as "kitchen".
+     * Delegates to PrintService.sendPrintJob(String, String, PrinterCallback).
      *
      * @param jobPayload The print job payload, typically JSON or command string.
+     * @param role The printer role, or null for any printer.
+     * @param callback Notified off the UI thread when the job completes or fails.
+     * @return The job id, or null if the job could not be queued.
      */
-    public void sendPrintJob(String jobPayload) {
+    public String sendPrintJob(String jobPayload, String role, PrinterCallback callback) {
+        PrintService printService = awaitService();
+        if (printService == null) {
+            Log.e(TAG, "sendPrintJob: Print service not bound yet");
+            return null;
+        }
+        return queue(printService, jobPayload, role, callback);
+    }
+
+    /**
+     * Queues a print job without blocking, for the main thread. A job that
+     * arrives before the print service is bound waits for the bind and then
+     * joins the dispatcher backlog, instead of being rejected.
+     *
+     * @param onQueued Called with the job id, or null if the job could not be
+     *                 queued: at once if the service is bound, otherwise on the
+     *                 main thread when the bind completes.
+     */
+    public void sendPrintJobWhenBound(String jobPayload, PrinterCallback callback, Consumer<String> onQueued) {
+        if (!service.isDone()) {
+            Log.i(TAG, "sendPrintJobWhenBound: Print service not bound yet, holding job");
+        }
+        service.whenComplete((printService, error) ->
+            onQueued.accept(printService != null ? queue(printService, jobPayload, null, callback) : null));
+    }
+
+    private String queue(PrintService printService, String jobPayload, String role, PrinterCallback callback) {
         try {
-            printerRepository.sendPrintJob(jobPayload);
+            return printService.sendPrintJob(jobPayload, role, callback);
         } catch (Exception e) {
-            Log.e(TAG, "sendPrintJob: Failed to send print job", e);
+            Log.e(TAG, "sendPrintJob: Failed to queue print job", e);
+            return null;
         }
     }
-}
 
+    /**
+     * Returns the bound service. Off the main thread this waits briefly for
+     * the bind to finish; on the main thread, which delivers the bind, it does not wait.
+     * @return The service, or null if it is not bound.
+     */
+    private PrintService awaitService() {
+        if (service.isDone() || Looper.myLooper() == Looper.getMainLooper()) {
+            return boundService();
+        }
+        try {
+            return service.get(BIND_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            Log.e(TAG, "awaitService: Print service not available", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return The service if it is bound, without waiting; null if not yet or if the bind failed.
+     */
+    private PrintService boundService() {
+        return service.isCompletedExceptionally() ? null : service.getNow(null);
+    }
+}
@@ -0,0 +1,152 @@
+package com.noblesite.epsonlink.web;
+
+import android.util.Log;
+import android.webkit.JavascriptInterface;
+import android.webkit.WebView;
+
+import com.noblesite.epsonlink.viewmodel.PrinterViewModel;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * JavaScript bridge exposed to the page as {@code window.EpsonLinkBridge}.
+ * Jobs are passed as plain strings, so they skip URL encoding and do not
+ * create a navigation. Methods run on the WebView's JavaBridge thread and
+ * only enqueue work; progress is reported through "epsonlink:job" events.
+ */
+public class EpsonLinkJsBridge {
+
+    public static final String NAME = "EpsonLinkBridge";
+    private static final String TAG = "EpsonLinkJsBridge";
+
+    private final PrinterViewModel viewModel;
+    private final WebJobCallback callback;
+
+    public EpsonLinkJsBridge(PrinterViewModel viewModel, WebView webView) {
+        this.viewModel = viewModel;
+        this.callback = new WebJobCallback(webView);
+    }
+
+    /**
+     * Queues one print job.
+     * @param jobPayload The JSON print job.
+     * @return The job id, or null if the job was rejected.
+     */
+    @JavascriptInterface
+    public String submitJob(String jobPayload) {
+        if (jobPayload == null || jobPayload.isEmpty()) {
+            Log.e(TAG, "submitJob: Print job data missing");
+            return null;
+        }
+        return viewModel.sendPrintJob(jobPayload, callback);
+    }
+
+    /**
+     * Queues one print job for a printer with the given role.
+     * @param role The printer role, e.g. "kitchen" or "receipt".
+     * @param jobPayload The JSON print job.
+     * @return The job id, or null if the job was rejected.
+     */
+    @JavascriptInterface
+    public String submitJobForRole(String role, String jobPayload) {
+        if (jobPayload == null || jobPayload.isEmpty()) {
+            Log.e(TAG, "submitJobForRole: Print job data missing");
+            return null;
+        }
+        return viewModel.sendPrintJob(jobPayload, role != null && !role.isEmpty() ? role : null, callback);
+    }
+
+    /**
+     * Queues several print jobs in one call.
+     * @param jobsJson A JSON array of print job objects.
+     * @return A JSON array with the id of each job, null where a job was rejected.
+     */
+    @JavascriptInterface
+    public String submitJobs(String jobsJson) {
+        JSONArray ids = new JSONArray();
+        try {
+            JSONArray jobs = new JSONArray(jobsJson);
+            for (int i = 0; i < jobs.length(); i++) {
+                JSONObject job = jobs.optJSONObject(i);
+                if (job == null) {
+                    // Keep the slot, so each id still lines up with its job.
+                    Log.e(TAG, "submitJobs: Job " + i + " is not a JSON object");
+                    ids.put(JSONObject.NULL);
+                    continue;
+                }
+                String jobId = viewModel.sendPrintJob(job.toString(), callback);
+                ids.put(jobId != null ? jobId : JSONObject.NULL);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "submitJobs: Invalid job batch", e);
+        }
+        return ids.toString();
+    }
+
+    /**
+     * Registers a receipt template once; jobs then send {"template":"id","vars":{...}}.
+     * @param templateId The id jobs use to reference the template.
+     * @param templateJson A job payload whose text may contain {{name}} placeholders.
+     * @return true if the template was registered.
+     */
+    @JavascriptInterface
+    public boolean registerTemplate(String templateId, String templateJson) {
+        if (templateId == null || templateJson == null) {
+            Log.e(TAG, "registerTemplate: Template id or body missing");
+            return false;
+        }
+        return viewModel.registerTemplate(templateId, templateJson);
+    }
+
+    /**
+     * @return Template cache counters (entries, bytes, hits, misses, evictions) as JSON.
+     */
+    @JavascriptInterface
+    public String getTemplateStats() {
+        return viewModel.getTemplateStats();
+    }
+
+    /**
+     * @return Offline page cache counters (entries, bytes, hits, misses, evictions) as JSON.
+     */
+    @JavascriptInterface
+    public String getOfflineCacheStats() {
+        return viewModel.getOfflineCacheStats();
+    }
+
+    /**
+     * @return Every attached printer with its role, queue depth and status, as a JSON array.
+     */
+    @JavascriptInterface
+    public String getPrinters() {
+        return viewModel.getPrintersJson();
+    }
+
+    /**
+     * @return Job counters (submitted, completed, failed, bytes, retries, reroutes, reconnects)
+     * and latency percentiles per stage (queueWait, parse, render, send, completion), as JSON.
+     */
+    @JavascriptInterface
+    public String getMetrics() {
+        return viewModel.getMetricsJson();
+    }
+
+    /**
+     * @return Startup timing marks (configLoaded, firstPage, printerReady, firstPrint, ...)
+     * in milliseconds since process start, as JSON.
+     */
+    @JavascriptInterface
+    public String getStartupTimings() {
+        return viewModel.getStartupTimings();
+    }
+
+    /**
+     * @return The cached printer status as JSON. Does not touch the printer.
+     */
+    @JavascriptInterface
+    public String getStatus() {
+        return viewModel.getCurrentPrinterStatus().toJson();
+    }
+}
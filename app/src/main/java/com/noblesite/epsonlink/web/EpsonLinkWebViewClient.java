@@ -4,6 +4,7 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Handler;
 import android.util.Log;
+import android.webkit.CookieManager;
 import android.webkit.WebResourceError;
 import android.webkit.WebResourceRequest;
 import android.webkit.WebResourceResponse;
@@ -15,6 +16,10 @@ import androidx.lifecycle.Observer;
 
 import com.noblesite.epsonlink.viewmodel.PrinterViewModel;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 public class EpsonLinkWebViewClient extends WebViewClient {
 
     private static final String TAG = "EpsonLinkWebClient";
@@ -38,6 +43,7 @@ public class EpsonLinkWebViewClient extends WebViewClient {
     public void onPageFinished(WebView view, String url) {
         Log.i(TAG, "onPageFinished: " + url);
         super.onPageFinished(view, url);
+        viewModel.onPageFinished(url);
     }
 
     @Override
@@ -46,7 +52,8 @@ public class EpsonLinkWebViewClient extends WebViewClient {
         int statusCode = errorResponse.getStatusCode();
         String errorUrl = request.getUrl().toString();
 
-        if (!errorUrl.contains("favicon.ico")) {
+        // A missing image or script must not replace a page that is working offline.
+        if (request.isForMainFrame() && !errorUrl.contains("favicon.ico")) {
             Log.e(TAG, "onReceivedHttpError: " + statusCode + ", URL: " + errorUrl);
 
             String fallbackUrl = "file:///android_asset/error.html";
@@ -95,7 +102,8 @@ public class EpsonLinkWebViewClient extends WebViewClient {
         int statusCode = error.getErrorCode();
         String errorUrl = request.getUrl().toString();
 
-        if (!errorUrl.contains("favicon.ico")) {
+        // Only for the page itself, as in onReceivedHttpError.
+        if (request.isForMainFrame() && !errorUrl.contains("favicon.ico")) {
             Log.e(TAG, "onReceivedHttpError: " + statusCode + ", URL: " + errorUrl);
 
             String fallbackUrl = "file:///android_asset/error.html";
@@ -138,19 +146,59 @@ public class EpsonLinkWebViewClient extends WebViewClient {
         }
     }
 
+    /**
+     * Serves the page's files from the offline cache when their URLs match
+     * the configured patterns. Runs on a WebView worker thread.
+     */
+    @Override
+    public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+        OfflineAssets offlineAssets = viewModel.getOfflineAssets();
+        String url = request.getUrl().toString();
+        if (offlineAssets == null || !offlineAssets.handles(request.getMethod(), url, request.getRequestHeaders())) {
+            return super.shouldInterceptRequest(view, request);
+        }
+        Map<String, String> headers = new HashMap<>(request.getRequestHeaders());
+        String cookie = CookieManager.getInstance().getCookie(url);
+        if (cookie != null) {
+            headers.put("Cookie", cookie);
+        }
+        OfflineAssets.Response response = offlineAssets.open(url, headers);
+        if (response == null) {
+            return super.shouldInterceptRequest(view, request);
+        }
+        WebResourceResponse result =
+            new WebResourceResponse(response.getMimeType(), response.getEncoding(), response.getBody());
+        if (response.getAllowOrigin() != null) {
+            result.setResponseHeaders(
+                Collections.singletonMap("Access-Control-Allow-Origin", response.getAllowOrigin()));
+        }
+        return result;
+    }
+
     @Override
     public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
         String url = request.getUrl().toString();
         Log.i(TAG, "Intercepted URL: " + url);
 
         if (url.contains("/action=Status?")) {
-            viewModel.connectPrinter();
+            // The printer session reconnects on demand, no explicit connect needed here.
             viewModel.checkPrinterStatus();
             return true;
         } else if (url.contains("/action=Print&job=")) {
             String jobPayload = Uri.parse(url).getQueryParameter("job");
             if (jobPayload != null) {
-                viewModel.sendPrintJob(jobPayload);
+                WebJobCallback callback = new WebJobCallback(view);
+                // On the main thread, so a job that comes before the service is bound waits for it.
+                viewModel.sendPrintJobWhenBound(jobPayload, callback, jobId -> {
+                    if (jobId != null) {
+                        // A repeat of a job that already printed has had its "completed" event.
+                        if (!callback.isFinished()) {
+                            WebJobCallback.dispatch(view, jobId, "queued", null);
+                        }
+                    } else {
+                        WebJobCallback.dispatch(view, null, "rejected", "Print queue unavailable");
+                    }
+                });
             }else{
                 Log.e(TAG, "Print job data missing");
             }
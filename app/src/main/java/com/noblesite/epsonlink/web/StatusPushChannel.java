@@ -0,0 +1,96 @@
+package com.noblesite.epsonlink.web;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.WebView;
+
+import com.noblesite.epsonlink.model.PrinterStatus;
+
+/**
+ * Pushes printer status into the page as "epsonlink:status" DOM events.
+ * Rapid transitions (cover open/close, paper near-end flapping) are
+ * coalesced: only the state after a quiet period is delivered, and a
+ * continuous burst is still flushed at least every {@code maxWaitMs}.
+ * Must be used from the main thread.
+ */
+public class StatusPushChannel {
+
+    private static final String TAG = "StatusPushChannel";
+    public static final long DEFAULT_DEBOUNCE_MS = 250;
+
+    private final WebView webView;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+    private long debounceMs;
+    private long maxWaitMs;
+
+    private PrinterStatus pending;
+    private PrinterStatus lastSent;
+    private long firstPendingAt;
+
+    public StatusPushChannel(WebView webView, long debounceMs) {
+        this.webView = webView;
+        setDebounceMs(debounceMs);
+    }
+
+    public void setDebounceMs(long debounceMs) {
+        this.debounceMs = Math.max(0, debounceMs);
+        this.maxWaitMs = this.debounceMs * 4;
+    }
+
+    /**
+     * Queues a status for delivery once the printer state settles.
+     */
+    public void publish(PrinterStatus status) {
+        if (status == null) return;
+        long now = SystemClock.uptimeMillis();
+        if (pending == null) {
+            firstPendingAt = now;
+        }
+        pending = status;
+        handler.removeCallbacks(flushRunnable);
+        if (now - firstPendingAt >= maxWaitMs) {
+            flush();
+        } else {
+            handler.postDelayed(flushRunnable, debounceMs);
+        }
+    }
+
+    /**
+     * Delivers the status right away, e.g. in reply to an explicit status request.
+     */
+    public void publishNow(PrinterStatus status) {
+        if (status == null) return;
+        handler.removeCallbacks(flushRunnable);
+        pending = null;
+        send(status);
+    }
+
+    /**
+     * Drops any pending update. Call when the WebView goes away.
+     */
+    public void cancel() {
+        handler.removeCallbacks(flushRunnable);
+        pending = null;
+    }
+
+    private void flush() {
+        PrinterStatus status = pending;
+        pending = null;
+        if (status == null || status.sameStateAs(lastSent)) {
+            // Flapped back to the state the page already has.
+            return;
+        }
+        send(status);
+    }
+
+    private void send(PrinterStatus status) {
+        lastSent = status;
+        Log.d(TAG, "Pushing status: " + status.toJson());
+        webView.evaluateJavascript(
+            "window.dispatchEvent(new CustomEvent('epsonlink:status', {detail: " + status.toJson() + "}));",
+            null);
+    }
+}
@@ -0,0 +1,63 @@
+package com.noblesite.epsonlink.web;
+
+import android.util.Log;
+import android.webkit.WebView;
+
+import com.noblesite.epsonlink.interfaces.PrinterCallback;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Reports print job progress to the page as "epsonlink:job" DOM events.
+ * Safe to call from any thread.
+ */
+public class WebJobCallback implements PrinterCallback {
+
+    private static final String TAG = "WebJobCallback";
+    private final WebView webView;
+    private volatile boolean finished;
+
+    public WebJobCallback(WebView webView) {
+        this.webView = webView;
+    }
+
+    @Override
+    public void onJobCompleted(String jobId) {
+        finished = true;
+        dispatch(webView, jobId, "completed", null);
+    }
+
+    @Override
+    public void onJobFailed(String jobId, String error) {
+        finished = true;
+        dispatch(webView, jobId, "failed", error);
+    }
+
+    /**
+     * @return true once a job reported through this callback has completed or
+     *         failed, e.g. a resubmitted job that had already printed.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Fires an "epsonlink:job" DOM event so the page can track a job's progress.
+     */
+    public static void dispatch(WebView view, String jobId, String state, String error) {
+        JSONObject detail = new JSONObject();
+        try {
+            detail.put("jobId", jobId != null ? jobId : JSONObject.NULL);
+            detail.put("state", state);
+            if (error != null) {
+                detail.put("error", error);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "dispatch: Failed to build event", e);
+            return;
+        }
+        String script = "window.dispatchEvent(new CustomEvent('epsonlink:job', {detail: " + detail + "}));";
+        view.post(() -> view.evaluateJavascript(script, null));
+    }
+}
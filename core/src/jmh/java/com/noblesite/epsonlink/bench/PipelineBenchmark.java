@@ -0,0 +1,102 @@
+package com.noblesite.epsonlink.bench;
+
+import com.noblesite.epsonlink.metrics.PrintMetrics;
+import com.noblesite.epsonlink.model.PrintJob;
+import com.noblesite.epsonlink.parser.PrintJobParser;
+import com.noblesite.epsonlink.queue.PrinterUnavailableException;
+import com.noblesite.epsonlink.render.EscPosEncoder;
+import com.noblesite.epsonlink.render.JobRenderer;
+import com.noblesite.epsonlink.render.TemplateCache;
+import com.noblesite.epsonlink.sim.SampleJobs;
+import com.noblesite.epsonlink.transport.PrintPipeline;
+import com.noblesite.epsonlink.transport.PrinterTransport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The print hot path, one stage at a time and end to end, for each kind of
+ * job the kiosks send. Run with {@code ./gradlew :core:jmh}.
+ */
+@State(Scope.Thread)
+public class PipelineBenchmark {
+
+    @Param({"smallReceipt", "report5k", "imageHeavy", "template"})
+    public String workload;
+
+    private String payload;
+    private PrintJobParser parser;
+    private PrintPipeline pipeline;
+    private PrintMetrics metrics;
+    private BlackholeTransport transport;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws Exception {
+        JobRenderer renderer = new JobRenderer(new EscPosEncoder(), SampleJobs.gradientSource(256));
+        TemplateCache templates = new TemplateCache(renderer,
+            TemplateCache.DEFAULT_MAX_ENTRIES, TemplateCache.DEFAULT_MAX_BYTES);
+        templates.register(SampleJobs.TEMPLATE_ID, SampleJobs.receiptTemplate());
+        pipeline = new PrintPipeline(renderer, templates);
+        parser = new PrintJobParser();
+        metrics = new PrintMetrics();
+        transport = new BlackholeTransport(blackhole);
+        switch (workload) {
+            case "smallReceipt":
+                payload = SampleJobs.smallReceipt();
+                break;
+            case "report5k":
+                payload = SampleJobs.report(5000);
+                break;
+            case "imageHeavy":
+                payload = SampleJobs.imageHeavy(4);
+                break;
+            case "template":
+                payload = SampleJobs.templateJob();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown workload: " + workload);
+        }
+    }
+
+    @Benchmark
+    public Object parse() throws Exception {
+        return parser.parse(payload);
+    }
+
+    @Benchmark
+    public byte[] render() throws Exception {
+        return pipeline.render(payload, metrics);
+    }
+
+    /**
+     * Parse, render and send, with metrics recording, as a printer worker runs a job.
+     */
+    @Benchmark
+    public void print() throws Exception {
+        pipeline.print(new PrintJob(payload, null), transport, metrics);
+    }
+
+    /**
+     * Always ready; consumes the commands so they are not optimized away.
+     */
+    static final class BlackholeTransport implements PrinterTransport {
+        private final Blackhole blackhole;
+
+        BlackholeTransport(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void ensureReady() throws PrinterUnavailableException {
+        }
+
+        @Override
+        public void send(String jobId, byte[] commands) {
+            blackhole.consume(commands);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.noblesite.epsonlink.image;
+
+import java.util.Arrays;
+
+/**
+ * Converts 8-bit grayscale pixels into a printable 1-bit raster.
+ * Pure Java so it can be unit-tested and benchmarked off-device.
+ */
+public final class Dithering {
+
+    private static final int THRESHOLD = 128;
+
+    private Dithering() {
+    }
+
+    /**
+     * Floyd-Steinberg error diffusion.
+     * @param luminance Row-major gray values, 0 = black, 255 = white. Not modified.
+     * @return The dithered raster.
+     */
+    public static MonoRaster floydSteinberg(int[] luminance, int width, int height) {
+        checkSize(luminance, width, height);
+        int rowBytes = MonoRaster.rowBytes(width);
+        byte[] out = new byte[rowBytes * height];
+        // Error for the current and next row only, with one cell of padding on each side.
+        int[] current = new int[width + 2];
+        int[] next = new int[width + 2];
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int value = luminance[row + x] + current[x + 1] / 16;
+                int error;
+                if (value < THRESHOLD) {
+                    out[y * rowBytes + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+                    error = value;
+                } else {
+                    error = value - 255;
+                }
+                // Errors are kept in sixteenths to stay in integer math.
+                current[x + 2] += error * 7;
+                next[x] += error * 3;
+                next[x + 1] += error * 5;
+                next[x + 2] += error;
+            }
+            int[] swap = current;
+            current = next;
+            next = swap;
+            Arrays.fill(next, 0);
+        }
+        return new MonoRaster(width, height, out);
+    }
+
+    /**
+     * Plain threshold without diffusion, for line art such as barcodes.
+     */
+    public static MonoRaster threshold(int[] luminance, int width, int height) {
+        checkSize(luminance, width, height);
+        int rowBytes = MonoRaster.rowBytes(width);
+        byte[] out = new byte[rowBytes * height];
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                if (luminance[row + x] < THRESHOLD) {
+                    out[y * rowBytes + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+                }
+            }
+        }
+        return new MonoRaster(width, height, out);
+    }
+
+    /**
+     * Converts ARGB pixels to luminance, compositing transparency over white paper.
+     */
+    public static int[] luminance(int[] argb) {
+        int[] gray = new int[argb.length];
+        for (int i = 0; i < argb.length; i++) {
+            int p = argb[i];
+            int a = p >>> 24;
+            int r = (p >> 16) & 0xFF;
+            int g = (p >> 8) & 0xFF;
+            int b = p & 0xFF;
+            // ITU-R BT.601 weights in fixed point.
+            int y = (r * 299 + g * 587 + b * 114) / 1000;
+            gray[i] = (y * a + 255 * (255 - a)) / 255;
+        }
+        return gray;
+    }
+
+    private static void checkSize(int[] luminance, int width, int height) {
+        if (width <= 0 || height <= 0 || luminance.length < width * height) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.noblesite.epsonlink.image;
+
+/**
+ * A 1-bit image ready for the printer: rows packed MSB first, 1 = black dot.
+ */
+public final class MonoRaster {
+
+    private final int width;
+    private final int height;
+    private final byte[] data;
+
+    public MonoRaster(int width, int height, byte[] data) {
+        if (data.length != rowBytes(width) * height) {
+            throw new IllegalArgumentException("Raster data does not match " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.data = data;
+    }
+
+    public static int rowBytes(int width) {
+        return (width + 7) / 8;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRowBytes() {
+        return rowBytes(width);
+    }
+
+    /**
+     * @return The packed rows. Shared, do not modify.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public boolean isBlack(int x, int y) {
+        return (data[y * getRowBytes() + (x >> 3)] & (0x80 >> (x & 7))) != 0;
+    }
+}
@@ -0,0 +1,152 @@
+package com.noblesite.epsonlink.image;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Two-level cache of dithered rasters keyed by a hash of the image source:
+ * a byte-bounded in-memory LRU backed by a byte-bounded directory on disk.
+ * Repeat prints of the same logo skip decoding and dithering entirely.
+ * Thread-safe.
+ */
+public class RasterCache {
+
+    private static final int FILE_MAGIC = 0x45504C52; // "EPLR"
+    private static final String FILE_SUFFIX = ".raster";
+
+    private final LinkedHashMap<String, MonoRaster> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxMemoryBytes;
+    private final File diskDir;
+    private final long maxDiskBytes;
+    private long memoryBytes;
+
+    /**
+     * @param diskDir Directory for the disk cache, or null for memory only.
+     */
+    public RasterCache(long maxMemoryBytes, File diskDir, long maxDiskBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.diskDir = diskDir;
+        this.maxDiskBytes = maxDiskBytes;
+        if (diskDir != null && !diskDir.isDirectory() && !diskDir.mkdirs()) {
+            throw new IllegalStateException("Cannot create raster cache " + diskDir);
+        }
+    }
+
+    /**
+     * Builds a cache key from the image source and target width.
+     * Uses a 64-bit FNV-1a hash of the source plus its length.
+     */
+    public static String key(String source, int width) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < source.length(); i++) {
+            hash ^= source.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return Long.toHexString(hash) + "-" + Integer.toHexString(source.length()) + "-" + width;
+    }
+
+    /**
+     * @return The cached raster, or null if neither level has it.
+     */
+    public MonoRaster get(String key) {
+        synchronized (memory) {
+            MonoRaster raster = memory.get(key);
+            if (raster != null) return raster;
+        }
+        MonoRaster raster = readFromDisk(key);
+        if (raster != null) {
+            putInMemory(key, raster);
+        }
+        return raster;
+    }
+
+    public void put(String key, MonoRaster raster) {
+        putInMemory(key, raster);
+        writeToDisk(key, raster);
+    }
+
+    private void putInMemory(String key, MonoRaster raster) {
+        synchronized (memory) {
+            MonoRaster previous = memory.put(key, raster);
+            if (previous != null) {
+                memoryBytes -= previous.getData().length;
+            }
+            memoryBytes += raster.getData().length;
+            Iterator<Map.Entry<String, MonoRaster>> it = memory.entrySet().iterator();
+            while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+                Map.Entry<String, MonoRaster> eldest = it.next();
+                if (eldest.getKey().equals(key)) continue;
+                memoryBytes -= eldest.getValue().getData().length;
+                it.remove();
+            }
+        }
+    }
+
+    private MonoRaster readFromDisk(String key) {
+        if (diskDir == null) return null;
+        File file = new File(diskDir, key + FILE_SUFFIX);
+        if (!file.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC) return null;
+            int width = in.readInt();
+            int height = in.readInt();
+            byte[] data = new byte[MonoRaster.rowBytes(width) * height];
+            in.readFully(data);
+            // Touch the file so disk trimming evicts least recently used entries first.
+            file.setLastModified(System.currentTimeMillis());
+            return new MonoRaster(width, height, data);
+        } catch (IOException | IllegalArgumentException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, MonoRaster raster) {
+        if (diskDir == null) return;
+        File tmp = new File(diskDir, key + ".tmp");
+        File file = new File(diskDir, key + FILE_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(raster.getWidth());
+            out.writeInt(raster.getHeight());
+            out.write(raster.getData());
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            return;
+        }
+        trimDisk();
+    }
+
+    private synchronized void trimDisk() {
+        File[] files = diskDir.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null) return;
+        long total = 0;
+        for (File f : files) {
+            total += f.length();
+        }
+        if (total <= maxDiskBytes) return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File f : files) {
+            if (total <= maxDiskBytes) break;
+            long length = f.length();
+            if (f.delete()) {
+                total -= length;
+            }
+        }
+    }
+}
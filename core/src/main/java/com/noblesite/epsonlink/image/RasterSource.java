@@ -0,0 +1,17 @@
+package com.noblesite.epsonlink.image;
+
+import java.io.IOException;
+
+/**
+ * Resolves an image reference from a print job into a printable raster.
+ */
+public interface RasterSource {
+
+    /**
+     * @param source Base64 image data (optionally a data: URL) or "asset:path".
+     * @param width Target width in dots, or 0 for the full print width.
+     * @return The dithered raster.
+     * @throws IOException if the image cannot be read or decoded.
+     */
+    MonoRaster load(String source, int width) throws IOException;
+}
@@ -0,0 +1,105 @@
+package com.noblesite.epsonlink.image;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.noblesite.epsonlink.model.PrintDocument;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Draws barcodes and QR codes locally as monochrome rasters, for printers
+ * that generate symbols slowly or not at all. Pure Java.
+ */
+public final class SymbolRasterizer {
+
+    // Indexes match PrintDocument.BARCODE_*.
+    private static final BarcodeFormat[] FORMATS = {
+        BarcodeFormat.UPC_A, BarcodeFormat.UPC_E, BarcodeFormat.EAN_13, BarcodeFormat.EAN_8,
+        BarcodeFormat.CODE_39, BarcodeFormat.ITF, BarcodeFormat.CODABAR, BarcodeFormat.CODE_93,
+        BarcodeFormat.CODE_128
+    };
+
+    // Indexes match PrintDocument.QR_LEVEL_*.
+    private static final ErrorCorrectionLevel[] LEVELS = {
+        ErrorCorrectionLevel.L, ErrorCorrectionLevel.M, ErrorCorrectionLevel.Q, ErrorCorrectionLevel.H
+    };
+
+    // Quiet zone in modules, matching what the printer adds around its own symbols.
+    private static final int BARCODE_QUIET_ZONE = 10;
+    private static final int QR_QUIET_ZONE = 4;
+
+    private SymbolRasterizer() {
+    }
+
+    /**
+     * @param options Packed by PrintDocument.barcode(...). The HRI text is not drawn.
+     * @throws IllegalArgumentException if the data is not valid for the symbology.
+     */
+    public static MonoRaster barcode(int options, String data) {
+        int symbology = PrintDocument.barcodeSymbology(options);
+        if (symbology >= FORMATS.length) {
+            throw new IllegalArgumentException("Unknown symbology " + symbology);
+        }
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.MARGIN, BARCODE_QUIET_ZONE);
+        // Width 0 and height 1 give one pixel per module, scaled below.
+        BitMatrix modules = encode(data, FORMATS[symbology], hints);
+        int moduleWidth = PrintDocument.barcodeModuleWidth(options);
+        int width = modules.getWidth() * moduleWidth;
+        int height = PrintDocument.barcodeHeight(options);
+        int rowBytes = MonoRaster.rowBytes(width);
+        byte[] pixels = new byte[rowBytes * height];
+        for (int m = 0; m < modules.getWidth(); m++) {
+            if (!modules.get(m, 0)) continue;
+            for (int x = m * moduleWidth; x < (m + 1) * moduleWidth; x++) {
+                pixels[x >> 3] |= (byte) (0x80 >>> (x & 7));
+            }
+        }
+        for (int y = 1; y < height; y++) {
+            System.arraycopy(pixels, 0, pixels, y * rowBytes, rowBytes);
+        }
+        return new MonoRaster(width, height, pixels);
+    }
+
+    /**
+     * @param options Packed by PrintDocument.qrCode(...).
+     * @throws IllegalArgumentException if the data does not fit in a QR code.
+     */
+    public static MonoRaster qrCode(int options, String data) {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.MARGIN, QR_QUIET_ZONE);
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        hints.put(EncodeHintType.ERROR_CORRECTION, LEVELS[PrintDocument.qrLevel(options)]);
+        BitMatrix modules = encode(data, BarcodeFormat.QR_CODE, hints);
+        int scale = PrintDocument.qrModuleSize(options);
+        int size = modules.getWidth() * scale;
+        int rowBytes = MonoRaster.rowBytes(size);
+        byte[] pixels = new byte[rowBytes * size];
+        for (int my = 0; my < modules.getHeight(); my++) {
+            int rowStart = my * scale * rowBytes;
+            for (int mx = 0; mx < modules.getWidth(); mx++) {
+                if (!modules.get(mx, my)) continue;
+                for (int x = mx * scale; x < (mx + 1) * scale; x++) {
+                    pixels[rowStart + (x >> 3)] |= (byte) (0x80 >>> (x & 7));
+                }
+            }
+            for (int y = 1; y < scale; y++) {
+                System.arraycopy(pixels, rowStart, pixels, rowStart + y * rowBytes, rowBytes);
+            }
+        }
+        return new MonoRaster(size, size, pixels);
+    }
+
+    private static BitMatrix encode(String data, BarcodeFormat format, Map<EncodeHintType, Object> hints) {
+        try {
+            return new MultiFormatWriter().encode(data, format, 0, format == BarcodeFormat.QR_CODE ? 0 : 1, hints);
+        } catch (WriterException e) {
+            throw new IllegalArgumentException("Cannot encode " + format + ": " + e.getMessage(), e);
+        }
+    }
+}
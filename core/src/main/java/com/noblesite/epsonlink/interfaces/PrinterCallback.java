@@ -0,0 +1,21 @@
+package com.noblesite.epsonlink.interfaces;
+
+/**
+ * Receives the outcome of a queued print job.
+ * Called on the printer worker thread, never on the UI thread.
+ */
+public interface PrinterCallback {
+
+    /**
+     * The job was handed to the printer successfully.
+     * @param jobId The id returned when the job was queued.
+     */
+    void onJobCompleted(String jobId);
+
+    /**
+     * The job could not be printed.
+     * @param jobId The id returned when the job was queued.
+     * @param error A short description of the failure.
+     */
+    void onJobFailed(String jobId, String error);
+}
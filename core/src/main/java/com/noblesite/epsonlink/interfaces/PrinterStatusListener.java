@@ -0,0 +1,11 @@
+package com.noblesite.epsonlink.interfaces;
+
+import com.noblesite.epsonlink.model.PrinterStatus;
+
+/**
+ * Receives printer status snapshots when the printer state changes.
+ * Called on SDK or worker threads, never on the UI thread.
+ */
+public interface PrinterStatusListener {
+    void onStatusChanged(PrinterStatus status);
+}
@@ -0,0 +1,279 @@
+package com.noblesite.epsonlink.metrics;
+
+import com.noblesite.epsonlink.model.JobPriority;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-job stage latencies and job counters. Every printer records into its
+ * own instance from its worker thread; a snapshot merges them. Recording is
+ * lock-free and cheap enough to leave on in production.
+ */
+public final class PrintMetrics {
+
+    /**
+     * Stages a job passes through, in order.
+     */
+    public enum Stage {
+        /** Submitted until its printer's worker first picks it up. */
+        QUEUE_WAIT("queueWait"),
+        /** JSON payload to PrintDocument. */
+        PARSE("parse"),
+        /** PrintDocument or template to ESC/POS bytes. */
+        RENDER("render"),
+        /** Rendered until the printer finished the previous job. Zero when rendering was the bottleneck. */
+        PRINTER_WAIT("printerWait"),
+        /** Handing the commands to the transport; for USB, addCommand and sendData on the ePOS2 SDK. */
+        SEND("send"),
+        /** sendData returning until the printer's receive callback. */
+        COMPLETION("completion");
+
+        final String jsonName;
+
+        Stage(String jsonName) {
+            this.jsonName = jsonName;
+        }
+    }
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+    private final LatencyHistogram[] laneWaits = new LatencyHistogram[JobPriority.values().length];
+    // Jobs waiting per lane; only filled in when a snapshot is taken.
+    private final LongAdder[] laneQueued = new LongAdder[JobPriority.values().length];
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder reroutes = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedJobs = new LongAdder();
+    private final LongAdder chunks = new LongAdder();
+    private final LongAdder streamed = new LongAdder();
+
+    public PrintMetrics() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < laneWaits.length; i++) {
+            laneWaits[i] = new LatencyHistogram();
+            laneQueued[i] = new LongAdder();
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        stages[stage.ordinal()].recordNanos(nanos);
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    /**
+     * Records a job's {@link Stage#QUEUE_WAIT}, overall and for its lane.
+     */
+    public void recordQueueWait(JobPriority priority, long nanos) {
+        stages[Stage.QUEUE_WAIT.ordinal()].recordNanos(nanos);
+        laneWaits[priority.ordinal()].recordNanos(nanos);
+    }
+
+    public LatencyHistogram getQueueWait(JobPriority priority) {
+        return laneWaits[priority.ordinal()];
+    }
+
+    /**
+     * Adds a printer's waiting jobs to a snapshot.
+     */
+    public void addQueued(JobPriority priority, long jobs) {
+        laneQueued[priority.ordinal()].add(jobs);
+    }
+
+    public long getQueued(JobPriority priority) {
+        return laneQueued[priority.ordinal()].sum();
+    }
+
+    public void jobSubmitted() {
+        submitted.increment();
+    }
+
+    public void jobRejected() {
+        rejected.increment();
+    }
+
+    /** A job repeated the idempotency key of a recent job and was not printed again. */
+    public void jobDuplicate() {
+        duplicates.increment();
+    }
+
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    public void jobCompleted(int bytes) {
+        completed.increment();
+        bytesSent.add(bytes);
+    }
+
+    public void jobFailed() {
+        failed.increment();
+    }
+
+    /** A job was held for another attempt because its printer was unavailable. */
+    public void retried() {
+        retries.increment();
+    }
+
+    /** A job moved to another printer. */
+    public void rerouted() {
+        reroutes.increment();
+    }
+
+    /** A printer connection was reopened after it had been open before. */
+    public void reconnected() {
+        reconnects.increment();
+    }
+
+    /** Several jobs went out in one transmission. */
+    public void batchSent(int jobs) {
+        batches.increment();
+        batchedJobs.add(jobs);
+    }
+
+    /** One part of a job that is sent in parts went out. */
+    public void chunkSent() {
+        chunks.increment();
+    }
+
+    public long getChunks() {
+        return chunks.sum();
+    }
+
+    /** A job too large to render whole started streaming. */
+    public void jobStreamed() {
+        streamed.increment();
+    }
+
+    public long getStreamed() {
+        return streamed.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * Adds another instance's samples and counters to this one.
+     */
+    public void merge(PrintMetrics other) {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i].merge(other.stages[i]);
+        }
+        for (int i = 0; i < laneWaits.length; i++) {
+            laneWaits[i].merge(other.laneWaits[i]);
+            laneQueued[i].add(other.laneQueued[i].sum());
+        }
+        submitted.add(other.submitted.sum());
+        rejected.add(other.rejected.sum());
+        duplicates.add(other.duplicates.sum());
+        completed.add(other.completed.sum());
+        failed.add(other.failed.sum());
+        bytesSent.add(other.bytesSent.sum());
+        retries.add(other.retries.sum());
+        reroutes.add(other.reroutes.sum());
+        reconnects.add(other.reconnects.sum());
+        batches.add(other.batches.sum());
+        batchedJobs.add(other.batchedJobs.sum());
+        chunks.add(other.chunks.sum());
+        streamed.add(other.streamed.sum());
+    }
+
+    /**
+     * @return Counters, per-stage histograms and per-lane queue state as JSON.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(512)
+            .append("{\"jobs\":{\"submitted\":").append(submitted.sum())
+            .append(",\"rejected\":").append(rejected.sum())
+            .append(",\"duplicates\":").append(duplicates.sum())
+            .append(",\"completed\":").append(completed.sum())
+            .append(",\"failed\":").append(failed.sum())
+            .append("},\"bytesSent\":").append(bytesSent.sum())
+            .append(",\"retries\":").append(retries.sum())
+            .append(",\"reroutes\":").append(reroutes.sum())
+            .append(",\"reconnects\":").append(reconnects.sum())
+            .append(",\"batches\":").append(batches.sum())
+            .append(",\"batchedJobs\":").append(batchedJobs.sum())
+            .append(",\"chunks\":").append(chunks.sum())
+            .append(",\"streamed\":").append(streamed.sum())
+            .append(",\"stages\":{");
+        for (Stage stage : Stage.values()) {
+            if (stage.ordinal() > 0) json.append(',');
+            json.append('"').append(stage.jsonName).append("\":").append(stages[stage.ordinal()].toJson());
+        }
+        json.append("},\"lanes\":{");
+        for (JobPriority lane : JobPriority.values()) {
+            if (lane.ordinal() > 0) json.append(',');
+            json.append('"').append(lane.getJsonName()).append("\":{\"queued\":")
+                .append(laneQueued[lane.ordinal()].sum())
+                .append(",\"queueWait\":").append(laneWaits[lane.ordinal()].toJson()).append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * @return A human-readable table for debug dumps.
+     */
+    public String dump() {
+        StringBuilder out = new StringBuilder(512)
+            .append("jobs submitted=").append(submitted.sum())
+            .append(" rejected=").append(rejected.sum())
+            .append(" duplicates=").append(duplicates.sum())
+            .append(" completed=").append(completed.sum())
+            .append(" failed=").append(failed.sum())
+            .append('\n')
+            .append("bytesSent=").append(bytesSent.sum())
+            .append(" retries=").append(retries.sum())
+            .append(" reroutes=").append(reroutes.sum())
+            .append(" reconnects=").append(reconnects.sum())
+            .append(" batches=").append(batches.sum())
+            .append(" batchedJobs=").append(batchedJobs.sum())
+            .append(" chunks=").append(chunks.sum())
+            .append(" streamed=").append(streamed.sum())
+            .append('\n')
+            .append(String.format("%-12s %8s %10s %10s %10s %10s %10s%n",
+                "stage", "count", "mean_us", "p50_us", "p90_us", "p99_us", "max_us"));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram h = stages[stage.ordinal()];
+            out.append(String.format("%-12s %8d %10d %10d %10d %10d %10d%n", stage.jsonName, h.getCount(),
+                h.getMeanMicros(), h.percentileMicros(0.5), h.percentileMicros(0.9),
+                h.percentileMicros(0.99), h.getMaxMicros()));
+        }
+        out.append(String.format("%-12s %8s %8s %10s %10s %10s %10s %10s%n",
+            "lane", "queued", "count", "mean_us", "p50_us", "p90_us", "p99_us", "max_us"));
+        for (JobPriority lane : JobPriority.values()) {
+            LatencyHistogram h = laneWaits[lane.ordinal()];
+            out.append(String.format("%-12s %8d %8d %10d %10d %10d %10d %10d%n", lane.getJsonName(),
+                laneQueued[lane.ordinal()].sum(), h.getCount(), h.getMeanMicros(), h.percentileMicros(0.5),
+                h.percentileMicros(0.9), h.percentileMicros(0.99), h.getMaxMicros()));
+        }
+        return out.toString();
+    }
+}
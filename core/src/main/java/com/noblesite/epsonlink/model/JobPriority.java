@@ -0,0 +1,39 @@
+package com.noblesite.epsonlink.model;
+
+/**
+ * Scheduling lane of a print job, chosen by the job's "priority" field.
+ * Lanes are listed most urgent first.
+ */
+public enum JobPriority {
+    /** Receipts a customer is waiting for. The default. */
+    CUSTOMER("customer"),
+    /** Kitchen and other back-of-house tickets. */
+    KITCHEN("kitchen"),
+    /** Long reports that can wait behind the others. */
+    REPORT("report");
+
+    public static final JobPriority DEFAULT = CUSTOMER;
+
+    private final String jsonName;
+
+    JobPriority(String jsonName) {
+        this.jsonName = jsonName;
+    }
+
+    /**
+     * @return The value used in job JSON and metrics.
+     */
+    public String getJsonName() {
+        return jsonName;
+    }
+
+    /**
+     * @return The lane with this JSON name, or null if there is none.
+     */
+    public static JobPriority fromJsonName(String name) {
+        for (JobPriority priority : values()) {
+            if (priority.jsonName.equals(name)) return priority;
+        }
+        return null;
+    }
+}
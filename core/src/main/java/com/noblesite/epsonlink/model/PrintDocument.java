@@ -0,0 +1,267 @@
+package com.noblesite.epsonlink.model;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Compact, parsed form of a print job: a flat list of opcodes with their
+ * arguments stored in parallel arrays instead of one object per line.
+ */
+public final class PrintDocument {
+
+    public static final byte OP_TEXT = 1;
+    public static final byte OP_CUT = 2;
+    public static final byte OP_FEED = 3;
+    public static final byte OP_ALIGN = 4;
+    public static final byte OP_STYLE = 5;
+    public static final byte OP_IMAGE = 6;
+    public static final byte OP_BARCODE = 7;
+    public static final byte OP_QRCODE = 8;
+
+    public static final int ALIGN_LEFT = 0;
+    public static final int ALIGN_CENTER = 1;
+    public static final int ALIGN_RIGHT = 2;
+
+    // Barcode symbologies, in ESC/POS GS k order.
+    public static final int BARCODE_UPC_A = 0;
+    public static final int BARCODE_UPC_E = 1;
+    public static final int BARCODE_EAN13 = 2;
+    public static final int BARCODE_EAN8 = 3;
+    public static final int BARCODE_CODE39 = 4;
+    public static final int BARCODE_ITF = 5;
+    public static final int BARCODE_CODABAR = 6;
+    public static final int BARCODE_CODE93 = 7;
+    public static final int BARCODE_CODE128 = 8;
+
+    // Position of the human readable text under or over a barcode.
+    public static final int HRI_NONE = 0;
+    public static final int HRI_ABOVE = 1;
+    public static final int HRI_BELOW = 2;
+    public static final int HRI_BOTH = 3;
+
+    // QR code error correction levels.
+    public static final int QR_LEVEL_L = 0;
+    public static final int QR_LEVEL_M = 1;
+    public static final int QR_LEVEL_Q = 2;
+    public static final int QR_LEVEL_H = 3;
+
+    private static final int STYLE_BOLD = 1;
+    private static final int STYLE_UNDERLINE = 1 << 1;
+
+    private byte[] ops;
+    private int[] args;
+    private String[] texts;
+    private int size;
+    private int skippedLines;
+    private String templateId;
+    private Map<String, String> variables;
+
+    public PrintDocument(int initialCapacity) {
+        int capacity = Math.max(4, initialCapacity);
+        ops = new byte[capacity];
+        args = new int[capacity];
+        texts = new String[capacity];
+    }
+
+    /**
+     * Appends a text command. The text already includes its line break.
+     */
+    public void addText(String text) {
+        add(OP_TEXT, 0, text);
+    }
+
+    public void addCut() {
+        add(OP_CUT, 0, null);
+    }
+
+    /**
+     * Appends a paper feed of the given number of lines.
+     */
+    public void addFeed(int lines) {
+        add(OP_FEED, lines, null);
+    }
+
+    /**
+     * Appends an alignment change, one of the ALIGN_* constants.
+     */
+    public void addAlign(int alignment) {
+        add(OP_ALIGN, alignment, null);
+    }
+
+    /**
+     * Appends a text style change built with {@link #style(boolean, boolean, int, int)}.
+     */
+    public void addStyle(int style) {
+        add(OP_STYLE, style, null);
+    }
+
+    /**
+     * Appends an image.
+     * @param source Base64 image data or "asset:path".
+     * @param width Target width in dots, 0 for the full print width.
+     */
+    public void addImage(String source, int width) {
+        add(OP_IMAGE, width, source);
+    }
+
+    /**
+     * Appends a barcode.
+     * @param options Built with {@link #barcode(int, int, int, int)}.
+     */
+    public void addBarcode(String data, int options) {
+        add(OP_BARCODE, options, data);
+    }
+
+    /**
+     * Appends a QR code.
+     * @param options Built with {@link #qrCode(int, int)}.
+     */
+    public void addQrCode(String data, int options) {
+        add(OP_QRCODE, options, data);
+    }
+
+    /**
+     * Records a line whose type is not supported and was skipped.
+     */
+    public void addSkipped() {
+        skippedLines++;
+    }
+
+    /**
+     * Removes all commands so the document can be refilled.
+     */
+    public void clear() {
+        Arrays.fill(texts, 0, size, null);
+        size = 0;
+        skippedLines = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte op(int index) {
+        return ops[index];
+    }
+
+    public int arg(int index) {
+        return args[index];
+    }
+
+    public String text(int index) {
+        return texts[index];
+    }
+
+    public int getSkippedLines() {
+        return skippedLines;
+    }
+
+    /**
+     * @return The id of the registered template this job prints, or null for a plain job.
+     */
+    public String getTemplateId() {
+        return templateId;
+    }
+
+    public void setTemplateId(String templateId) {
+        this.templateId = templateId;
+    }
+
+    /**
+     * @return Values substituted into the template's {{name}} placeholders, or null.
+     */
+    public Map<String, String> getVariables() {
+        return variables;
+    }
+
+    public void setVariables(Map<String, String> variables) {
+        this.variables = variables;
+    }
+
+    /**
+     * Packs a text style into a single int.
+     * @param width Character width multiplier, 1-8.
+     * @param height Character height multiplier, 1-8.
+     */
+    public static int style(boolean bold, boolean underline, int width, int height) {
+        int w = Math.max(1, Math.min(8, width)) - 1;
+        int h = Math.max(1, Math.min(8, height)) - 1;
+        return (bold ? STYLE_BOLD : 0) | (underline ? STYLE_UNDERLINE : 0) | (w << 8) | (h << 12);
+    }
+
+    public static boolean isBold(int style) {
+        return (style & STYLE_BOLD) != 0;
+    }
+
+    public static boolean isUnderline(int style) {
+        return (style & STYLE_UNDERLINE) != 0;
+    }
+
+    public static int styleWidth(int style) {
+        return ((style >> 8) & 0xF) + 1;
+    }
+
+    public static int styleHeight(int style) {
+        return ((style >> 12) & 0xF) + 1;
+    }
+
+    /**
+     * Packs barcode options into a single int.
+     * @param symbology One of the BARCODE_* constants.
+     * @param moduleWidth Width of the narrowest bar in dots, 2-6.
+     * @param height Bar height in dots, 1-255.
+     * @param hri One of the HRI_* constants.
+     */
+    public static int barcode(int symbology, int moduleWidth, int height, int hri) {
+        int w = Math.max(2, Math.min(6, moduleWidth));
+        int h = Math.max(1, Math.min(255, height));
+        return (symbology & 0xF) | (w << 4) | ((hri & 0x3) << 8) | (h << 16);
+    }
+
+    public static int barcodeSymbology(int options) {
+        return options & 0xF;
+    }
+
+    public static int barcodeModuleWidth(int options) {
+        return (options >> 4) & 0xF;
+    }
+
+    public static int barcodeHri(int options) {
+        return (options >> 8) & 0x3;
+    }
+
+    public static int barcodeHeight(int options) {
+        return (options >> 16) & 0xFF;
+    }
+
+    /**
+     * Packs QR code options into a single int.
+     * @param moduleSize Size of one module in dots, 1-16.
+     * @param level One of the QR_LEVEL_* constants.
+     */
+    public static int qrCode(int moduleSize, int level) {
+        int size = Math.max(1, Math.min(16, moduleSize));
+        return size | ((level & 0x3) << 8);
+    }
+
+    public static int qrModuleSize(int options) {
+        return options & 0x1F;
+    }
+
+    public static int qrLevel(int options) {
+        return (options >> 8) & 0x3;
+    }
+
+    private void add(byte op, int arg, String text) {
+        if (size == ops.length) {
+            int capacity = ops.length * 2;
+            ops = Arrays.copyOf(ops, capacity);
+            args = Arrays.copyOf(args, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+        }
+        ops[size] = op;
+        args[size] = arg;
+        texts[size] = text;
+        size++;
+    }
+}
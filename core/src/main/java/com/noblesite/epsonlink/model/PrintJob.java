@@ -0,0 +1,181 @@
+package com.noblesite.epsonlink.model;
+
+import com.noblesite.epsonlink.interfaces.PrinterCallback;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * A print job waiting in the queue.
+ */
+public class PrintJob {
+    private final String id;
+    private final String payload;
+    private final PrinterCallback callback;
+    private final String role;
+    private final JobPriority priority;
+    private final long enqueuedAtNanos;
+    private volatile boolean started;
+    private volatile byte[] commands;
+    // End offset of every part but the last, or null when the job is sent whole.
+    private volatile int[] chunkEnds;
+    private volatile int chunksSent;
+    // Set for a job too large to render whole, which is parsed and sent a few lines at a time.
+    private volatile boolean streamed;
+    // Where a streamed job continues; null before its first part and after its last.
+    private volatile StreamPosition streamPosition;
+
+    public PrintJob(String payload, PrinterCallback callback) {
+        this(newId(), payload, callback, null);
+    }
+
+    /**
+     * @param id A fresh {@link #newId()}, or a known id when replaying a job from the journal.
+     * @param role Printer role the job is pinned to, e.g. "kitchen", or null for any printer.
+     */
+    public PrintJob(String id, String payload, PrinterCallback callback, String role) {
+        this(id, payload, callback, role, JobPriority.DEFAULT);
+    }
+
+    /**
+     * @param priority Lane the job waits in on its printer.
+     */
+    public PrintJob(String id, String payload, PrinterCallback callback, String role, JobPriority priority) {
+        this.id = id;
+        this.payload = payload;
+        this.callback = callback;
+        this.role = role;
+        this.priority = priority;
+        this.enqueuedAtNanos = System.nanoTime();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public PrinterCallback getCallback() {
+        return callback;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public JobPriority getPriority() {
+        return priority;
+    }
+
+    public long getEnqueuedAtNanos() {
+        return enqueuedAtNanos;
+    }
+
+    /**
+     * Called by the worker each time it attempts the job.
+     * @return true on the first attempt.
+     */
+    public boolean markStarted() {
+        if (started) return false;
+        started = true;
+        return true;
+    }
+
+    /**
+     * @return The rendered printer commands, or null if the job has not been rendered yet.
+     */
+    public byte[] getCommands() {
+        return commands;
+    }
+
+    /**
+     * Keeps the rendered commands, so a job rendered ahead of time, retried
+     * or moved to another printer is not rendered again.
+     */
+    public void setCommands(byte[] commands) {
+        setCommands(commands, null);
+    }
+
+    /**
+     * Keeps the rendered commands of a job that is sent in parts.
+     * @param chunkEnds End offset of every part but the last, or null to send the job whole.
+     */
+    public void setCommands(byte[] commands, int[] chunkEnds) {
+        this.chunkEnds = chunkEnds != null && chunkEnds.length > 0 ? chunkEnds : null;
+        this.commands = commands;
+    }
+
+    /**
+     * @return How many parts the rendered job is sent in.
+     */
+    public int getChunkCount() {
+        int[] ends = chunkEnds;
+        return ends != null ? ends.length + 1 : 1;
+    }
+
+    /**
+     * @return The commands of the first part not yet sent.
+     */
+    public byte[] nextChunk() {
+        int[] ends = chunkEnds;
+        if (ends == null) return commands;
+        int index = chunksSent;
+        int from = index > 0 ? ends[index - 1] : 0;
+        int to = index < ends.length ? ends[index] : commands.length;
+        return Arrays.copyOfRange(commands, from, to);
+    }
+
+    public int getChunksSent() {
+        return chunksSent;
+    }
+
+    /**
+     * Called by the worker once {@link #nextChunk()} has been handed to the printer.
+     */
+    public void chunkSent() {
+        chunksSent++;
+    }
+
+    /**
+     * @return true while part of the rendered job is still to be sent.
+     */
+    public boolean hasUnsentChunks() {
+        return commands != null && chunksSent < getChunkCount();
+    }
+
+    /**
+     * @return true once some but not all parts have been sent.
+     */
+    public boolean isPartlySent() {
+        return streamPosition != null || (chunksSent > 0 && hasUnsentChunks());
+    }
+
+    /**
+     * @return true if the job is parsed and sent a few lines at a time instead of rendered whole.
+     */
+    public boolean isStreamed() {
+        return streamed;
+    }
+
+    public void setStreamed(boolean streamed) {
+        this.streamed = streamed;
+    }
+
+    public StreamPosition getStreamPosition() {
+        return streamPosition;
+    }
+
+    /**
+     * Called by the worker after each part of a streamed job is sent.
+     * @param streamPosition Where the next part starts, or null once the last part is sent.
+     */
+    public void setStreamPosition(StreamPosition streamPosition) {
+        this.streamPosition = streamPosition;
+    }
+
+    public static String newId() {
+        return UUID.randomUUID().toString();
+    }
+}
@@ -0,0 +1,128 @@
+package com.noblesite.epsonlink.model;
+
+/**
+ * Immutable snapshot of the printer state.
+ * The status fields are packed into a single long (one signed byte each)
+ * and the JSON form is built once, so reads never allocate.
+ */
+public final class PrinterStatus {
+
+    private static final int CONNECTION = 0;
+    private static final int ONLINE = 1;
+    private static final int COVER_OPEN = 2;
+    private static final int PAPER = 3;
+    private static final int PAPER_FEED = 4;
+    private static final int ERROR_STATUS = 5;
+    private static final int AUTO_RECOVER_ERROR = 6;
+    private static final int DRAWER = 7;
+
+    /** Reported before the printer has ever connected. Values mirror Printer.FALSE / Printer.UNKNOWN. */
+    public static final PrinterStatus DISCONNECTED = new PrinterStatus(
+        pack(0, -3, -3, -3, -3, -3, -3, -3), 0L);
+
+    private final long bits;
+    private final long updatedAtMillis;
+    private final String json;
+
+    private PrinterStatus(long bits, long updatedAtMillis) {
+        this.bits = bits;
+        this.updatedAtMillis = updatedAtMillis;
+        this.json = buildJson();
+    }
+
+    /**
+     * Creates a snapshot from ePOS2 PrinterStatusInfo values.
+     * @param updatedAtMillis Wall-clock time the values were read.
+     */
+    public static PrinterStatus of(int connection, int online, int coverOpen, int paper, int paperFeed,
+                                   int errorStatus, int autoRecoverError, int drawer, long updatedAtMillis) {
+        return new PrinterStatus(
+            pack(connection, online, coverOpen, paper, paperFeed, errorStatus, autoRecoverError, drawer),
+            updatedAtMillis);
+    }
+
+    /**
+     * Returns a copy of this snapshot marked as disconnected.
+     */
+    public PrinterStatus asDisconnected(long updatedAtMillis) {
+        long cleared = bits & ~(0xFFL << (CONNECTION * 8));
+        return new PrinterStatus(cleared, updatedAtMillis);
+    }
+
+    private static long pack(int... fields) {
+        long packed = 0;
+        for (int i = 0; i < fields.length; i++) {
+            packed |= (fields[i] & 0xFFL) << (i * 8);
+        }
+        return packed;
+    }
+
+    private int field(int index) {
+        return (byte) (bits >>> (index * 8));
+    }
+
+    public int getConnection() { return field(CONNECTION); }
+    public int getOnline() { return field(ONLINE); }
+    public int getCoverOpen() { return field(COVER_OPEN); }
+    public int getPaper() { return field(PAPER); }
+    public int getPaperFeed() { return field(PAPER_FEED); }
+    public int getErrorStatus() { return field(ERROR_STATUS); }
+    public int getAutoRecoverError() { return field(AUTO_RECOVER_ERROR); }
+    public int getDrawer() { return field(DRAWER); }
+
+    /**
+     * @return true if the printer is connected and nothing (cover, paper, offline) blocks printing.
+     * Values are compared against the ePOS2 Printer.TRUE / FALSE / PAPER_EMPTY constants.
+     */
+    public boolean isReadyToPrint() {
+        return getConnection() == 1 && getOnline() != 0 && getCoverOpen() != 1 && getPaper() != 2;
+    }
+
+    /**
+     * @return All status fields packed into one value, useful for cheap change detection.
+     */
+    public long getBits() {
+        return bits;
+    }
+
+    /**
+     * @return Wall-clock time in milliseconds when this snapshot was taken.
+     */
+    public long getUpdatedAtMillis() {
+        return updatedAtMillis;
+    }
+
+    /**
+     * @return True if the status fields (ignoring the timestamp) match.
+     */
+    public boolean sameStateAs(PrinterStatus other) {
+        return other != null && other.bits == bits;
+    }
+
+    /**
+     * @return The pre-serialized JSON form of this snapshot.
+     */
+    public String toJson() {
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+
+    private String buildJson() {
+        return new StringBuilder(160)
+            .append("{\"Connection\":").append(getConnection())
+            .append(",\"Online\":").append(getOnline())
+            .append(",\"CoverOpen\":").append(getCoverOpen())
+            .append(",\"Paper\":").append(getPaper())
+            .append(",\"PaperFeed\":").append(getPaperFeed())
+            .append(",\"ErrorStatus\":").append(getErrorStatus())
+            .append(",\"AutoRecoverError\":").append(getAutoRecoverError())
+            .append(",\"Drawer\":").append(getDrawer())
+            .append(",\"UpdatedAt\":").append(updatedAtMillis)
+            .append('}')
+            .toString();
+    }
+}
@@ -0,0 +1,41 @@
+package com.noblesite.epsonlink.model;
+
+/**
+ * How far a streamed job has printed: where its next line starts in the
+ * payload, the alignment and style in effect there, and the bytes sent so far.
+ */
+public final class StreamPosition {
+    private final int offset;
+    private final int alignment;
+    private final int style;
+    private final int bytesSent;
+
+    /**
+     * @param offset Payload offset to resume parsing at.
+     * @param alignment Alignment in effect, or -1 if the job has not set one.
+     * @param style Text style in effect, or -1 if the job has not set one.
+     * @param bytesSent Command bytes sent for the job so far.
+     */
+    public StreamPosition(int offset, int alignment, int style, int bytesSent) {
+        this.offset = offset;
+        this.alignment = alignment;
+        this.style = style;
+        this.bytesSent = bytesSent;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getAlignment() {
+        return alignment;
+    }
+
+    public int getStyle() {
+        return style;
+    }
+
+    public int getBytesSent() {
+        return bytesSent;
+    }
+}
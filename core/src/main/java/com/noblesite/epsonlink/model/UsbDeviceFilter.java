@@ -0,0 +1,42 @@
+package com.noblesite.epsonlink.model;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Vendor and product ids of the USB printers EpsonLink drives, as listed
+ * in {@code device_filter.xml}. An entry without a product id matches every
+ * product of its vendor. Lookups are O(1).
+ */
+public final class UsbDeviceFilter {
+
+    /** Product id of an entry that matches any product. */
+    public static final int ANY_PRODUCT = -1;
+
+    private final Set<Integer> anyProductVendors = new HashSet<>();
+    private final Set<Long> products = new HashSet<>();
+
+    /**
+     * @param productId The product id, or {@link #ANY_PRODUCT}.
+     */
+    public UsbDeviceFilter add(int vendorId, int productId) {
+        if (productId == ANY_PRODUCT) {
+            anyProductVendors.add(vendorId);
+        } else {
+            products.add(key(vendorId, productId));
+        }
+        return this;
+    }
+
+    public boolean matches(int vendorId, int productId) {
+        return anyProductVendors.contains(vendorId) || products.contains(key(vendorId, productId));
+    }
+
+    public boolean isEmpty() {
+        return anyProductVendors.isEmpty() && products.isEmpty();
+    }
+
+    private static long key(int vendorId, int productId) {
+        return ((long) vendorId << 32) | (productId & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,23 @@
+package com.noblesite.epsonlink.parser;
+
+/**
+ * Thrown when a print job payload is not valid job JSON.
+ */
+public class PrintJobFormatException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int offset;
+
+    public PrintJobFormatException(String message, int offset) {
+        super(message + " at character " + offset);
+        this.offset = offset;
+    }
+
+    /**
+     * @return Position in the payload where parsing failed.
+     */
+    public int getOffset() {
+        return offset;
+    }
+}
@@ -0,0 +1,803 @@
+package com.noblesite.epsonlink.parser;
+
+import com.noblesite.epsonlink.model.JobPriority;
+import com.noblesite.epsonlink.model.PrintDocument;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming parser that turns print job JSON straight into a
+ * {@link PrintDocument} without building a JSONObject tree.
+ *
+ * Keys and line types are matched in place, so the only per-line
+ * allocation is the text itself. Values follow org.json's optString
+ * conversion: numbers, booleans and null are printed as their text form.
+ *
+ * Instances keep scratch buffers and are not thread-safe; use one per worker.
+ */
+public class PrintJobParser {
+
+    private static final String[] TOP_LEVEL_KEYS = {"lines", "template", "vars", "priority", "idempotencyKey"};
+    private static final int TOP_KEY_LINES = 0;
+    private static final int TOP_KEY_TEMPLATE = 1;
+    private static final int TOP_KEY_VARS = 2;
+    private static final int TOP_KEY_PRIORITY = 3;
+    private static final int TOP_KEY_IDEMPOTENCY_KEY = 4;
+
+    // Line keys; the KEY_ID_* constants are indexes into this array.
+    private static final String[] KEYS = {
+        "type", "value", "bold", "underline", "width", "height", "asset", "symbology", "hri", "size", "level"
+    };
+    private static final int KEY_ID_TYPE = 0;
+    private static final int KEY_ID_VALUE = 1;
+    private static final int KEY_ID_BOLD = 2;
+    private static final int KEY_ID_UNDERLINE = 3;
+    private static final int KEY_ID_WIDTH = 4;
+    private static final int KEY_ID_HEIGHT = 5;
+    private static final int KEY_ID_ASSET = 6;
+    private static final int KEY_ID_SYMBOLOGY = 7;
+    private static final int KEY_ID_HRI = 8;
+    private static final int KEY_ID_SIZE = 9;
+    private static final int KEY_ID_LEVEL = 10;
+
+    private static final String[] TYPES = {"text", "cut", "feed", "align", "style", "image", "barcode", "qrcode"};
+    private static final byte[] TYPE_OPS = {
+        PrintDocument.OP_TEXT, PrintDocument.OP_CUT, PrintDocument.OP_FEED,
+        PrintDocument.OP_ALIGN, PrintDocument.OP_STYLE, PrintDocument.OP_IMAGE,
+        PrintDocument.OP_BARCODE, PrintDocument.OP_QRCODE
+    };
+    private static final byte TYPE_UNSUPPORTED = 0;
+
+    // Indexes match PrintDocument.ALIGN_LEFT, ALIGN_CENTER and ALIGN_RIGHT.
+    private static final String[] ALIGNMENTS = {"left", "center", "right"};
+    // Indexes match PrintDocument.BARCODE_*.
+    private static final String[] SYMBOLOGIES = {
+        "upca", "upce", "ean13", "ean8", "code39", "itf", "codabar", "code93", "code128"
+    };
+    // Indexes match PrintDocument.HRI_*.
+    private static final String[] HRI_POSITIONS = {"none", "above", "below", "both"};
+    // Indexes match PrintDocument.QR_LEVEL_*.
+    private static final String[] QR_LEVELS = {"l", "m", "q", "h"};
+
+    private static final int DEFAULT_BARCODE_WIDTH = 3;
+    private static final int DEFAULT_BARCODE_HEIGHT = 80;
+    private static final int DEFAULT_QR_SIZE = 6;
+
+    private final StringBuilder scratch = new StringBuilder(64);
+    private String json;
+    private int pos;
+    private int length;
+
+    /**
+     * Parses a job payload of the form {"lines":[{"type":"text","value":"..."}, ...]}.
+     * Supported line types are text, cut, feed (value = line count),
+     * align (value = left, center or right), style (bold, underline, width, height)
+     * image (value = base64 data or asset = path, optional width in dots),
+     * barcode (value, symbology, width, height, hri) and qrcode (value, size, level).
+     * A job may instead name a registered template: {"template":"id","vars":{...}}.
+     * An optional "priority" (customer, kitchen or report) is read by {@link #readPriority},
+     * and an optional "idempotencyKey" by {@link #readIdempotencyKey}; {@link #readHeader} reads both.
+     * @param payload The job JSON.
+     * @return The parsed commands.
+     * @throws PrintJobFormatException if the payload is not valid job JSON.
+     */
+    public PrintDocument parse(String payload) throws PrintJobFormatException {
+        if (payload == null) {
+            throw new PrintJobFormatException("Missing job payload", 0);
+        }
+        json = payload;
+        pos = 0;
+        length = payload.length();
+        try {
+            // Rough guess of one line per ~32 characters keeps regrowth rare.
+            PrintDocument document = new PrintDocument(length / 32);
+            boolean sawLines = false;
+
+            skipWhitespace();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+            } else {
+                while (true) {
+                    skipWhitespace();
+                    int key = consumeStringIndex(TOP_LEVEL_KEYS);
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+                    if (key == TOP_KEY_LINES) {
+                        // A repeated key replaces the earlier value, as in org.json.
+                        document.clear();
+                        parseLines(document);
+                        sawLines = true;
+                    } else if (key == TOP_KEY_TEMPLATE && peek() == '"') {
+                        document.setTemplateId(readString());
+                    } else if (key == TOP_KEY_VARS && peek() == '{') {
+                        document.setVariables(parseVariables());
+                    } else {
+                        skipValue();
+                    }
+                    skipWhitespace();
+                    char c = next();
+                    if (c == '}') break;
+                    if (c != ',') throw error("Expected ',' or '}'");
+                }
+            }
+            if (!sawLines && document.getTemplateId() == null) {
+                throw new PrintJobFormatException("No value for lines", pos);
+            }
+            return document;
+        } finally {
+            json = null;
+        }
+    }
+
+    /**
+     * Parses the next few lines of a job too large to parse at once, so it
+     * can be rendered and sent a batch at a time. Keys before "lines" are
+     * skipped and keys after it are not read, so a repeated "lines" key or a
+     * malformed line is only found when its batch is reached.
+     * @param payload The job JSON.
+     * @param offset 0 for the first batch, then the offset returned for the previous one.
+     * @param document Receives the batch, replacing what it held.
+     * @param maxLines Most lines in the batch.
+     * @param stopAfterCut End the batch early, right after a cut line.
+     * @return Offset of the next batch, or -1 once the last line has been read.
+     * @throws PrintJobFormatException if the payload is not valid job JSON, or is a template job.
+     */
+    public int parseLines(String payload, int offset, PrintDocument document, int maxLines, boolean stopAfterCut)
+            throws PrintJobFormatException {
+        if (payload == null) {
+            throw new PrintJobFormatException("Missing job payload", 0);
+        }
+        json = payload;
+        pos = offset;
+        length = payload.length();
+        try {
+            document.clear();
+            if (offset == 0 && !openLines()) return -1;
+            int lines = 0;
+            while (true) {
+                skipWhitespace();
+                parseLine(document);
+                lines++;
+                skipWhitespace();
+                char c = next();
+                if (c == ']') return -1;
+                if (c != ',') throw error("Expected ',' or ']'");
+                if (lines >= maxLines) return pos;
+                int last = document.size() - 1;
+                if (stopAfterCut && last >= 0 && document.op(last) == PrintDocument.OP_CUT) return pos;
+            }
+        } finally {
+            json = null;
+        }
+    }
+
+    /**
+     * Moves past the opening bracket of the "lines" array.
+     * @return false if the array is empty.
+     */
+    private boolean openLines() throws PrintJobFormatException {
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        if (peek() != '}') {
+            while (true) {
+                skipWhitespace();
+                int key = consumeStringIndex(TOP_LEVEL_KEYS);
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                if (key == TOP_KEY_LINES) {
+                    if (peek() != '[') throw error("Value for lines is not an array");
+                    pos++;
+                    skipWhitespace();
+                    if (peek() != ']') return true;
+                    pos++;
+                    return false;
+                }
+                if (key == TOP_KEY_TEMPLATE) throw error("A template job cannot be streamed");
+                skipValue();
+                skipWhitespace();
+                char c = next();
+                if (c == '}') break;
+                if (c != ',') throw error("Expected ',' or '}'");
+            }
+        }
+        throw new PrintJobFormatException("No value for lines", pos);
+    }
+
+    /**
+     * Reads the job's "priority" field without decoding its lines, so the job
+     * can be queued in the right lane before it is parsed.
+     * @return The named lane, or {@link JobPriority#DEFAULT} if the field is
+     *         missing or unknown. An invalid payload also gets the default
+     *         lane; it fails when the job is parsed.
+     */
+    public static JobPriority readPriority(String payload) {
+        String[] values = new String[TOP_LEVEL_KEYS.length];
+        if (payload != null) {
+            new PrintJobParser().topLevelStrings(payload, values, TOP_KEY_PRIORITY);
+        }
+        return priorityOf(values[TOP_KEY_PRIORITY]);
+    }
+
+    /**
+     * Reads the job's "idempotencyKey" field without decoding its lines.
+     * Jobs sharing a key are the same job submitted again.
+     * @return The key, or null if the field is missing, empty or not a
+     *         string, or the payload is invalid.
+     */
+    public static String readIdempotencyKey(String payload) {
+        String[] values = new String[TOP_LEVEL_KEYS.length];
+        if (payload != null) {
+            new PrintJobParser().topLevelStrings(payload, values, TOP_KEY_IDEMPOTENCY_KEY);
+        }
+        return keyOf(values[TOP_KEY_IDEMPOTENCY_KEY]);
+    }
+
+    /**
+     * The fields a job is queued by, read before it is parsed.
+     */
+    public static final class Header {
+        private final JobPriority priority;
+        private final String idempotencyKey;
+
+        Header(JobPriority priority, String idempotencyKey) {
+            this.priority = priority;
+            this.idempotencyKey = idempotencyKey;
+        }
+
+        /**
+         * @return As {@link #readPriority}.
+         */
+        public JobPriority getPriority() {
+            return priority;
+        }
+
+        /**
+         * @return As {@link #readIdempotencyKey}.
+         */
+        public String getIdempotencyKey() {
+            return idempotencyKey;
+        }
+    }
+
+    /**
+     * Reads "priority" and "idempotencyKey" in a single pass over the
+     * payload, for callers that need both before queueing a job.
+     */
+    public static Header readHeader(String payload) {
+        String[] values = new String[TOP_LEVEL_KEYS.length];
+        if (payload != null) {
+            new PrintJobParser().topLevelStrings(payload, values, TOP_KEY_PRIORITY, TOP_KEY_IDEMPOTENCY_KEY);
+        }
+        return new Header(priorityOf(values[TOP_KEY_PRIORITY]), keyOf(values[TOP_KEY_IDEMPOTENCY_KEY]));
+    }
+
+    private static JobPriority priorityOf(String name) {
+        JobPriority priority = JobPriority.fromJsonName(name);
+        return priority != null ? priority : JobPriority.DEFAULT;
+    }
+
+    private static String keyOf(String value) {
+        return value != null && !value.isEmpty() ? value : null;
+    }
+
+    /**
+     * Stores the string values of the wanted top-level fields in
+     * {@code values}, indexed by key, stopping once all are found. A field
+     * that is missing or not a string, or comes after an error in the
+     * payload, is left null.
+     */
+    private void topLevelStrings(String payload, String[] values, int... wanted) {
+        json = payload;
+        pos = 0;
+        length = payload.length();
+        int remaining = wanted.length;
+        try {
+            skipWhitespace();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') return;
+            while (true) {
+                skipWhitespace();
+                int key = consumeStringIndex(TOP_LEVEL_KEYS);
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                if (key >= 0 && values[key] == null && isWanted(key, wanted) && peek() == '"') {
+                    values[key] = readString();
+                    if (--remaining == 0) return;
+                } else {
+                    skipValue();
+                }
+                skipWhitespace();
+                if (next() != ',') return;
+            }
+        } catch (PrintJobFormatException e) {
+            // Keep what was found before the error; the job fails when it is parsed.
+        } finally {
+            json = null;
+        }
+    }
+
+    private static boolean isWanted(int key, int[] wanted) {
+        for (int w : wanted) {
+            if (w == key) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads a flat object of template variables. Non-string values use their text form.
+     */
+    private Map<String, String> parseVariables() throws PrintJobFormatException {
+        Map<String, String> variables = new HashMap<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return variables;
+        }
+        while (true) {
+            skipWhitespace();
+            String name = readString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            int start = pos;
+            boolean isString = peek() == '"';
+            skipValue();
+            variables.put(name, decodeRaw(start, pos, isString));
+            skipWhitespace();
+            char c = next();
+            if (c == '}') return variables;
+            if (c != ',') throw error("Expected ',' or '}'");
+        }
+    }
+
+    private String readString() throws PrintJobFormatException {
+        scratch.setLength(0);
+        appendString(scratch);
+        return scratch.toString();
+    }
+
+    private void parseLines(PrintDocument document) throws PrintJobFormatException {
+        if (peek() != '[') throw error("Value for lines is not an array");
+        pos++;
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            parseLine(document);
+            skipWhitespace();
+            char c = next();
+            if (c == ']') return;
+            if (c != ',') throw error("Expected ',' or ']'");
+        }
+    }
+
+    private void parseLine(PrintDocument document) throws PrintJobFormatException {
+        if (peek() != '{') throw error("Line is not an object");
+        pos++;
+
+        byte type = PrintDocument.OP_TEXT;
+        // Values are only decoded once the type is known, and "type" may come after "value".
+        int valueStart = -1;
+        int valueEnd = -1;
+        boolean valueIsString = false;
+        boolean bold = false;
+        boolean underline = false;
+        int width = 0;
+        int height = -1;
+        String asset = null;
+        int symbology = PrintDocument.BARCODE_CODE128;
+        int hri = PrintDocument.HRI_BELOW;
+        int size = DEFAULT_QR_SIZE;
+        int level = PrintDocument.QR_LEVEL_M;
+
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+        } else {
+            while (true) {
+                skipWhitespace();
+                int key = consumeKey();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                int start = pos;
+                switch (key) {
+                    case KEY_ID_TYPE:
+                        type = parseType();
+                        break;
+                    case KEY_ID_VALUE:
+                        valueIsString = peek() == '"';
+                        valueStart = start;
+                        skipValue();
+                        valueEnd = pos;
+                        break;
+                    case KEY_ID_BOLD:
+                        skipValue();
+                        bold = isTrue(start, pos);
+                        break;
+                    case KEY_ID_UNDERLINE:
+                        skipValue();
+                        underline = isTrue(start, pos);
+                        break;
+                    case KEY_ID_WIDTH:
+                        skipValue();
+                        width = parseInt(start, pos, 0);
+                        break;
+                    case KEY_ID_HEIGHT:
+                        skipValue();
+                        height = parseInt(start, pos, 1);
+                        break;
+                    case KEY_ID_SYMBOLOGY:
+                        symbology = parseOption(SYMBOLOGIES, symbology);
+                        break;
+                    case KEY_ID_HRI:
+                        hri = parseOption(HRI_POSITIONS, hri);
+                        break;
+                    case KEY_ID_SIZE:
+                        skipValue();
+                        size = parseInt(start, pos, DEFAULT_QR_SIZE);
+                        break;
+                    case KEY_ID_LEVEL:
+                        level = parseOption(QR_LEVELS, level);
+                        break;
+                    case KEY_ID_ASSET:
+                        if (peek() == '"') {
+                            asset = readString();
+                        } else {
+                            skipValue();
+                        }
+                        break;
+                    default:
+                        skipValue();
+                        break;
+                }
+                skipWhitespace();
+                char c = next();
+                if (c == '}') break;
+                if (c != ',') throw error("Expected ',' or '}'");
+            }
+        }
+
+        switch (type) {
+            case PrintDocument.OP_TEXT:
+                document.addText(decodeValue(valueStart, valueEnd, valueIsString));
+                break;
+            case PrintDocument.OP_CUT:
+                document.addCut();
+                break;
+            case PrintDocument.OP_FEED:
+                document.addFeed(valueStart >= 0 ? parseInt(valueStart, valueEnd, 1) : 1);
+                break;
+            case PrintDocument.OP_ALIGN:
+                document.addAlign(parseAlignment(valueStart, valueIsString));
+                break;
+            case PrintDocument.OP_STYLE:
+                document.addStyle(PrintDocument.style(bold, underline, Math.max(1, width), Math.max(1, height)));
+                break;
+            case PrintDocument.OP_IMAGE:
+                if (asset != null) {
+                    document.addImage("asset:" + asset, width);
+                } else if (valueStart >= 0 && valueIsString) {
+                    document.addImage(decodeRaw(valueStart, valueEnd, true), width);
+                } else {
+                    document.addSkipped();
+                }
+                break;
+            case PrintDocument.OP_BARCODE:
+                if (valueStart >= 0) {
+                    document.addBarcode(decodeRaw(valueStart, valueEnd, valueIsString), PrintDocument.barcode(
+                        symbology,
+                        width > 0 ? width : DEFAULT_BARCODE_WIDTH,
+                        height > 0 ? height : DEFAULT_BARCODE_HEIGHT,
+                        hri));
+                } else {
+                    document.addSkipped();
+                }
+                break;
+            case PrintDocument.OP_QRCODE:
+                if (valueStart >= 0) {
+                    document.addQrCode(decodeRaw(valueStart, valueEnd, valueIsString), PrintDocument.qrCode(size, level));
+                } else {
+                    document.addSkipped();
+                }
+                break;
+            default:
+                document.addSkipped();
+                break;
+        }
+    }
+
+    private byte parseType() throws PrintJobFormatException {
+        if (peek() != '"') {
+            // optString turns non-string types into text such as "5" or "null"; none are supported.
+            skipValue();
+            return TYPE_UNSUPPORTED;
+        }
+        int index = consumeStringIndex(TYPES);
+        return index >= 0 ? TYPE_OPS[index] : TYPE_UNSUPPORTED;
+    }
+
+    private int consumeKey() throws PrintJobFormatException {
+        return consumeStringIndex(KEYS);
+    }
+
+    private int parseAlignment(int start, boolean isString) throws PrintJobFormatException {
+        if (start < 0 || !isString) return PrintDocument.ALIGN_LEFT;
+        int saved = pos;
+        pos = start;
+        int index = consumeStringIndex(ALIGNMENTS);
+        pos = saved;
+        return index >= 0 ? index : PrintDocument.ALIGN_LEFT;
+    }
+
+    /**
+     * Matches a string value against a fixed list of names.
+     * @return The matched index, or fallback for unknown or non-string values.
+     */
+    private int parseOption(String[] names, int fallback) throws PrintJobFormatException {
+        if (peek() != '"') {
+            skipValue();
+            return fallback;
+        }
+        int index = consumeStringIndex(names);
+        return index >= 0 ? index : fallback;
+    }
+
+    /**
+     * Reads a small non-negative integer from a literal or quoted value without allocating.
+     */
+    private int parseInt(int start, int end, int fallback) {
+        if (end - start >= 2 && json.charAt(start) == '"' && json.charAt(end - 1) == '"') {
+            start++;
+            end--;
+        }
+        if (start >= end) return fallback;
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            char c = json.charAt(i);
+            if (c < '0' || c > '9' || result > 100_000) return fallback;
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private boolean isTrue(int start, int end) {
+        return end - start == 4 && json.startsWith("true", start);
+    }
+
+    /**
+     * Builds the text for a line, including the trailing line break, in a single allocation.
+     */
+    private String decodeValue(int start, int end, boolean isString) throws PrintJobFormatException {
+        scratch.setLength(0);
+        appendRaw(start, end, isString);
+        scratch.append('\n');
+        return scratch.toString();
+    }
+
+    private String decodeRaw(int start, int end, boolean isString) throws PrintJobFormatException {
+        if (isString && !hasEscape(start + 1, end - 1)) {
+            // Avoids copying large values such as images twice.
+            return json.substring(start + 1, end - 1);
+        }
+        scratch.setLength(0);
+        appendRaw(start, end, isString);
+        return scratch.toString();
+    }
+
+    private boolean hasEscape(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (json.charAt(i) == '\\') return true;
+        }
+        return false;
+    }
+
+    private void appendRaw(int start, int end, boolean isString) throws PrintJobFormatException {
+        if (start < 0) return;
+        if (isString) {
+            int saved = pos;
+            pos = start;
+            appendString(scratch);
+            pos = saved;
+        } else {
+            appendLiteral(scratch, start, end);
+        }
+    }
+
+    /**
+     * Appends a non-string value the way Android's org.json optString renders it:
+     * integers without a '.' print as longs, other numbers as doubles.
+     */
+    private void appendLiteral(StringBuilder out, int start, int end) {
+        char first = json.charAt(start);
+        if (first == '-' || (first >= '0' && first <= '9')) {
+            String literal = json.substring(start, end);
+            try {
+                if (literal.indexOf('.') == -1) {
+                    try {
+                        out.append(Long.parseLong(literal));
+                        return;
+                    } catch (NumberFormatException e) {
+                        // Exponent or out of range; parse as a double below.
+                    }
+                }
+                out.append(Double.parseDouble(literal));
+                return;
+            } catch (NumberFormatException e) {
+                // Fall through and print the literal as written.
+            }
+        }
+        out.append(json, start, end);
+    }
+
+    /**
+     * Consumes a JSON string token and returns the index of the matching candidate, or -1.
+     * Does not allocate unless the token contains escapes.
+     */
+    private int consumeStringIndex(String[] candidates) throws PrintJobFormatException {
+        int start = pos;
+        expect('"');
+        int contentStart = pos;
+        boolean escaped = false;
+        while (true) {
+            if (pos >= length) throw error("Unterminated string");
+            char c = json.charAt(pos++);
+            if (c == '"') break;
+            if (c == '\\') {
+                escaped = true;
+                pos++;
+            }
+        }
+        if (!escaped) {
+            int contentLength = pos - 1 - contentStart;
+            for (int i = 0; i < candidates.length; i++) {
+                if (contentLength == candidates[i].length()
+                        && json.regionMatches(contentStart, candidates[i], 0, contentLength)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int end = pos;
+        pos = start;
+        StringBuilder decoded = new StringBuilder(end - start);
+        appendString(decoded);
+        String value = decoded.toString();
+        for (int i = 0; i < candidates.length; i++) {
+            if (candidates[i].equals(value)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the string token at the current position into {@code out}.
+     */
+    private void appendString(StringBuilder out) throws PrintJobFormatException {
+        expect('"');
+        int runStart = pos;
+        while (true) {
+            if (pos >= length) throw error("Unterminated string");
+            char c = json.charAt(pos);
+            if (c == '"') {
+                out.append(json, runStart, pos);
+                pos++;
+                return;
+            }
+            if (c != '\\') {
+                pos++;
+                continue;
+            }
+            out.append(json, runStart, pos);
+            pos++;
+            if (pos >= length) throw error("Unterminated escape sequence");
+            char e = json.charAt(pos++);
+            switch (e) {
+                case '"': out.append('"'); break;
+                case '\\': out.append('\\'); break;
+                case '/': out.append('/'); break;
+                case 'b': out.append('\b'); break;
+                case 'f': out.append('\f'); break;
+                case 'n': out.append('\n'); break;
+                case 'r': out.append('\r'); break;
+                case 't': out.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > length) throw error("Unterminated escape sequence");
+                    try {
+                        out.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("Invalid unicode escape");
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    throw error("Invalid escape sequence");
+            }
+            runStart = pos;
+        }
+    }
+
+    /**
+     * Skips one JSON value of any type, including nested objects and arrays.
+     */
+    private void skipValue() throws PrintJobFormatException {
+        char c = peek();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                if (pos >= length) throw error("Unterminated object or array");
+                c = json.charAt(pos);
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                if (c == '{' || c == '[') depth++;
+                else if (c == '}' || c == ']') depth--;
+                pos++;
+            } while (depth > 0);
+        } else {
+            int start = pos;
+            while (pos < length) {
+                c = json.charAt(pos);
+                if (c == ',' || c == '}' || c == ']' || isWhitespace(c)) break;
+                pos++;
+            }
+            if (pos == start) throw error("Expected a value");
+        }
+    }
+
+    private void skipString() throws PrintJobFormatException {
+        pos++;
+        while (true) {
+            if (pos >= length) throw error("Unterminated string");
+            char c = json.charAt(pos++);
+            if (c == '"') return;
+            if (c == '\\') pos++;
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < length && isWhitespace(json.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private char peek() throws PrintJobFormatException {
+        if (pos >= length) throw error("Unexpected end of input");
+        return json.charAt(pos);
+    }
+
+    private char next() throws PrintJobFormatException {
+        char c = peek();
+        pos++;
+        return c;
+    }
+
+    private void expect(char expected) throws PrintJobFormatException {
+        if (next() != expected) {
+            pos--;
+            throw error("Expected '" + expected + "'");
+        }
+    }
+
+    private PrintJobFormatException error(String message) {
+        return new PrintJobFormatException(message, pos);
+    }
+}
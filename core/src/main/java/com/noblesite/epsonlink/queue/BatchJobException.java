@@ -0,0 +1,25 @@
+package com.noblesite.epsonlink.queue;
+
+import com.noblesite.epsonlink.model.PrintJob;
+
+/**
+ * Thrown by {@link PrintJobQueue.Processor#processBatch} when one job of a
+ * batch cannot be printed on its own account, e.g. its payload is invalid.
+ * Nothing was sent; that job fails and the rest of the batch is tried again
+ * without it.
+ */
+public class BatchJobException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final PrintJob job;
+
+    public BatchJobException(PrintJob job, Throwable cause) {
+        super(cause.getMessage() != null ? cause.getMessage() : cause.toString(), cause);
+        this.job = job;
+    }
+
+    public PrintJob getJob() {
+        return job;
+    }
+}
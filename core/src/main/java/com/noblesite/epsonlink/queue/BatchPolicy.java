@@ -0,0 +1,46 @@
+package com.noblesite.epsonlink.queue;
+
+/**
+ * How a printer's worker coalesces small jobs into one transmission: after
+ * taking a job it keeps gathering jobs that arrive within the window, up to
+ * a job count and byte limit. Immutable.
+ */
+public final class BatchPolicy {
+
+    public static final int DEFAULT_MAX_JOBS = 8;
+    public static final int DEFAULT_MAX_BYTES = 32 * 1024;
+
+    /** Every job is sent on its own. */
+    public static final BatchPolicy DISABLED = new BatchPolicy(0, 1, DEFAULT_MAX_BYTES);
+
+    private final long windowMs;
+    private final int maxJobs;
+    private final long maxBytes;
+
+    /**
+     * @param windowMs How long to wait for more jobs after the first, 0 to disable batching.
+     * @param maxJobs Most jobs in one transmission.
+     * @param maxBytes Most command bytes in one transmission; a larger single job is still sent alone.
+     */
+    public BatchPolicy(long windowMs, int maxJobs, long maxBytes) {
+        this.windowMs = Math.max(0, windowMs);
+        this.maxJobs = Math.max(1, maxJobs);
+        this.maxBytes = Math.max(1, maxBytes);
+    }
+
+    public boolean isEnabled() {
+        return windowMs > 0 && maxJobs > 1;
+    }
+
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    public int getMaxJobs() {
+        return maxJobs;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
@@ -0,0 +1,241 @@
+package com.noblesite.epsonlink.queue;
+
+import com.noblesite.epsonlink.interfaces.PrinterCallback;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Remembers the idempotency keys of recent jobs, so a job submitted twice
+ * (a page retrying after a timeout, a reload replaying the print URL) is
+ * printed once and the repeat gets the first job's id and outcome. A key
+ * whose job failed is free again, so resubmitting it retries the print.
+ *
+ * Fixed-size and lock-free: a key hashes to one slot, which holds a short
+ * immutable list of entries replaced with compare-and-set. A claim reads
+ * and copies at most {@link #ENTRIES_PER_SLOT} entries, so it takes the
+ * same time however many keys are remembered. Keys are forgotten once
+ * their time to live passes, or earlier if newer keys crowd their slot.
+ */
+public final class DedupIndex {
+    public static final int DEFAULT_SLOTS = 1024;
+    public static final long DEFAULT_TTL_MS = 10 * 60_000;
+    static final int ENTRIES_PER_SLOT = 4;
+
+    /**
+     * The job that holds a key, whether it has printed, and the repeats
+     * waiting to hear how it went.
+     */
+    public static final class Entry {
+        private final String key;
+        private final String jobId;
+        private final long expiresAtNanos;
+        private volatile boolean completed;
+        private volatile boolean failed;
+        // Guarded by this entry; null once the outcome is known.
+        private List<PrinterCallback> followers = new ArrayList<>(1);
+        private String error;
+
+        Entry(String key, String jobId, long expiresAtNanos) {
+            this.key = key;
+            this.jobId = jobId;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getJobId() {
+            return jobId;
+        }
+
+        /**
+         * @return true once the job has printed; false while it is queued.
+         */
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return true while the entry still holds its key: not expired, and the job has not failed.
+         */
+        boolean isLive(long now) {
+            return expiresAtNanos - now > 0 && !failed;
+        }
+
+        /**
+         * Tells {@code callback} the job's outcome: when the job completes
+         * or fails, or right away if it already has.
+         */
+        public void follow(PrinterCallback callback) {
+            synchronized (this) {
+                if (followers != null) {
+                    followers.add(callback);
+                    return;
+                }
+            }
+            report(callback, error);
+        }
+
+        /**
+         * Records the outcome, {@code error} null for success.
+         * @return The repeats to notify.
+         */
+        private List<PrinterCallback> settle(String error) {
+            synchronized (this) {
+                this.error = error;
+                if (error == null) {
+                    completed = true;
+                } else {
+                    failed = true;
+                }
+                List<PrinterCallback> waiting = followers;
+                followers = null;
+                return waiting != null ? waiting : Collections.emptyList();
+            }
+        }
+
+        private void report(PrinterCallback callback, String error) {
+            if (error == null) {
+                callback.onJobCompleted(jobId);
+            } else {
+                callback.onJobFailed(jobId, error);
+            }
+        }
+    }
+
+    private static final class Node {
+        final Entry entry;
+        final Node next;
+
+        Node(Entry entry, Node next) {
+            this.entry = entry;
+            this.next = next;
+        }
+    }
+
+    private final AtomicReferenceArray<Node> slots;
+    private final int mask;
+    private volatile long ttlNanos;
+
+    /**
+     * @param slots Rounded up to a power of two; up to {@link #ENTRIES_PER_SLOT} keys are kept per slot.
+     */
+    public DedupIndex(int slots, long ttlMs) {
+        int size = slots > 1 ? Integer.highestOneBit(slots - 1) << 1 : 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    /**
+     * @param ttlMs How long a key is remembered, 0 to turn deduplication off.
+     */
+    public void setTtlMs(long ttlMs) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    public boolean isEnabled() {
+        return ttlNanos > 0;
+    }
+
+    /**
+     * Records a key for a new job, unless a job holding it is still remembered and has not failed.
+     * @return The entry holding the key: a new one for {@code jobId}, or the
+     *         earlier job's if the key was taken.
+     */
+    public Entry claim(String key, String jobId) {
+        int index = slotOf(key);
+        Entry fresh = null;
+        while (true) {
+            long now = System.nanoTime();
+            Node head = slots.get(index);
+            for (Node node = head; node != null; node = node.next) {
+                if (node.entry.key.equals(key) && node.entry.isLive(now)) return node.entry;
+            }
+            if (fresh == null) {
+                fresh = new Entry(key, jobId, now + ttlNanos);
+            }
+            // Newest first; expired entries and the oldest beyond the limit are dropped.
+            if (slots.compareAndSet(index, head, new Node(fresh, copyLive(head, now, ENTRIES_PER_SLOT - 1)))) {
+                return fresh;
+            }
+        }
+    }
+
+    /**
+     * Forgets a key whose job was not accepted after all, so a retry is not taken for a repeat.
+     */
+    public void release(Entry entry) {
+        int index = slotOf(entry.key);
+        while (true) {
+            Node head = slots.get(index);
+            Node updated = without(head, entry);
+            if (updated == head || slots.compareAndSet(index, head, updated)) return;
+        }
+    }
+
+    /**
+     * @return A callback that records the job's outcome on the entry, then
+     *         passes it on to the submitter and to any repeats following it.
+     * @param callback The submitter's callback, or null.
+     */
+    public static PrinterCallback recordingOutcome(Entry entry, PrinterCallback callback) {
+        return new PrinterCallback() {
+            @Override
+            public void onJobCompleted(String jobId) {
+                List<PrinterCallback> waiting = entry.settle(null);
+                if (callback != null) callback.onJobCompleted(jobId);
+                for (PrinterCallback follower : waiting) {
+                    follower.onJobCompleted(jobId);
+                }
+            }
+
+            @Override
+            public void onJobFailed(String jobId, String error) {
+                List<PrinterCallback> waiting = entry.settle(error != null ? error : "Print failed");
+                if (callback != null) callback.onJobFailed(jobId, error);
+                for (PrinterCallback follower : waiting) {
+                    follower.onJobFailed(jobId, error);
+                }
+            }
+        };
+    }
+
+    private int slotOf(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * @return The first {@code limit} live entries of the list, in order.
+     */
+    private static Node copyLive(Node head, long now, int limit) {
+        Entry[] kept = new Entry[limit];
+        int count = 0;
+        for (Node node = head; node != null && count < limit; node = node.next) {
+            if (node.entry.isLive(now)) {
+                kept[count++] = node.entry;
+            }
+        }
+        Node copy = null;
+        for (int i = count - 1; i >= 0; i--) {
+            copy = new Node(kept[i], copy);
+        }
+        return copy;
+    }
+
+    /**
+     * @return The list without the entry, or {@code head} itself if it is not there.
+     */
+    private static Node without(Node head, Entry entry) {
+        if (head == null) return null;
+        if (head.entry == entry) return head.next;
+        Node rest = without(head.next, entry);
+        return rest == head.next ? head : new Node(head.entry, rest);
+    }
+}
@@ -0,0 +1,220 @@
+package com.noblesite.epsonlink.queue;
+
+import com.noblesite.epsonlink.model.JobPriority;
+import com.noblesite.epsonlink.model.PrintJob;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes jobs across the attached printers. Each printer has its own
+ * queue and worker, so throughput scales with the number of printers.
+ *
+ * Jobs go to an available printer chosen by the {@link RoutingPolicy};
+ * when none can take a job it waits in a bounded backlog until one can.
+ * A printer that fails a job hands it back through {@link #reroute} so
+ * another printer can print it. Thread-safe. Pure Java.
+ */
+public class JobDispatcher {
+
+    /**
+     * A printer jobs can be routed to.
+     */
+    public interface Target {
+        /**
+         * @return The role this printer serves, or null if it has none.
+         */
+        String getRole();
+
+        /**
+         * @return true if the printer is initialized and not known to be failing.
+         */
+        boolean isAvailable();
+
+        /**
+         * @return Jobs waiting in this printer's queue.
+         */
+        int queuedJobs();
+
+        /**
+         * Hands a job to this printer's queue without blocking.
+         * @return false if the queue is full or shut down.
+         */
+        boolean offer(PrintJob job);
+    }
+
+    private final List<Target> targets = new CopyOnWriteArrayList<>();
+    private final Deque<PrintJob> backlog = new ArrayDeque<>();
+    private final int backlogCapacity;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private volatile RoutingPolicy policy = RoutingPolicy.LEAST_QUEUED;
+
+    public JobDispatcher(int backlogCapacity) {
+        this.backlogCapacity = backlogCapacity;
+    }
+
+    public void setPolicy(RoutingPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Adds a printer and moves any backlog it can take onto it.
+     */
+    public void addTarget(Target target) {
+        targets.add(target);
+        drainBacklog();
+    }
+
+    public void removeTarget(Target target) {
+        targets.remove(target);
+    }
+
+    public List<Target> getTargets() {
+        return targets;
+    }
+
+    /**
+     * Routes a new job.
+     * @return false if no printer could take it and the backlog is full.
+     */
+    public boolean dispatch(PrintJob job) {
+        synchronized (backlog) {
+            // Keep order: while older jobs of the same or a more urgent lane wait, new ones queue behind them.
+            if (!waitingAhead(job.getPriority()) && offerToBest(job, null)) {
+                return true;
+            }
+            if (backlog.size() >= backlogCapacity) {
+                return false;
+            }
+            backlog.addLast(job);
+        }
+        drainBacklog();
+        return true;
+    }
+
+    /**
+     * Moves a job off a failing printer.
+     * @param from The printer that could not print it.
+     * @return true if another printer took the job; false to keep it on {@code from}.
+     */
+    public boolean reroute(PrintJob job, Target from) {
+        return offerToBest(job, from);
+    }
+
+    /**
+     * Queues jobs recovered after a restart, or taken off a detached printer, ahead of everything else.
+     * Unlike {@link #dispatch}, this ignores the backlog bound so no recovered job is dropped.
+     */
+    public void addRecovered(List<PrintJob> jobs) {
+        synchronized (backlog) {
+            for (int i = jobs.size() - 1; i >= 0; i--) {
+                backlog.addFirst(jobs.get(i));
+            }
+        }
+        drainBacklog();
+    }
+
+    /**
+     * Hands waiting jobs to printers that have become available, most urgent lane first.
+     * A job whose role has no available printer does not block jobs for other roles.
+     */
+    public void drainBacklog() {
+        synchronized (backlog) {
+            for (JobPriority priority : JobPriority.values()) {
+                Iterator<PrintJob> it = backlog.iterator();
+                while (it.hasNext()) {
+                    PrintJob job = it.next();
+                    if (job.getPriority() == priority && offerToBest(job, null)) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean waitingAhead(JobPriority priority) {
+        for (PrintJob waiting : backlog) {
+            if (waiting.getPriority().compareTo(priority) <= 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return Jobs waiting for a printer.
+     */
+    public int backlogSize() {
+        synchronized (backlog) {
+            return backlog.size();
+        }
+    }
+
+    /**
+     * @return Jobs of one lane waiting for a printer.
+     */
+    public int backlogSize(JobPriority priority) {
+        synchronized (backlog) {
+            int count = 0;
+            for (PrintJob job : backlog) {
+                if (job.getPriority() == priority) count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Removes and returns the backlog, e.g. on shutdown.
+     */
+    public List<PrintJob> clearBacklog() {
+        synchronized (backlog) {
+            List<PrintJob> jobs = new ArrayList<>(backlog);
+            backlog.clear();
+            return jobs;
+        }
+    }
+
+    private boolean offerToBest(PrintJob job, Target exclude) {
+        Target target = select(job.getRole(), exclude);
+        return target != null && target.offer(job);
+    }
+
+    /**
+     * @return The printer for a job with the given role, or null if none is available.
+     */
+    Target select(String role, Target exclude) {
+        List<Target> snapshot = targets;
+        int size = snapshot.size();
+        if (size == 0) return null;
+        Target best = null;
+        if (policy == RoutingPolicy.ROUND_ROBIN) {
+            int start = Math.floorMod(nextIndex.getAndIncrement(), size);
+            for (int i = 0; i < size && best == null; i++) {
+                Target candidate = snapshot.get((start + i) % size);
+                if (eligible(candidate, role, exclude)) {
+                    best = candidate;
+                }
+            }
+        } else {
+            int fewest = Integer.MAX_VALUE;
+            for (Target candidate : snapshot) {
+                if (!eligible(candidate, role, exclude)) continue;
+                int queued = candidate.queuedJobs();
+                if (queued < fewest) {
+                    fewest = queued;
+                    best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static boolean eligible(Target target, String role, Target exclude) {
+        return target != exclude
+            && target.isAvailable()
+            && (role == null || role.equals(target.getRole()));
+    }
+}
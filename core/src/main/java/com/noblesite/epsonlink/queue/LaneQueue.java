@@ -0,0 +1,190 @@
+package com.noblesite.epsonlink.queue;
+
+import com.noblesite.epsonlink.model.JobPriority;
+import com.noblesite.epsonlink.model.PrintJob;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded job queue with one FIFO lane per {@link JobPriority}. The next job
+ * is the oldest of the most urgent lane, unless a less urgent job has waited
+ * longer than the aging limit: then the longest-waiting job goes first, so
+ * reports are delayed by receipts but never starved. A job's wait counts
+ * from when it was submitted, so putting it back between its parts, or
+ * moving it from another printer, does not restart it.
+ */
+final class LaneQueue {
+
+    private final List<ArrayDeque<PrintJob>> lanes;
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private volatile long maxWaitNanos;
+    private int size;
+
+    LaneQueue(int capacity, long maxWaitMs) {
+        this.capacity = capacity;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        int count = JobPriority.values().length;
+        this.lanes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lanes.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * @param maxWaitMs Longest a job waits behind more urgent lanes, 0 for strict priority.
+     */
+    void setMaxWaitMs(long maxWaitMs) {
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+    }
+
+    /**
+     * @return false if the queue is full.
+     */
+    boolean offer(PrintJob job) {
+        lock.lock();
+        try {
+            if (size >= capacity) return false;
+            lanes.get(job.getPriority().ordinal()).addLast(job);
+            size++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts a job back at the head of its lane, e.g. between the parts of a
+     * long job. Ignores the capacity, since the job was already queued.
+     */
+    void addFirst(PrintJob job) {
+        lock.lock();
+        try {
+            lanes.get(job.getPriority().ordinal()).addFirst(job);
+            size++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    PrintJob take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                notEmpty.await();
+            }
+            return remove();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The next job, or null if none arrived in time.
+     */
+    PrintJob poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (remaining <= 0) return null;
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return remove();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    PrintJob poll() {
+        lock.lock();
+        try {
+            return size > 0 ? remove() : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The job {@link #poll()} would return now, without removing it.
+     */
+    PrintJob peek() {
+        lock.lock();
+        try {
+            return size > 0 ? lanes.get(nextLane()).peekFirst() : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size(JobPriority priority) {
+        lock.lock();
+        try {
+            return lanes.get(priority.ordinal()).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every job, most urgent lane first.
+     */
+    void drainTo(List<PrintJob> out) {
+        lock.lock();
+        try {
+            for (ArrayDeque<PrintJob> lane : lanes) {
+                out.addAll(lane);
+                lane.clear();
+            }
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PrintJob remove() {
+        size--;
+        return lanes.get(nextLane()).pollFirst();
+    }
+
+    /**
+     * @return The lane to serve next; only called while a job is queued.
+     */
+    private int nextLane() {
+        int lane = -1;
+        long since = 0;
+        long limit = maxWaitNanos;
+        long now = System.nanoTime();
+        for (int i = 0; i < lanes.size(); i++) {
+            PrintJob head = lanes.get(i).peekFirst();
+            if (head == null) continue;
+            long queued = head.getEnqueuedAtNanos();
+            if (lane < 0) {
+                lane = i;
+                since = queued;
+            } else if (limit > 0 && now - queued > limit && queued < since) {
+                // Waited too long behind more urgent lanes, and longer than their next job.
+                lane = i;
+                since = queued;
+            }
+        }
+        return lane;
+    }
+}
@@ -0,0 +1,375 @@
+package com.noblesite.epsonlink.queue;
+
+import com.noblesite.epsonlink.model.JobPriority;
+import com.noblesite.epsonlink.model.PrintJob;
+import com.noblesite.epsonlink.retry.ErrorDisposition;
+import com.noblesite.epsonlink.retry.RetryPolicy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded FIFO of print jobs for one printer, drained by that printer's
+ * worker thread. Callers enqueue and return immediately; the printer's
+ * ePOS2 SDK instance is only ever touched from its worker.
+ *
+ * A job the printer cannot take right now is first offered to the
+ * {@link Failover}, then held in order: transient errors are retried with
+ * jittered exponential backoff, and once the {@link RetryPolicy} is
+ * exhausted (or the printer needs an operator) the job waits for {@link #resume()}.
+ *
+ * Jobs wait in one lane per {@link JobPriority}: receipts go before kitchen
+ * tickets and reports, but a job that has waited longer than the lane wait
+ * limit goes first. A job rendered in parts goes back to the head of its lane
+ * after each part, so more urgent jobs print between the parts. A job that
+ * has started printing is not moved to another printer, so its output is
+ * never split across two.
+ *
+ * With a {@link BatchPolicy}, jobs arriving close together are gathered and
+ * handed to {@link Processor#processBatch} to go out in one transmission.
+ * A batch is held, retried and rerouted like a single job, and each job's
+ * outcome is still reported through its own callback.
+ */
+public class PrintJobQueue {
+    private static final Logger LOG = Logger.getLogger("PrintJobQueue");
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final long DEFAULT_MAX_LANE_WAIT_MS = 30_000;
+
+    /**
+     * Prints one job on the worker thread. Throwing marks the job as failed,
+     * except for {@link PrinterUnavailableException}, which holds it for a retry.
+     */
+    public interface Processor {
+        void process(PrintJob job) throws Exception;
+
+        /**
+         * Prints several jobs in one transmission. Only called when batching is on.
+         * Either all of them are sent or none are, so a held batch is never printed in part.
+         * @throws BatchJobException if one job cannot be printed on its own; nothing was sent.
+         */
+        void processBatch(List<PrintJob> jobs) throws Exception;
+    }
+
+    /**
+     * Prepares the next job while the printer is still printing the one
+     * just sent. Best effort: anything that goes wrong surfaces when the job
+     * itself is processed.
+     */
+    public interface Lookahead {
+        void prepare(PrintJob next);
+    }
+
+    /**
+     * Takes a job this printer cannot print right now.
+     */
+    public interface Failover {
+        /**
+         * @return true if another printer accepted the job.
+         */
+        boolean reroute(PrintJob job);
+    }
+
+    private final LaneQueue jobs;
+    private final Processor processor;
+    private final PrintJournal journal;
+    private final Thread worker;
+    private final Object resumeLock = new Object();
+    private volatile boolean running = true;
+    private volatile RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    private volatile Failover failover;
+    private volatile Lookahead lookahead;
+    private volatile Runnable onJobDone;
+    private volatile BatchPolicy batchPolicy = BatchPolicy.DISABLED;
+    // Jobs held for a retry.
+    private volatile List<PrintJob> heldJobs = Collections.emptyList();
+    private boolean resumeRequested;
+
+    public PrintJobQueue(String name, int capacity, Processor processor) {
+        this(name, capacity, processor, null);
+    }
+
+    /**
+     * @param name Printer name, used for the worker thread.
+     * @param journal Journal the jobs were recorded in; finished jobs are marked done in it. May be null.
+     */
+    public PrintJobQueue(String name, int capacity, Processor processor, PrintJournal journal) {
+        this.jobs = new LaneQueue(capacity, DEFAULT_MAX_LANE_WAIT_MS);
+        this.processor = processor;
+        this.journal = journal;
+        this.worker = new Thread(this::drain, "PrintJobQueue-" + name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queues a job without blocking. The caller journals it first.
+     * @return false if the queue is full or shut down.
+     */
+    public boolean offer(PrintJob job) {
+        return running && jobs.offer(job);
+    }
+
+    /**
+     * @return Number of jobs waiting to be printed, including a held job.
+     */
+    public int size() {
+        return jobs.size() + heldJobs.size();
+    }
+
+    /**
+     * @return Number of jobs waiting in one lane, not counting held jobs.
+     */
+    public int size(JobPriority priority) {
+        return jobs.size(priority);
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public void setFailover(Failover failover) {
+        this.failover = failover;
+    }
+
+    public void setLookahead(Lookahead lookahead) {
+        this.lookahead = lookahead;
+    }
+
+    /**
+     * @param onJobDone Run on the worker each time a job leaves this queue, e.g. to refill it from a backlog.
+     */
+    public void setOnJobDone(Runnable onJobDone) {
+        this.onJobDone = onJobDone;
+    }
+
+    /**
+     * @param maxLaneWaitMs Longest a job waits behind more urgent lanes before it goes first, 0 for strict priority.
+     */
+    public void setMaxLaneWaitMs(long maxLaneWaitMs) {
+        jobs.setMaxWaitMs(maxLaneWaitMs);
+    }
+
+    /**
+     * Turns batching on or off.
+     */
+    public void setBatchPolicy(BatchPolicy batchPolicy) {
+        this.batchPolicy = batchPolicy;
+    }
+
+    /**
+     * Signals that the printer may be able to print again, so a held job is retried now.
+     */
+    public void resume() {
+        synchronized (resumeLock) {
+            resumeRequested = true;
+            resumeLock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops the worker without failing anything, e.g. when the printer is detached.
+     * @return The jobs that had not printed, held jobs first, so they can be routed elsewhere.
+     */
+    public List<PrintJob> stop() {
+        running = false;
+        worker.interrupt();
+        try {
+            // Let a job that is mid-print finish, so it is not printed twice.
+            worker.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<PrintJob> pending = new ArrayList<>(heldJobs);
+        jobs.drainTo(pending);
+        return pending;
+    }
+
+    /**
+     * Stops the worker. Jobs still waiting are reported as failed; they stay
+     * in the journal and are replayed on the next start.
+     */
+    public void shutdown() {
+        for (PrintJob job : stop()) {
+            notifyFailed(job, "Printer queue shut down");
+        }
+    }
+
+    private void drain() {
+        while (running) {
+            List<PrintJob> batch = nextBatch();
+            if (batch == null || !process(batch)) return;
+            Runnable done = onJobDone;
+            if (done != null) {
+                done.run();
+            }
+            Lookahead next = lookahead;
+            PrintJob upcoming = jobs.peek();
+            if (next != null && upcoming != null) {
+                next.prepare(upcoming);
+            }
+        }
+    }
+
+    /**
+     * Takes the next job and, when batching, the jobs that follow it within the window.
+     * @return The jobs to print together, or null if the queue was stopped.
+     */
+    private List<PrintJob> nextBatch() {
+        List<PrintJob> batch = new ArrayList<>();
+        try {
+            batch.add(jobs.take());
+            BatchPolicy policy = batchPolicy;
+            if (!policy.isEnabled()) return batch;
+
+            long bytes = sizeOf(batch.get(0));
+            if (sendsAlone(batch.get(0))) return batch;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.getWindowMs());
+            while (batch.size() < policy.getMaxJobs()) {
+                long remaining = deadline - System.nanoTime();
+                PrintJob next = remaining > 0 ? jobs.poll(remaining, TimeUnit.NANOSECONDS) : jobs.poll();
+                if (next == null) break;
+                long size = sizeOf(next);
+                if (bytes + size > policy.getMaxBytes() || sendsAlone(next)) {
+                    jobs.addFirst(next);
+                    break;
+                }
+                bytes += size;
+                batch.add(next);
+            }
+            return batch;
+        } catch (InterruptedException e) {
+            // Stopped while gathering; hand what was taken back through stop().
+            heldJobs = batch;
+            return null;
+        }
+    }
+
+    /**
+     * A job sent in parts or streamed goes alone, so other jobs can print between its parts.
+     */
+    private static boolean sendsAlone(PrintJob job) {
+        return job.getChunkCount() > 1 || job.isStreamed();
+    }
+
+    /**
+     * Renders the job through the lookahead if it is not rendered yet, so its real size is known.
+     */
+    private long sizeOf(PrintJob job) {
+        Lookahead prepare = lookahead;
+        if (job.getCommands() == null && prepare != null) {
+            prepare.prepare(job);
+        }
+        byte[] commands = job.getCommands();
+        return commands != null ? commands.length : job.getPayload().length();
+    }
+
+    /**
+     * Prints a job or batch, holding it while the printer is unavailable.
+     * @return false if the queue stopped while the jobs were held.
+     */
+    private boolean process(List<PrintJob> batch) {
+        int attempt = 0;
+        while (running) {
+            if (batch.isEmpty()) return true;
+            try {
+                if (batch.size() == 1) {
+                    PrintJob job = batch.get(0);
+                    processor.process(job);
+                    if (job.isPartlySent()) {
+                        // Let more urgent jobs go before the next part.
+                        jobs.addFirst(job);
+                        return true;
+                    }
+                } else {
+                    processor.processBatch(batch);
+                }
+                for (PrintJob job : batch) {
+                    finish(job);
+                    if (job.getCallback() != null) {
+                        job.getCallback().onJobCompleted(job.getId());
+                    }
+                }
+                return true;
+            } catch (BatchJobException e) {
+                PrintJob job = e.getJob();
+                LOG.log(Level.SEVERE, "process: Job " + job.getId() + " failed", e.getCause());
+                batch.remove(job);
+                finish(job);
+                notifyFailed(job, e.getMessage());
+            } catch (PrinterUnavailableException e) {
+                Failover target = failover;
+                if (target != null) {
+                    Iterator<PrintJob> it = batch.iterator();
+                    while (it.hasNext()) {
+                        PrintJob job = it.next();
+                        if (!job.isPartlySent() && target.reroute(job)) {
+                            LOG.warning("process: Moved job " + job.getId() + " to another printer: " + e.getMessage());
+                            it.remove();
+                        }
+                    }
+                    if (batch.isEmpty()) return true;
+                }
+                attempt++;
+                RetryPolicy policy = retryPolicy;
+                long waitMs;
+                if (e.getDisposition() == ErrorDisposition.RETRYABLE && policy.shouldRetry(attempt)) {
+                    waitMs = policy.backoffMs(attempt);
+                } else {
+                    // Nothing more to gain from quick retries; poll slowly until resumed.
+                    waitMs = policy.getMaxDelayMs();
+                }
+                waitMs = Math.max(waitMs, e.getRetryAfterMs());
+                LOG.warning("process: Holding " + describe(batch) + " for " + waitMs + " ms: " + e.getMessage());
+                heldJobs = new ArrayList<>(batch);
+                boolean resumed = awaitResume(waitMs);
+                if (!resumed) return false;
+                heldJobs = Collections.emptyList();
+            } catch (Exception e) {
+                LOG.log(Level.SEVERE, "process: " + describe(batch) + " failed", e);
+                String error = e.getMessage() != null ? e.getMessage() : e.toString();
+                for (PrintJob job : batch) {
+                    finish(job);
+                    notifyFailed(job, error);
+                }
+                return true;
+            }
+        }
+        heldJobs = new ArrayList<>(batch);
+        return false;
+    }
+
+    private static String describe(List<PrintJob> batch) {
+        return batch.size() == 1 ? "job " + batch.get(0).getId() : "batch of " + batch.size() + " jobs";
+    }
+
+    private boolean awaitResume(long timeoutMs) {
+        synchronized (resumeLock) {
+            try {
+                if (!resumeRequested && timeoutMs > 0) {
+                    resumeLock.wait(timeoutMs);
+                }
+            } catch (InterruptedException e) {
+                return false;
+            }
+            resumeRequested = false;
+        }
+        return running;
+    }
+
+    private void finish(PrintJob job) {
+        if (journal != null) {
+            journal.markDone(job.getId());
+        }
+    }
+
+    private static void notifyFailed(PrintJob job, String error) {
+        if (job.getCallback() != null) {
+            job.getCallback().onJobFailed(job.getId(), error);
+        }
+    }
+}
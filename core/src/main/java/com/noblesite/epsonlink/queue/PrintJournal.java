@@ -0,0 +1,429 @@
+package com.noblesite.epsonlink.queue;
+
+import com.noblesite.epsonlink.model.PrintJob;
+import com.noblesite.epsonlink.parser.PrintJobParser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped journal of queued print jobs, so jobs that
+ * have not printed survive a crash or restart.
+ *
+ * Every record is length-prefixed and CRC32-checked; recovery stops at the
+ * first torn or corrupt record and wipes the tail. All file work happens on
+ * one writer thread: records queued while a batch is being written are
+ * committed together with a single force() (group commit), and the file is
+ * compacted down to the live jobs once mostly dead.
+ *
+ * Thread-safe. Pure Java, so it can be tested without a device.
+ */
+public class PrintJournal implements Closeable {
+
+    public static final long DEFAULT_COMPACT_THRESHOLD_BYTES = 1024 * 1024;
+
+    private static final int FILE_MAGIC = 0x45504C4A; // "EPLJ"
+    // Version 2 added the printer role to ENQUEUE records.
+    private static final int FILE_VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    // Record header: body length then CRC32 of the body.
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int INITIAL_MAP_SIZE = 256 * 1024;
+
+    private static final byte TYPE_ENQUEUE = 1;
+    private static final byte TYPE_DONE = 2;
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private static final Record CLOSE = new Record((byte) 0, null, null);
+
+    private static final class LiveJob {
+        final PrintJob job;
+        final int recordSize;
+
+        LiveJob(PrintJob job, int recordSize) {
+            this.job = job;
+            this.recordSize = recordSize;
+        }
+    }
+
+    private static final class Record {
+        final byte type;
+        final String id;
+        final PrintJob job;
+
+        Record(byte type, String id, PrintJob job) {
+            this.type = type;
+            this.id = id;
+            this.job = job;
+        }
+    }
+
+    private final File file;
+    private final long compactThresholdBytes;
+    private final BlockingQueue<Record> pending = new LinkedBlockingQueue<>();
+    private final CountDownLatch recovered = new CountDownLatch(1);
+    private final Thread writer;
+    private final CRC32 crc = new CRC32();
+
+    // Writer thread state.
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int position;
+    // Jobs without a DONE record, in enqueue order, used for compaction.
+    private final LinkedHashMap<String, LiveJob> live = new LinkedHashMap<>();
+    private long liveBytes;
+
+    // Guarded by this.
+    private long queuedSeq;
+    private long committedSeq;
+    private List<PrintJob> recoveredJobs = Collections.emptyList();
+    private IOException failure;
+    private boolean closed;
+    private long batches;
+
+    /**
+     * Opens the journal and starts recovery in the background.
+     * @param compactThresholdBytes Journal size above which dead records are compacted away.
+     */
+    public PrintJournal(File file, long compactThresholdBytes) {
+        this.file = file;
+        this.compactThresholdBytes = compactThresholdBytes;
+        this.writer = new Thread(this::run, "PrintJournal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Waits for recovery to finish.
+     * @return Jobs that were journaled but never completed, oldest first. Their callbacks are null.
+     * @throws IOException if the journal could not be opened.
+     */
+    public List<PrintJob> awaitRecovered() throws IOException, InterruptedException {
+        recovered.await();
+        synchronized (this) {
+            if (failure != null) throw failure;
+            return recoveredJobs;
+        }
+    }
+
+    /**
+     * Records a newly queued job. Returns immediately; the write is committed by the writer thread.
+     */
+    public void append(PrintJob job) {
+        enqueue(new Record(TYPE_ENQUEUE, job.getId(), job));
+    }
+
+    /**
+     * Records that a job finished, successfully or not, so it is not replayed.
+     */
+    public void markDone(String jobId) {
+        enqueue(new Record(TYPE_DONE, jobId, null));
+    }
+
+    /**
+     * Blocks until every record queued so far is on disk.
+     * @throws IOException if the journal has failed.
+     */
+    public void flush() throws IOException, InterruptedException {
+        synchronized (this) {
+            long target = queuedSeq;
+            while (committedSeq < target && failure == null && !closed) {
+                wait();
+            }
+            if (failure != null) throw failure;
+        }
+    }
+
+    /**
+     * @return Number of group commits so far.
+     */
+    public synchronized long getBatchCount() {
+        return batches;
+    }
+
+    /**
+     * Commits outstanding records and releases the file.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        pending.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(Record record) {
+        synchronized (this) {
+            if (closed || failure != null) return;
+            queuedSeq++;
+        }
+        pending.add(record);
+    }
+
+    private void run() {
+        try {
+            open();
+        } catch (IOException e) {
+            fail(e);
+            recovered.countDown();
+            return;
+        }
+        recovered.countDown();
+
+        List<Record> batch = new ArrayList<>();
+        boolean closing = false;
+        while (!closing) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            pending.drainTo(batch);
+            int committed = 0;
+            try {
+                for (Record record : batch) {
+                    if (record == CLOSE) {
+                        closing = true;
+                        continue;
+                    }
+                    write(record);
+                    committed++;
+                }
+                map.force();
+                if (position > compactThresholdBytes && liveBytes * 2 < position) {
+                    compact();
+                }
+            } catch (IOException e) {
+                fail(e);
+                break;
+            }
+            synchronized (this) {
+                committedSeq += committed;
+                batches++;
+                notifyAll();
+            }
+            batch.clear();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Everything committed has already been forced.
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    private void fail(IOException e) {
+        synchronized (this) {
+            failure = e;
+            notifyAll();
+        }
+    }
+
+    private void open() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        map(Math.max(INITIAL_MAP_SIZE, (int) channel.size()));
+        int version = map.getInt(4);
+        if (map.getInt(0) != FILE_MAGIC || version < 1 || version > FILE_VERSION) {
+            // New or unrecognized file: start empty.
+            clear(0, map.capacity());
+            map.putInt(0, FILE_MAGIC);
+            map.putInt(4, FILE_VERSION);
+            position = HEADER_SIZE;
+            map.force();
+        } else {
+            recover(version);
+        }
+        List<PrintJob> jobs = new ArrayList<>(live.size());
+        for (LiveJob entry : live.values()) {
+            jobs.add(entry.job);
+        }
+        synchronized (this) {
+            recoveredJobs = Collections.unmodifiableList(jobs);
+        }
+    }
+
+    private void recover(int version) {
+        int pos = HEADER_SIZE;
+        int limit = map.capacity();
+        while (pos + RECORD_HEADER_SIZE <= limit) {
+            int length = map.getInt(pos);
+            if (length == 0) break;
+            int bodyStart = pos + RECORD_HEADER_SIZE;
+            if (length < 0 || length > limit - bodyStart || checksum(bodyStart, length) != map.getInt(pos + 4)) {
+                // Torn or corrupt write: everything from here on is discarded.
+                clear(pos, limit);
+                map.force();
+                break;
+            }
+            apply(bodyStart, length, version);
+            pos = bodyStart + length;
+        }
+        position = pos;
+    }
+
+    private void apply(int bodyStart, int length, int version) {
+        byte type = map.get(bodyStart);
+        int idLength = map.getShort(bodyStart + 1) & 0xFFFF;
+        String id = readString(bodyStart + 3, idLength);
+        if (type == TYPE_ENQUEUE) {
+            int payloadStart = bodyStart + 3 + idLength;
+            String role = null;
+            if (version >= 2) {
+                int roleLength = map.getShort(payloadStart) & 0xFFFF;
+                if (roleLength > 0) {
+                    role = readString(payloadStart + 2, roleLength);
+                }
+                payloadStart += 2 + roleLength;
+            }
+            String payload = readString(payloadStart, bodyStart + length - payloadStart);
+            addLive(new PrintJob(id, payload, null, role, PrintJobParser.readPriority(payload)),
+                RECORD_HEADER_SIZE + length);
+        } else if (type == TYPE_DONE) {
+            removeLive(id);
+        }
+    }
+
+    private void write(Record record) throws IOException {
+        if (record.type == TYPE_DONE) {
+            if (!live.containsKey(record.id)) return;
+            removeLive(record.id);
+        }
+        byte[] id = record.id.getBytes(StandardCharsets.UTF_8);
+        byte[] role = NO_BYTES;
+        byte[] payload = NO_BYTES;
+        int length = 3 + id.length;
+        if (record.type == TYPE_ENQUEUE) {
+            if (record.job.getRole() != null) {
+                role = record.job.getRole().getBytes(StandardCharsets.UTF_8);
+            }
+            payload = record.job.getPayload().getBytes(StandardCharsets.UTF_8);
+            length += 2 + role.length + payload.length;
+        }
+        if (id.length > 0xFFFF || role.length > 0xFFFF) {
+            throw new IOException("Job id or role too long");
+        }
+        ensureCapacity(RECORD_HEADER_SIZE + length);
+        int bodyStart = position + RECORD_HEADER_SIZE;
+        map.position(bodyStart);
+        map.put(record.type);
+        map.putShort((short) id.length);
+        map.put(id);
+        if (record.type == TYPE_ENQUEUE) {
+            map.putShort((short) role.length);
+            map.put(role);
+            map.put(payload);
+        }
+        map.putInt(position + 4, checksum(bodyStart, length));
+        // The length goes in last, so a crash before this point leaves a zero length that ends the log.
+        map.putInt(position, length);
+        position = bodyStart + length;
+        if (record.type == TYPE_ENQUEUE) {
+            addLive(record.job, RECORD_HEADER_SIZE + length);
+        }
+    }
+
+    private void addLive(PrintJob job, int recordSize) {
+        removeLive(job.getId());
+        live.put(job.getId(), new LiveJob(job, recordSize));
+        liveBytes += recordSize;
+    }
+
+    private void removeLive(String id) {
+        LiveJob job = live.remove(id);
+        if (job != null) {
+            liveBytes -= job.recordSize;
+        }
+    }
+
+    /**
+     * Rewrites the live jobs into a fresh file and swaps it in.
+     */
+    private void compact() throws IOException {
+        File tmp = new File(file.getPath() + ".compact");
+        LinkedHashMap<String, LiveJob> jobs = new LinkedHashMap<>(live);
+        channel.close();
+        channel = new RandomAccessFile(tmp, "rw").getChannel();
+        channel.truncate(0);
+        map(Math.max(INITIAL_MAP_SIZE, (int) Math.min(Integer.MAX_VALUE, liveBytes * 2 + HEADER_SIZE)));
+        map.putInt(0, FILE_MAGIC);
+        map.putInt(4, FILE_VERSION);
+        position = HEADER_SIZE;
+        live.clear();
+        liveBytes = 0;
+        for (LiveJob entry : jobs.values()) {
+            write(new Record(TYPE_ENQUEUE, entry.job.getId(), entry.job));
+        }
+        map.force();
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (position + bytes <= map.capacity()) return;
+        long size = map.capacity();
+        while (position + bytes > size) {
+            size *= 2;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Journal full");
+        }
+        map((int) size);
+    }
+
+    private void map(int size) throws IOException {
+        // Mapping past the end grows the file; the new region reads as zeros.
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void clear(int from, int to) {
+        byte[] zeros = new byte[Math.min(8192, Math.max(0, to - from))];
+        map.position(from);
+        while (map.position() < to) {
+            map.put(zeros, 0, Math.min(zeros.length, to - map.position()));
+        }
+    }
+
+    private int checksum(int start, int length) {
+        ByteBuffer body = map.duplicate();
+        body.limit(start + length);
+        body.position(start);
+        crc.reset();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private String readString(int start, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = map.duplicate();
+        source.position(start);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,45 @@
+package com.noblesite.epsonlink.queue;
+
+import com.noblesite.epsonlink.retry.ErrorDisposition;
+
+/**
+ * Thrown by a {@link PrintJobQueue.Processor} when the printer cannot take
+ * the job right now (disconnected, out of paper, cover open). The queue
+ * keeps the job and retries it later, instead of failing it.
+ */
+public class PrinterUnavailableException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ErrorDisposition disposition;
+    private final long retryAfterMs;
+
+    /**
+     * Holds the job until the printer reports ready.
+     */
+    public PrinterUnavailableException(String message) {
+        this(message, ErrorDisposition.NEEDS_OPERATOR, 0, null);
+    }
+
+    /**
+     * @param disposition RETRYABLE to retry after a backoff, NEEDS_OPERATOR to wait for the printer.
+     * @param retryAfterMs Minimum wait before the next attempt, 0 for none.
+     */
+    public PrinterUnavailableException(String message, ErrorDisposition disposition, long retryAfterMs,
+                                       Throwable cause) {
+        super(message, cause);
+        if (disposition == ErrorDisposition.FATAL) {
+            throw new IllegalArgumentException("Fatal errors must fail the job");
+        }
+        this.disposition = disposition;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public ErrorDisposition getDisposition() {
+        return disposition;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
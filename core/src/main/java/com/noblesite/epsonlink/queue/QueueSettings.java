@@ -0,0 +1,50 @@
+package com.noblesite.epsonlink.queue;
+
+import com.noblesite.epsonlink.retry.RetryPolicy;
+
+/**
+ * Per-printer queue settings from managed configuration. They are kept here
+ * and applied to each printer's queue when it is created, so a printer
+ * registered or plugged in after the configuration was read gets them too.
+ */
+public final class QueueSettings {
+    private volatile RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    private volatile BatchPolicy batchPolicy = BatchPolicy.DISABLED;
+    private volatile long maxLaneWaitMs = PrintJobQueue.DEFAULT_MAX_LANE_WAIT_MS;
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public BatchPolicy getBatchPolicy() {
+        return batchPolicy;
+    }
+
+    public void setBatchPolicy(BatchPolicy batchPolicy) {
+        this.batchPolicy = batchPolicy;
+    }
+
+    public long getMaxLaneWaitMs() {
+        return maxLaneWaitMs;
+    }
+
+    /**
+     * @param maxLaneWaitMs Longest a job waits behind more urgent lanes, 0 for strict priority.
+     */
+    public void setMaxLaneWaitMs(long maxLaneWaitMs) {
+        this.maxLaneWaitMs = maxLaneWaitMs;
+    }
+
+    /**
+     * Configures a new printer's queue with every setting.
+     */
+    public void applyTo(PrintJobQueue queue) {
+        queue.setRetryPolicy(retryPolicy);
+        queue.setBatchPolicy(batchPolicy);
+        queue.setMaxLaneWaitMs(maxLaneWaitMs);
+    }
+}
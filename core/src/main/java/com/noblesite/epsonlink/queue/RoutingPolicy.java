@@ -0,0 +1,12 @@
+package com.noblesite.epsonlink.queue;
+
+/**
+ * How {@link JobDispatcher} picks among printers that can take a job.
+ * Jobs pinned to a role only ever go to printers with that role.
+ */
+public enum RoutingPolicy {
+    /** Rotate through the eligible printers. */
+    ROUND_ROBIN,
+    /** Pick the printer with the fewest jobs waiting. */
+    LEAST_QUEUED
+}
@@ -0,0 +1,78 @@
+package com.noblesite.epsonlink.render;
+
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer for raw printer commands. Pre-size it with an
+ * accurate estimate so {@link #toByteArray()} can hand back the backing
+ * array without copying.
+ */
+public final class CommandBuffer {
+
+    private byte[] data;
+    private int size;
+
+    public CommandBuffer(int initialCapacity) {
+        data = new byte[Math.max(16, initialCapacity)];
+    }
+
+    public void write(int b) {
+        ensureCapacity(1);
+        data[size++] = (byte) b;
+    }
+
+    public void write(int b0, int b1) {
+        ensureCapacity(2);
+        data[size++] = (byte) b0;
+        data[size++] = (byte) b1;
+    }
+
+    public void write(int b0, int b1, int b2) {
+        ensureCapacity(3);
+        data[size++] = (byte) b0;
+        data[size++] = (byte) b1;
+        data[size++] = (byte) b2;
+    }
+
+    public void write(byte[] bytes) {
+        write(bytes, 0, bytes.length);
+    }
+
+    public void write(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, data, size, length);
+        size += length;
+    }
+
+    /**
+     * Makes room for {@code extra} more bytes.
+     */
+    public void ensureCapacity(int extra) {
+        int required = size + extra;
+        if (required > data.length) {
+            data = Arrays.copyOf(data, Math.max(required, data.length * 2));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Direct access for encoders writing in bulk; valid up to {@link #size()}.
+     */
+    byte[] array() {
+        return data;
+    }
+
+    void advance(int count) {
+        size += count;
+    }
+
+    /**
+     * @return The written bytes; the backing array itself when it is exactly full.
+     */
+    public byte[] toByteArray() {
+        return size == data.length ? data : Arrays.copyOf(data, size);
+    }
+}
@@ -0,0 +1,64 @@
+package com.noblesite.epsonlink.render;
+
+import com.noblesite.epsonlink.image.MonoRaster;
+import com.noblesite.epsonlink.model.PrintDocument;
+
+/**
+ * Translates document commands into raw printer bytes.
+ * Implementations must be stateless so one instance can serve every job.
+ */
+public interface CommandEncoder {
+
+    /**
+     * Writes the commands that reset the printer at the start of a job.
+     */
+    void begin(CommandBuffer out);
+
+    void text(CommandBuffer out, String text);
+
+    void cut(CommandBuffer out);
+
+    void feed(CommandBuffer out, int lines);
+
+    /**
+     * @param alignment One of the PrintDocument.ALIGN_* constants.
+     */
+    void align(CommandBuffer out, int alignment);
+
+    /**
+     * @param style A style packed by PrintDocument.style(...).
+     */
+    void style(CommandBuffer out, int style);
+
+    void image(CommandBuffer out, MonoRaster raster);
+
+    /**
+     * Writes a barcode generated by the printer.
+     * @param options Barcode options packed by PrintDocument.barcode(...).
+     * @throws IllegalArgumentException if the data cannot be sent in one command.
+     */
+    void barcode(CommandBuffer out, int options, String data);
+
+    /**
+     * Writes a QR code generated by the printer.
+     * @param options QR options packed by PrintDocument.qrCode(...).
+     * @throws IllegalArgumentException if the data cannot be sent in one command.
+     */
+    void qrCode(CommandBuffer out, int options, String data);
+
+    /**
+     * @return Bytes written by {@link #image(CommandBuffer, MonoRaster)}.
+     */
+    int imageSize(MonoRaster raster);
+
+    /**
+     * @return Bytes written by {@link #begin(CommandBuffer)}.
+     */
+    int beginSize();
+
+    /**
+     * @return Bytes the command at {@code index} will take, used to pre-size the buffer.
+     *         Images and symbols are prepared ahead of rendering and return 0.
+     */
+    int estimate(PrintDocument document, int index);
+}
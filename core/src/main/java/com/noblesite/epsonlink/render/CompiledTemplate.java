@@ -0,0 +1,152 @@
+package com.noblesite.epsonlink.render;
+
+import com.noblesite.epsonlink.model.PrintDocument;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A template pre-rendered into static command bytes with {{name}}
+ * placeholders left as gaps. Rendering copies the static segments
+ * byte-for-byte and only encodes the variable values.
+ */
+public final class CompiledTemplate {
+
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+
+    // segments.length == gaps.length + 1; gap i is printed between segment i and i + 1.
+    private final byte[][] segments;
+    // Text gaps hold a variable name; symbol gaps hold the symbol data with its placeholders.
+    private final String[] gaps;
+    // OP_TEXT for a text gap, otherwise the symbol opcode.
+    private final byte[] gapOps;
+    private final int[] gapOptions;
+    private final int staticSize;
+
+    private CompiledTemplate(byte[][] segments, String[] gaps, byte[] gapOps, int[] gapOptions) {
+        this.segments = segments;
+        this.gaps = gaps;
+        this.gapOps = gapOps;
+        this.gapOptions = gapOptions;
+        int size = 0;
+        for (byte[] segment : segments) {
+            size += segment.length;
+        }
+        this.staticSize = size;
+    }
+
+    /**
+     * Renders the document once, splitting text lines at their placeholders.
+     * Images such as logos and fixed symbols are encoded here and stored in the
+     * static bytes; barcodes and QR codes with placeholders become gaps.
+     */
+    public static CompiledTemplate compile(PrintDocument document, JobRenderer renderer) throws IOException {
+        CommandEncoder encoder = renderer.getEncoder();
+        List<byte[]> segments = new ArrayList<>();
+        List<String> gaps = new ArrayList<>();
+        List<Byte> gapOps = new ArrayList<>();
+        List<Integer> gapOptions = new ArrayList<>();
+        CommandBuffer current = new CommandBuffer(256);
+        encoder.begin(current);
+        for (int i = 0; i < document.size(); i++) {
+            byte op = document.op(i);
+            if ((op == PrintDocument.OP_BARCODE || op == PrintDocument.OP_QRCODE)
+                    && document.text(i).contains(OPEN)) {
+                segments.add(current.toByteArray());
+                gaps.add(document.text(i));
+                gapOps.add(op);
+                gapOptions.add(document.arg(i));
+                current = new CommandBuffer(256);
+                continue;
+            }
+            if (op != PrintDocument.OP_TEXT) {
+                JobRenderer.encodeCommand(encoder, current, document, i, renderer.prepare(document, i));
+                continue;
+            }
+            String text = document.text(i);
+            int from = 0;
+            int open;
+            while ((open = text.indexOf(OPEN, from)) >= 0) {
+                int close = text.indexOf(CLOSE, open + OPEN.length());
+                if (close < 0) break;
+                encoder.text(current, text.substring(from, open));
+                segments.add(current.toByteArray());
+                gaps.add(text.substring(open + OPEN.length(), close).trim());
+                gapOps.add(PrintDocument.OP_TEXT);
+                gapOptions.add(0);
+                current = new CommandBuffer(256);
+                from = close + CLOSE.length();
+            }
+            encoder.text(current, from == 0 ? text : text.substring(from));
+        }
+        segments.add(current.toByteArray());
+        byte[] ops = new byte[gapOps.size()];
+        int[] options = new int[gapOptions.size()];
+        for (int i = 0; i < ops.length; i++) {
+            ops[i] = gapOps.get(i);
+            options[i] = gapOptions.get(i);
+        }
+        return new CompiledTemplate(segments.toArray(new byte[0][]), gaps.toArray(new String[0]), ops, options);
+    }
+
+    /**
+     * @param values Placeholder values; missing names print as empty text.
+     * @param renderer Encodes text values and the symbols whose data uses placeholders.
+     * @return The complete job bytes.
+     * @throws IllegalArgumentException if a substituted barcode or QR code cannot be encoded.
+     */
+    public byte[] render(Map<String, String> values, JobRenderer renderer) {
+        int estimate = staticSize;
+        String[] resolved = new String[gaps.length];
+        byte[][] symbols = new byte[gaps.length][];
+        for (int i = 0; i < gaps.length; i++) {
+            if (gapOps[i] == PrintDocument.OP_TEXT) {
+                String value = values != null ? values.get(gaps[i]) : null;
+                resolved[i] = value != null ? value : "";
+                estimate += resolved[i].length();
+            } else {
+                symbols[i] = renderer.symbol(gapOps[i], gapOptions[i], substitute(gaps[i], values));
+                estimate += symbols[i].length;
+            }
+        }
+        CommandEncoder encoder = renderer.getEncoder();
+        CommandBuffer out = new CommandBuffer(estimate);
+        for (int i = 0; i < gaps.length; i++) {
+            out.write(segments[i]);
+            if (symbols[i] != null) {
+                out.write(symbols[i]);
+            } else {
+                encoder.text(out, resolved[i]);
+            }
+        }
+        out.write(segments[gaps.length]);
+        return out.toByteArray();
+    }
+
+    private static String substitute(String data, Map<String, String> values) {
+        StringBuilder result = new StringBuilder(data.length() + 32);
+        int from = 0;
+        int open;
+        while ((open = data.indexOf(OPEN, from)) >= 0) {
+            int close = data.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) break;
+            result.append(data, from, open);
+            String value = values != null ? values.get(data.substring(open + OPEN.length(), close).trim()) : null;
+            if (value != null) {
+                result.append(value);
+            }
+            from = close + CLOSE.length();
+        }
+        return result.append(data, from, data.length()).toString();
+    }
+
+    /**
+     * @return Bytes held by the static segments, used for the cache size bound.
+     */
+    public int getStaticSize() {
+        return staticSize;
+    }
+}
@@ -0,0 +1,234 @@
+package com.noblesite.epsonlink.render;
+
+import com.noblesite.epsonlink.image.MonoRaster;
+import com.noblesite.epsonlink.model.PrintDocument;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ESC/POS encoder for Epson TM printers.
+ * ASCII text is copied byte for byte; other characters go through the
+ * printer's code page (PC437 by default, the TM-series power-on default).
+ */
+public class EscPosEncoder implements CommandEncoder {
+
+    private static final int ESC = 0x1B;
+    private static final int GS = 0x1D;
+    private static final int IMAGE_BAND_ROWS = 256;
+    // GS k function B symbology codes, indexed by PrintDocument.BARCODE_*.
+    private static final int[] BARCODE_TYPES = {65, 66, 67, 68, 69, 70, 71, 72, 73};
+    private static final int MAX_BARCODE_LENGTH = 255;
+    // GS ( k store command limit, minus its 3 header bytes.
+    private static final int MAX_QR_LENGTH = 7089;
+
+    private final Charset charset;
+
+    public EscPosEncoder() {
+        this(defaultCharset());
+    }
+
+    public EscPosEncoder(Charset charset) {
+        this.charset = charset;
+    }
+
+    private static Charset defaultCharset() {
+        try {
+            return Charset.forName("IBM437");
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.US_ASCII;
+        }
+    }
+
+    @Override
+    public void begin(CommandBuffer out) {
+        // ESC @: initialize, so styles from a previous job do not leak into this one.
+        out.write(ESC, '@');
+    }
+
+    @Override
+    public void text(CommandBuffer out, String text) {
+        int length = text.length();
+        out.ensureCapacity(length);
+        byte[] data = out.array();
+        int offset = out.size();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c >= 0x80) break;
+            data[offset + i] = (byte) c;
+            i++;
+        }
+        out.advance(i);
+        if (i < length) {
+            encodeSlow(out, text, i);
+        }
+    }
+
+    private void encodeSlow(CommandBuffer out, String text, int from) {
+        CharsetEncoder encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer encoded;
+        try {
+            encoded = encoder.encode(CharBuffer.wrap(text, from, text.length()));
+        } catch (java.nio.charset.CharacterCodingException e) {
+            // Cannot happen with REPLACE; fall back to '?' for the remainder.
+            for (int i = from; i < text.length(); i++) {
+                char c = text.charAt(i);
+                out.write(c < 0x80 ? c : '?');
+            }
+            return;
+        }
+        out.write(encoded.array(), encoded.arrayOffset() + encoded.position(), encoded.remaining());
+    }
+
+    @Override
+    public void cut(CommandBuffer out) {
+        // GS V 66 0: feed to the cutter and partial cut, as Printer.CUT_FEED does.
+        out.ensureCapacity(4);
+        out.write(GS, 'V', 66);
+        out.write(0);
+    }
+
+    @Override
+    public void feed(CommandBuffer out, int lines) {
+        int remaining = Math.max(0, lines);
+        while (remaining > 0) {
+            int n = Math.min(255, remaining);
+            // ESC d n: print and feed n lines.
+            out.write(ESC, 'd', n);
+            remaining -= n;
+        }
+    }
+
+    @Override
+    public void align(CommandBuffer out, int alignment) {
+        // ESC a n: 0 left, 1 center, 2 right.
+        out.write(ESC, 'a', Math.max(PrintDocument.ALIGN_LEFT, Math.min(PrintDocument.ALIGN_RIGHT, alignment)));
+    }
+
+    @Override
+    public void style(CommandBuffer out, int style) {
+        // ESC E n: emphasis, ESC - n: underline, GS ! n: character size.
+        out.write(ESC, 'E', PrintDocument.isBold(style) ? 1 : 0);
+        out.write(ESC, '-', PrintDocument.isUnderline(style) ? 1 : 0);
+        int size = ((PrintDocument.styleWidth(style) - 1) << 4) | (PrintDocument.styleHeight(style) - 1);
+        out.write(GS, '!', size);
+    }
+
+    /**
+     * GS v 0 raster bit image, split into bands so each command stays within printer limits.
+     */
+    @Override
+    public void image(CommandBuffer out, MonoRaster raster) {
+        int rowBytes = raster.getRowBytes();
+        byte[] data = raster.getData();
+        for (int y = 0; y < raster.getHeight(); y += IMAGE_BAND_ROWS) {
+            int rows = Math.min(IMAGE_BAND_ROWS, raster.getHeight() - y);
+            out.ensureCapacity(8 + rows * rowBytes);
+            out.write(GS, 'v', '0');
+            out.write(0);
+            out.write(rowBytes & 0xFF, rowBytes >> 8);
+            out.write(rows & 0xFF, rows >> 8);
+            out.write(data, y * rowBytes, rows * rowBytes);
+        }
+    }
+
+    @Override
+    public void barcode(CommandBuffer out, int options, String data) {
+        int symbology = PrintDocument.barcodeSymbology(options);
+        if (symbology >= BARCODE_TYPES.length) {
+            throw new IllegalArgumentException("Unknown symbology " + symbology);
+        }
+        // Code 128 needs a code set prefix; default to set B unless the data selects one.
+        String prefix = symbology == PrintDocument.BARCODE_CODE128 && !data.startsWith("{") ? "{B" : "";
+        int length = prefix.length() + data.length();
+        if (length == 0 || length > MAX_BARCODE_LENGTH) {
+            throw new IllegalArgumentException("Barcode data must be 1-" + MAX_BARCODE_LENGTH + " characters");
+        }
+        out.ensureCapacity(13 + length);
+        // GS h n: height, GS w n: module width, GS H n: HRI position.
+        out.write(GS, 'h', PrintDocument.barcodeHeight(options));
+        out.write(GS, 'w', PrintDocument.barcodeModuleWidth(options));
+        out.write(GS, 'H', PrintDocument.barcodeHri(options));
+        // GS k m n d1...dn
+        out.write(GS, 'k', BARCODE_TYPES[symbology]);
+        out.write(length);
+        writeAscii(out, prefix);
+        writeAscii(out, data);
+    }
+
+    private static void writeAscii(CommandBuffer out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            out.write(c < 0x80 ? c : '?');
+        }
+    }
+
+    @Override
+    public void qrCode(CommandBuffer out, int options, String data) {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0 || bytes.length > MAX_QR_LENGTH) {
+            throw new IllegalArgumentException("QR data must be 1-" + MAX_QR_LENGTH + " bytes");
+        }
+        out.ensureCapacity(41 + bytes.length);
+        // GS ( k, function 165: model 2.
+        out.write(GS, '(', 'k');
+        out.write(4, 0);
+        out.write(49, 65, 50);
+        out.write(0);
+        // Function 167: module size.
+        out.write(GS, '(', 'k');
+        out.write(3, 0);
+        out.write(49, 67, PrintDocument.qrModuleSize(options));
+        // Function 169: error correction, 48 = L through 51 = H.
+        out.write(GS, '(', 'k');
+        out.write(3, 0);
+        out.write(49, 69, 48 + PrintDocument.qrLevel(options));
+        // Function 180: store the data.
+        int storeLength = bytes.length + 3;
+        out.write(GS, '(', 'k');
+        out.write(storeLength & 0xFF, storeLength >> 8);
+        out.write(49, 80, 48);
+        out.write(bytes);
+        // Function 181: print the stored symbol.
+        out.write(GS, '(', 'k');
+        out.write(3, 0);
+        out.write(49, 81, 48);
+    }
+
+    @Override
+    public int imageSize(MonoRaster raster) {
+        int bands = (raster.getHeight() + IMAGE_BAND_ROWS - 1) / IMAGE_BAND_ROWS;
+        return bands * 8 + raster.getData().length;
+    }
+
+    @Override
+    public int beginSize() {
+        return 2;
+    }
+
+    @Override
+    public int estimate(PrintDocument document, int index) {
+        switch (document.op(index)) {
+            case PrintDocument.OP_TEXT:
+                // Exact for single-byte code pages.
+                return document.text(index).length();
+            case PrintDocument.OP_CUT:
+                return 4;
+            case PrintDocument.OP_FEED:
+                return 3 * ((Math.max(0, document.arg(index)) + 254) / 255);
+            case PrintDocument.OP_ALIGN:
+                return 3;
+            case PrintDocument.OP_STYLE:
+                return 9;
+            default:
+                return 0;
+        }
+    }
+}
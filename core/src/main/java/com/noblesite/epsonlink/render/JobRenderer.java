@@ -0,0 +1,237 @@
+package com.noblesite.epsonlink.render;
+
+import com.noblesite.epsonlink.image.MonoRaster;
+import com.noblesite.epsonlink.image.RasterSource;
+import com.noblesite.epsonlink.image.SymbolRasterizer;
+import com.noblesite.epsonlink.model.PrintDocument;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Compiles a whole {@link PrintDocument} into one buffer of raw printer
+ * commands, so a job costs a single SDK call instead of one per line.
+ * Pure Java, so it can be benchmarked without a printer.
+ */
+public class JobRenderer {
+
+    private final CommandEncoder encoder;
+    private final RasterSource rasterSource;
+    private final SymbolCache symbolCache;
+    private volatile boolean symbolsAsRaster;
+
+    public JobRenderer(CommandEncoder encoder) {
+        this(encoder, null);
+    }
+
+    /**
+     * @param rasterSource Resolves image lines, or null if images are not supported.
+     */
+    public JobRenderer(CommandEncoder encoder, RasterSource rasterSource) {
+        this(encoder, rasterSource, new SymbolCache(SymbolCache.DEFAULT_MAX_ENTRIES, SymbolCache.DEFAULT_MAX_BYTES));
+    }
+
+    public JobRenderer(CommandEncoder encoder, RasterSource rasterSource, SymbolCache symbolCache) {
+        this.encoder = encoder;
+        this.rasterSource = rasterSource;
+        this.symbolCache = symbolCache;
+    }
+
+    public CommandEncoder getEncoder() {
+        return encoder;
+    }
+
+    /**
+     * Chooses between printer-generated symbols and symbols drawn locally
+     * as raster images, for models where on-printer generation is slow.
+     */
+    public void setSymbolsAsRaster(boolean symbolsAsRaster) {
+        if (this.symbolsAsRaster != symbolsAsRaster) {
+            this.symbolsAsRaster = symbolsAsRaster;
+            symbolCache.clear();
+        }
+    }
+
+    /**
+     * @return The encoded job.
+     * @throws IOException if an image in the job cannot be loaded.
+     * @throws IllegalArgumentException if a barcode or QR code cannot be encoded.
+     */
+    public byte[] render(PrintDocument document) throws IOException {
+        return render(document, 0, null);
+    }
+
+    /**
+     * Renders a document that can be sent in parts, so other jobs may print
+     * between them. A part ends at the first cut after at least
+     * {@code chunkBytes} of output. The next part starts by resetting the
+     * printer and restoring the alignment and style in effect, so it prints
+     * the same whatever was printed before it.
+     * @param chunkBytes Smallest part worth sending on its own, or 0 for one part.
+     * @param chunkEnds Receives the end offset of every part but the last; may be null when chunkBytes is 0.
+     * @return The encoded job, all parts in order.
+     * @throws IOException if an image in the job cannot be loaded.
+     * @throws IllegalArgumentException if a barcode or QR code cannot be encoded.
+     */
+    public byte[] render(PrintDocument document, int chunkBytes, List<Integer> chunkEnds) throws IOException {
+        byte[][] prepared = prepare(document);
+        int estimate = encoder.beginSize();
+        for (int i = 0; i < document.size(); i++) {
+            estimate += prepared[i] != null ? prepared[i].length : encoder.estimate(document, i);
+        }
+        CommandBuffer out = new CommandBuffer(estimate);
+        encoder.begin(out);
+        int chunkStart = 0;
+        int alignment = -1;
+        int style = -1;
+        int last = document.size() - 1;
+        for (int i = 0; i <= last; i++) {
+            encodeCommand(encoder, out, document, i, prepared[i]);
+            byte op = document.op(i);
+            if (op == PrintDocument.OP_ALIGN) {
+                alignment = document.arg(i);
+            } else if (op == PrintDocument.OP_STYLE) {
+                style = document.arg(i);
+            } else if (op == PrintDocument.OP_CUT && chunkBytes > 0 && i < last
+                    && out.size() - chunkStart >= chunkBytes) {
+                chunkEnds.add(out.size());
+                chunkStart = out.size();
+                encoder.begin(out);
+                if (alignment >= 0) encoder.align(out, alignment);
+                if (style >= 0) encoder.style(out, style);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Renders one batch of lines of a streamed job, which is parsed and sent
+     * a few lines at a time instead of held whole. Only the first batch, or
+     * one that follows other jobs, resets the printer; the others continue
+     * where the previous batch left it.
+     * @param begin Whether to reset the printer before the batch.
+     * @param alignment Alignment to restore after the reset, or -1.
+     * @param style Text style to restore after the reset, or -1.
+     * @return The encoded batch.
+     * @throws IOException if an image in the batch cannot be loaded.
+     * @throws IllegalArgumentException if a barcode or QR code cannot be encoded.
+     */
+    public byte[] renderLines(PrintDocument document, boolean begin, int alignment, int style)
+            throws IOException {
+        byte[][] prepared = prepare(document);
+        // Room for the reset and the restored alignment and style.
+        int estimate = begin ? encoder.beginSize() + 16 : 0;
+        for (int i = 0; i < document.size(); i++) {
+            estimate += prepared[i] != null ? prepared[i].length : encoder.estimate(document, i);
+        }
+        CommandBuffer out = new CommandBuffer(estimate);
+        if (begin) {
+            encoder.begin(out);
+            if (alignment >= 0) encoder.align(out, alignment);
+            if (style >= 0) encoder.style(out, style);
+        }
+        for (int i = 0; i < document.size(); i++) {
+            encodeCommand(encoder, out, document, i, prepared[i]);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes images and symbols up front so the output buffer can be sized exactly.
+     * @return Command bytes indexed like the document's commands, null for commands encoded inline.
+     */
+    byte[][] prepare(PrintDocument document) throws IOException {
+        byte[][] prepared = new byte[document.size()][];
+        for (int i = 0; i < document.size(); i++) {
+            prepared[i] = prepare(document, i);
+        }
+        return prepared;
+    }
+
+    /**
+     * @return The encoded image or symbol at {@code index}, or null for commands encoded inline.
+     */
+    byte[] prepare(PrintDocument document, int index) throws IOException {
+        switch (document.op(index)) {
+            case PrintDocument.OP_IMAGE:
+                if (rasterSource == null) {
+                    throw new IOException("Image lines are not supported");
+                }
+                return encodeImage(rasterSource.load(document.text(index), document.arg(index)));
+            case PrintDocument.OP_BARCODE:
+            case PrintDocument.OP_QRCODE:
+                return symbol(document.op(index), document.arg(index), document.text(index));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Encodes a barcode or QR code, reusing the memoized bytes for a repeated symbol.
+     */
+    byte[] symbol(byte op, int options, String data) {
+        String key = SymbolCache.key(op, options, data);
+        byte[] bytes = symbolCache.get(key);
+        if (bytes != null) {
+            return bytes;
+        }
+        CommandBuffer out = new CommandBuffer(64 + data.length());
+        if (op == PrintDocument.OP_QRCODE) {
+            if (symbolsAsRaster) {
+                encoder.image(out, SymbolRasterizer.qrCode(options, data));
+            } else {
+                encoder.qrCode(out, options, data);
+            }
+        } else if (symbolsAsRaster) {
+            int hri = PrintDocument.barcodeHri(options);
+            // The raster has no human readable text, so print the data as a text line instead.
+            if (hri == PrintDocument.HRI_ABOVE || hri == PrintDocument.HRI_BOTH) {
+                encoder.text(out, data + "\n");
+            }
+            encoder.image(out, SymbolRasterizer.barcode(options, data));
+            if (hri == PrintDocument.HRI_BELOW || hri == PrintDocument.HRI_BOTH) {
+                encoder.text(out, data + "\n");
+            }
+        } else {
+            encoder.barcode(out, options, data);
+        }
+        bytes = out.toByteArray();
+        symbolCache.put(key, bytes);
+        return bytes;
+    }
+
+    private byte[] encodeImage(MonoRaster raster) {
+        CommandBuffer out = new CommandBuffer(encoder.imageSize(raster));
+        encoder.image(out, raster);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes one document command.
+     * @param prepared The bytes from {@link #prepare(PrintDocument)} for this command, or null.
+     */
+    static void encodeCommand(CommandEncoder encoder, CommandBuffer out, PrintDocument document,
+                              int index, byte[] prepared) {
+        if (prepared != null) {
+            out.write(prepared);
+            return;
+        }
+        switch (document.op(index)) {
+            case PrintDocument.OP_TEXT:
+                encoder.text(out, document.text(index));
+                break;
+            case PrintDocument.OP_CUT:
+                encoder.cut(out);
+                break;
+            case PrintDocument.OP_FEED:
+                encoder.feed(out, document.arg(index));
+                break;
+            case PrintDocument.OP_ALIGN:
+                encoder.align(out, document.arg(index));
+                break;
+            case PrintDocument.OP_STYLE:
+                encoder.style(out, document.arg(index));
+                break;
+        }
+    }
+}
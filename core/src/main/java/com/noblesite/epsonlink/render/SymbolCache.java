@@ -0,0 +1,85 @@
+package com.noblesite.epsonlink.render;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memoizes encoded barcode and QR code commands, so a symbol that repeats
+ * across receipts (loyalty links, store ids) is generated once.
+ * LRU bounded by entry count and total bytes. Thread-safe.
+ */
+public class SymbolCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    public static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    private final int maxEntries;
+    private final int maxBytes;
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int totalBytes;
+    private long hits;
+    private long misses;
+
+    public SymbolCache(int maxEntries, int maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Builds the key for a symbol command.
+     * @param op PrintDocument.OP_BARCODE or OP_QRCODE.
+     * @param options The packed symbol options.
+     */
+    public static String key(byte op, int options, String data) {
+        return new StringBuilder(data.length() + 12)
+            .append(op).append(':').append(Integer.toHexString(options)).append(':').append(data)
+            .toString();
+    }
+
+    /**
+     * @return The cached command bytes, or null on a miss. Callers must not modify the array.
+     */
+    public synchronized byte[] get(String key) {
+        byte[] bytes = entries.get(key);
+        if (bytes != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return bytes;
+    }
+
+    public synchronized void put(String key, byte[] bytes) {
+        if (bytes.length > maxBytes) return;
+        byte[] previous = entries.put(key, bytes);
+        if (previous != null) {
+            totalBytes -= previous.length;
+        }
+        totalBytes += bytes.length;
+        Iterator<Map.Entry<String, byte[]>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalBytes > maxBytes) && it.hasNext()) {
+            Map.Entry<String, byte[]> eldest = it.next();
+            if (eldest.getKey().equals(key)) continue;
+            totalBytes -= eldest.getValue().length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Drops every entry, e.g. after switching between printer and raster symbols.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,123 @@
+package com.noblesite.epsonlink.render;
+
+import com.noblesite.epsonlink.model.PrintDocument;
+import com.noblesite.epsonlink.parser.PrintJobFormatException;
+import com.noblesite.epsonlink.parser.PrintJobParser;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of compiled receipt templates, bounded by entry count and by
+ * the total size of their static bytes. Thread-safe.
+ */
+public class TemplateCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+    public static final int DEFAULT_MAX_BYTES = 512 * 1024;
+
+    private final JobRenderer renderer;
+    private final int maxEntries;
+    private final int maxBytes;
+    private final PrintJobParser parser = new PrintJobParser();
+    private final LinkedHashMap<String, CompiledTemplate> templates = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int totalBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param renderer Encodes the static parts of each template, including its images and symbols.
+     */
+    public TemplateCache(JobRenderer renderer, int maxEntries, int maxBytes) {
+        this.renderer = renderer;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Compiles and stores a template, replacing any template with the same id.
+     * @param templateJson A regular job payload whose text may contain {{name}} placeholders.
+     * @throws PrintJobFormatException if the template is not valid job JSON.
+     * @throws IOException if an image in the template cannot be loaded.
+     * @throws IllegalArgumentException if a barcode or QR code cannot be encoded.
+     */
+    public void register(String id, String templateJson) throws PrintJobFormatException, IOException {
+        PrintDocument document;
+        synchronized (parser) {
+            document = parser.parse(templateJson);
+        }
+        CompiledTemplate compiled = CompiledTemplate.compile(document, renderer);
+        synchronized (this) {
+            CompiledTemplate previous = templates.put(id, compiled);
+            if (previous != null) {
+                totalBytes -= previous.getStaticSize();
+            }
+            totalBytes += compiled.getStaticSize();
+            evictIfNeeded(id);
+        }
+    }
+
+    /**
+     * Renders a template job.
+     * @param document A parsed job naming a template and its variables.
+     * @return The job bytes, or null if the template is not registered (or was evicted).
+     */
+    public byte[] render(PrintDocument document) {
+        CompiledTemplate compiled;
+        synchronized (this) {
+            compiled = templates.get(document.getTemplateId());
+            if (compiled == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        return compiled.render(document.getVariables(), renderer);
+    }
+
+    public synchronized boolean contains(String id) {
+        return templates.containsKey(id);
+    }
+
+    public synchronized int size() {
+        return templates.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return Cache counters as JSON.
+     */
+    public synchronized String statsJson() {
+        return "{\"entries\":" + templates.size()
+            + ",\"bytes\":" + totalBytes
+            + ",\"hits\":" + hits
+            + ",\"misses\":" + misses
+            + ",\"evictions\":" + evictions + "}";
+    }
+
+    private void evictIfNeeded(String keep) {
+        Iterator<Map.Entry<String, CompiledTemplate>> it = templates.entrySet().iterator();
+        while ((templates.size() > maxEntries || totalBytes > maxBytes) && it.hasNext()) {
+            Map.Entry<String, CompiledTemplate> eldest = it.next();
+            if (eldest.getKey().equals(keep)) continue;
+            totalBytes -= eldest.getValue().getStaticSize();
+            it.remove();
+            evictions++;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.noblesite.epsonlink.retry;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Per-printer circuit breaker. After a run of consecutive failures the
+ * circuit opens and calls fail fast for a cool-down period, so queued jobs
+ * do not each pay a full connect timeout against a dead device. After the
+ * cool-down one trial call is let through (half-open); its result closes
+ * or re-opens the circuit. Thread-safe.
+ */
+public class CircuitBreaker {
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    public static final long DEFAULT_OPEN_MS = 30_000;
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final LongSupplier clock;
+    private int failureThreshold;
+    private long openMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtMs;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(int failureThreshold, long openMs) {
+        this(failureThreshold, openMs, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock Millisecond clock, replaceable in tests.
+     */
+    public CircuitBreaker(int failureThreshold, long openMs, LongSupplier clock) {
+        this.clock = clock;
+        configure(failureThreshold, openMs);
+    }
+
+    /**
+     * Updates the thresholds, e.g. after managed configuration changes.
+     */
+    public synchronized void configure(int failureThreshold, long openMs) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMs = Math.max(0, openMs);
+    }
+
+    /**
+     * @return true if the caller may try the printer now. In the half-open
+     *         state only one trial is allowed until its result is recorded.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.getAsLong() - openedAtMs < openMs) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void recordFailure() {
+        trialInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtMs = clock.getAsLong();
+        }
+    }
+
+    /**
+     * Closes the circuit without a trial, e.g. when the device is re-attached.
+     */
+    public synchronized void reset() {
+        recordSuccess();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return Milliseconds until the next trial is allowed, 0 if calls are allowed now.
+     */
+    public synchronized long remainingOpenMs() {
+        if (state != State.OPEN) return 0;
+        return Math.max(0, openMs - (clock.getAsLong() - openedAtMs));
+    }
+}
@@ -0,0 +1,13 @@
+package com.noblesite.epsonlink.retry;
+
+/**
+ * How a failed printer operation should be handled.
+ */
+public enum ErrorDisposition {
+    /** Transient (timeout, busy, link dropped); retry automatically after a backoff. */
+    RETRYABLE,
+    /** Someone has to act (reconnect the cable, load paper); wait until the printer reports ready. */
+    NEEDS_OPERATOR,
+    /** Retrying cannot help (bad parameters, unsupported command); fail the job. */
+    FATAL
+}
@@ -0,0 +1,65 @@
+package com.noblesite.epsonlink.retry;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter: the delay before retry n is drawn
+ * uniformly from [0, min(maxDelay, baseDelay * 2^(n-1))], so printers that
+ * drop together do not all retry at the same instant. Immutable.
+ */
+public final class RetryPolicy {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_BASE_DELAY_MS = 500;
+    public static final long DEFAULT_MAX_DELAY_MS = 30_000;
+
+    public static final RetryPolicy DEFAULT =
+        new RetryPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS);
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+
+    /**
+     * @param maxAttempts Automatic retries before a job waits for the printer to report ready.
+     * @param baseDelayMs Upper bound of the first backoff.
+     * @param maxDelayMs Cap on any single backoff.
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs) {
+        this.maxAttempts = Math.max(0, maxAttempts);
+        this.baseDelayMs = Math.max(1, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getMaxDelayMs() {
+        return maxDelayMs;
+    }
+
+    /**
+     * @param attempt The retry about to be made, starting at 1.
+     * @return true if another automatic retry is allowed.
+     */
+    public boolean shouldRetry(int attempt) {
+        return attempt <= maxAttempts;
+    }
+
+    /**
+     * @param attempt The retry about to be made, starting at 1.
+     * @return Milliseconds to wait first.
+     */
+    public long backoffMs(int attempt) {
+        return (long) (ThreadLocalRandom.current().nextDouble() * ceilingMs(attempt));
+    }
+
+    /**
+     * @return The upper bound of the jittered delay for an attempt.
+     */
+    long ceilingMs(int attempt) {
+        int shift = Math.max(0, Math.min(30, attempt - 1));
+        return Math.min(maxDelayMs, baseDelayMs << shift);
+    }
+}
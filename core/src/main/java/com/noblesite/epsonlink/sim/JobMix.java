@@ -0,0 +1,96 @@
+package com.noblesite.epsonlink.sim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Weighted set of job payloads to draw from.
+ */
+public final class JobMix {
+
+    private final List<String> names = new ArrayList<>();
+    private final List<String> payloads = new ArrayList<>();
+    private final List<Integer> cumulativeWeights = new ArrayList<>();
+    private int totalWeight;
+
+    /**
+     * @param weight Relative frequency of this job, at least 1.
+     * @return This mix.
+     */
+    public JobMix add(String name, int weight, String payload) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("Weight must be at least 1: " + name);
+        }
+        totalWeight += weight;
+        names.add(name);
+        payloads.add(payload);
+        cumulativeWeights.add(totalWeight);
+        return this;
+    }
+
+    /**
+     * @return The index of a job drawn by weight.
+     */
+    public int next(Random random) {
+        if (totalWeight == 0) {
+            throw new IllegalStateException("Empty job mix");
+        }
+        int pick = random.nextInt(totalWeight);
+        for (int i = 0; i < cumulativeWeights.size(); i++) {
+            if (pick < cumulativeWeights.get(i)) return i;
+        }
+        throw new AssertionError();
+    }
+
+    public String getName(int index) {
+        return names.get(index);
+    }
+
+    public String getPayload(int index) {
+        return payloads.get(index);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * A mix like a busy store: mostly receipts, some template and promo
+     * jobs, and the occasional long report.
+     */
+    public static JobMix retail() {
+        return parse("receipt=70,template=20,image=8,report=2");
+    }
+
+    /**
+     * Builds a mix from a spec such as {@code receipt=70,template=20,image=8,report=2}.
+     * Job kinds: receipt, template, image, report (5,000 lines in sections of 500, in the report lane).
+     * @throws IllegalArgumentException if the spec names an unknown kind.
+     */
+    public static JobMix parse(String spec) {
+        JobMix mix = new JobMix();
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split("=", 2);
+            String kind = parts[0].trim();
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            mix.add(kind, weight, payloadFor(kind));
+        }
+        return mix;
+    }
+
+    private static String payloadFor(String kind) {
+        switch (kind) {
+            case "receipt":
+                return SampleJobs.smallReceipt();
+            case "template":
+                return SampleJobs.templateJob();
+            case "image":
+                return SampleJobs.imageHeavy(1);
+            case "report":
+                return SampleJobs.report(5000, 500);
+            default:
+                throw new IllegalArgumentException("Unknown job kind: " + kind);
+        }
+    }
+}
@@ -0,0 +1,505 @@
+package com.noblesite.epsonlink.sim;
+
+import com.noblesite.epsonlink.interfaces.PrinterCallback;
+import com.noblesite.epsonlink.metrics.LatencyHistogram;
+import com.noblesite.epsonlink.metrics.PrintMetrics;
+import com.noblesite.epsonlink.model.PrintJob;
+import com.noblesite.epsonlink.parser.PrintJobFormatException;
+import com.noblesite.epsonlink.parser.PrintJobParser;
+import com.noblesite.epsonlink.queue.BatchPolicy;
+import com.noblesite.epsonlink.queue.JobDispatcher;
+import com.noblesite.epsonlink.queue.PrintJobQueue;
+import com.noblesite.epsonlink.queue.PrintJournal;
+import com.noblesite.epsonlink.queue.RoutingPolicy;
+import com.noblesite.epsonlink.render.EscPosEncoder;
+import com.noblesite.epsonlink.render.JobRenderer;
+import com.noblesite.epsonlink.render.TemplateCache;
+import com.noblesite.epsonlink.retry.RetryPolicy;
+import com.noblesite.epsonlink.transport.PrintPipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Replays a job mix against {@link SimulatedPrinter}s, wired like the app
+ * wires its USB printers: journal, {@link JobDispatcher}, one
+ * {@link PrintJobQueue} per printer with failover and retry, and the shared
+ * {@link PrintPipeline}. Jobs arrive open-loop at a fixed rate, and their
+ * latency is measured from when each was due, so a stalled printer shows up
+ * in the tail instead of slowing the arrivals. Single use.
+ *
+ * Run from the command line with {@code ./gradlew :core:loadTest}; see {@link #main}.
+ */
+public class LoadGenerator {
+    private static final Logger LOG = Logger.getLogger("LoadGenerator");
+    private static final long DRAIN_TIMEOUT_MS = 120_000;
+    private static final long SAMPLE_INTERVAL_MS = 50;
+
+    private final JobMix mix;
+    private final Random random;
+    private final PrintJournal journal;
+    private final JobDispatcher dispatcher = new JobDispatcher(PrintJobQueue.DEFAULT_CAPACITY);
+    private final List<SimulatedEndpoint> endpoints = new ArrayList<>();
+    private final PrintPipeline pipeline;
+    // Submissions and rejections; the printers record the rest.
+    private final PrintMetrics metrics = new PrintMetrics();
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    private final LatencyHistogram[] endToEndByKind;
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicInteger peakQueued = new AtomicInteger();
+    private double jobsPerSecond = 20;
+    private long faultIntervalMs;
+    private long faultDurationMs = 5000;
+
+    /**
+     * @param printers Number of simulated printers, each with unlimited throughput until configured.
+     * @param journalFile Journal to record jobs in, as the app does, or null to skip journaling.
+     * @param seed Seed for job selection, faults and random disconnects.
+     */
+    public LoadGenerator(int printers, JobMix mix, File journalFile, long seed) {
+        this.mix = mix;
+        this.random = new Random(seed);
+        this.journal = journalFile != null
+            ? new PrintJournal(journalFile, PrintJournal.DEFAULT_COMPACT_THRESHOLD_BYTES) : null;
+        this.endToEndByKind = new LatencyHistogram[mix.size()];
+        for (int i = 0; i < endToEndByKind.length; i++) {
+            endToEndByKind[i] = new LatencyHistogram();
+        }
+
+        JobRenderer renderer = new JobRenderer(new EscPosEncoder(), SampleJobs.gradientSource(256));
+        TemplateCache templates = new TemplateCache(renderer,
+            TemplateCache.DEFAULT_MAX_ENTRIES, TemplateCache.DEFAULT_MAX_BYTES);
+        try {
+            templates.register(SampleJobs.TEMPLATE_ID, SampleJobs.receiptTemplate());
+        } catch (PrintJobFormatException | IOException e) {
+            throw new IllegalStateException("Sample template is invalid", e);
+        }
+        pipeline = new PrintPipeline(renderer, templates);
+
+        for (int i = 0; i < printers; i++) {
+            SimulatedEndpoint endpoint = new SimulatedEndpoint(
+                new SimulatedPrinter("sim-" + i, seed + i), pipeline, journal);
+            endpoint.getQueue().setFailover(job -> {
+                if (!dispatcher.reroute(job, endpoint)) return false;
+                endpoint.getMetrics().rerouted();
+                return true;
+            });
+            // Room in its queue: hand it jobs that were waiting in the backlog.
+            endpoint.getQueue().setOnJobDone(dispatcher::drainBacklog);
+            // Fault cleared: retry the held job and hand the printer waiting work.
+            endpoint.getPrinter().setListener(printer -> {
+                endpoint.getQueue().resume();
+                dispatcher.drainBacklog();
+            });
+            endpoints.add(endpoint);
+            dispatcher.addTarget(endpoint);
+        }
+    }
+
+    /**
+     * @return The simulated printers, to configure throughput, latency and faults.
+     */
+    public List<SimulatedPrinter> getPrinters() {
+        List<SimulatedPrinter> printers = new ArrayList<>(endpoints.size());
+        for (SimulatedEndpoint endpoint : endpoints) {
+            printers.add(endpoint.getPrinter());
+        }
+        return printers;
+    }
+
+    public void setRate(double jobsPerSecond) {
+        if (jobsPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        this.jobsPerSecond = jobsPerSecond;
+    }
+
+    public void setRoutingPolicy(RoutingPolicy policy) {
+        dispatcher.setPolicy(policy);
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        for (SimulatedEndpoint endpoint : endpoints) {
+            endpoint.getQueue().setRetryPolicy(retryPolicy);
+        }
+    }
+
+    /**
+     * @param maxLaneWaitMs Longest a job waits behind more urgent lanes, 0 for strict priority.
+     * @param chunkBytes Smallest part a long job is split into at a cut, 0 to never split.
+     * @param streamThreshold Payload length above which a job is streamed a few lines at a time, 0 to never stream.
+     */
+    public void setScheduling(long maxLaneWaitMs, int chunkBytes, int streamThreshold) {
+        pipeline.setChunkBytes(chunkBytes);
+        pipeline.setStreamThreshold(streamThreshold);
+        for (SimulatedEndpoint endpoint : endpoints) {
+            endpoint.getQueue().setMaxLaneWaitMs(maxLaneWaitMs);
+        }
+    }
+
+    public void setBatchPolicy(BatchPolicy batchPolicy) {
+        for (SimulatedEndpoint endpoint : endpoints) {
+            endpoint.getQueue().setBatchPolicy(batchPolicy);
+        }
+    }
+
+    /**
+     * Every interval, puts a random printer out of paper, cover open or
+     * disconnected for the given duration.
+     * @param intervalMs Time between faults, 0 for none.
+     */
+    public void setFaults(long intervalMs, long durationMs) {
+        this.faultIntervalMs = intervalMs;
+        this.faultDurationMs = durationMs;
+    }
+
+    /**
+     * Submits jobs for the given time, waits for them to finish, then stops the printers.
+     * @return What was submitted and printed, with latencies.
+     */
+    public Report run(long durationMs) throws InterruptedException {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "LoadGenerator-faults");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::sampleQueues,
+            SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> faults = null;
+        if (faultIntervalMs > 0) {
+            faults = scheduler.scheduleAtFixedRate(() -> injectFault(scheduler),
+                faultIntervalMs, faultIntervalMs, TimeUnit.MILLISECONDS);
+        }
+
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / jobsPerSecond);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMs);
+        long accepted = 0;
+        for (long i = 0; ; i++) {
+            long due = start + i * periodNanos;
+            if (due >= end) break;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            if (submit(due)) accepted++;
+        }
+        if (faults != null) {
+            // Faults already raised still clear on schedule.
+            faults.cancel(false);
+        }
+
+        long drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_TIMEOUT_MS);
+        while (completed.sum() + failed.sum() < accepted && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        long unfinished = accepted - completed.sum() - failed.sum();
+        scheduler.shutdownNow();
+
+        PrintMetrics total = new PrintMetrics();
+        total.merge(metrics);
+        long faultsRaised = 0;
+        for (SimulatedEndpoint endpoint : endpoints) {
+            dispatcher.removeTarget(endpoint);
+            endpoint.getQueue().shutdown();
+            total.merge(endpoint.getMetrics());
+            faultsRaised += endpoint.getPrinter().getFaultsRaised();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        String[] kinds = new String[mix.size()];
+        for (int i = 0; i < kinds.length; i++) {
+            kinds[i] = mix.getName(i);
+        }
+        return new Report(jobsPerSecond, durationMs, endpoints.size(),
+            TimeUnit.NANOSECONDS.toMillis(elapsedNanos), completed.sum(), failed.sum(), unfinished,
+            faultsRaised, peakQueued.get(), endToEnd, kinds, endToEndByKind, total);
+    }
+
+    private boolean submit(long dueNanos) {
+        int kind = mix.next(random);
+        String payload = mix.getPayload(kind);
+        PrintJob job = new PrintJob(PrintJob.newId(), payload, new Tracker(kind, dueNanos), null,
+            PrintJobParser.readPriority(payload));
+        if (journal != null) {
+            journal.append(job);
+        }
+        metrics.jobSubmitted();
+        if (!dispatcher.dispatch(job)) {
+            metrics.jobRejected();
+            if (journal != null) {
+                journal.markDone(job.getId());
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private void sampleQueues() {
+        int queued = dispatcher.backlogSize();
+        for (SimulatedEndpoint endpoint : endpoints) {
+            queued += endpoint.queuedJobs();
+        }
+        peakQueued.accumulateAndGet(queued, Math::max);
+    }
+
+    private void injectFault(ScheduledExecutorService scheduler) {
+        SimulatedPrinter printer = endpoints.get(random.nextInt(endpoints.size())).getPrinter();
+        if (printer.getFault() != null) return;
+        SimulatedPrinter.Fault[] kinds = SimulatedPrinter.Fault.values();
+        SimulatedPrinter.Fault fault = kinds[random.nextInt(kinds.length)];
+        LOG.info("injectFault: " + printer.getName() + " " + fault + " for " + faultDurationMs + " ms");
+        printer.setFault(fault);
+        scheduler.schedule(printer::clearFault, faultDurationMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records a job's latency from when it was due until the printer took it.
+     */
+    private final class Tracker implements PrinterCallback {
+        private final int kind;
+        private final long dueNanos;
+
+        Tracker(int kind, long dueNanos) {
+            this.kind = kind;
+            this.dueNanos = dueNanos;
+        }
+
+        @Override
+        public void onJobCompleted(String jobId) {
+            long nanos = System.nanoTime() - dueNanos;
+            endToEnd.recordNanos(nanos);
+            endToEndByKind[kind].recordNanos(nanos);
+            completed.increment();
+        }
+
+        @Override
+        public void onJobFailed(String jobId, String error) {
+            failed.increment();
+        }
+    }
+
+    /**
+     * Outcome of one run.
+     */
+    public static final class Report {
+        private final double offeredRate;
+        private final long durationMs;
+        private final int printers;
+        private final long elapsedMs;
+        private final long completed;
+        private final long failed;
+        private final long unfinished;
+        private final long faults;
+        private final int peakQueued;
+        private final LatencyHistogram endToEnd;
+        private final String[] kinds;
+        private final LatencyHistogram[] endToEndByKind;
+        private final PrintMetrics metrics;
+
+        Report(double offeredRate, long durationMs, int printers, long elapsedMs, long completed,
+               long failed, long unfinished, long faults, int peakQueued, LatencyHistogram endToEnd,
+               String[] kinds, LatencyHistogram[] endToEndByKind, PrintMetrics metrics) {
+            this.offeredRate = offeredRate;
+            this.durationMs = durationMs;
+            this.printers = printers;
+            this.elapsedMs = elapsedMs;
+            this.completed = completed;
+            this.failed = failed;
+            this.unfinished = unfinished;
+            this.faults = faults;
+            this.peakQueued = peakQueued;
+            this.endToEnd = endToEnd;
+            this.kinds = kinds;
+            this.endToEndByKind = endToEndByKind;
+            this.metrics = metrics;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return Jobs still queued or held when the drain timed out.
+         */
+        public long getUnfinished() {
+            return unfinished;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        /**
+         * @return Completed jobs per second over the whole run, including the drain.
+         */
+        public double getThroughput() {
+            return elapsedMs > 0 ? completed * 1000.0 / elapsedMs : 0;
+        }
+
+        /**
+         * @return Submission to printer acceptance, measured from when each job was due.
+         */
+        public LatencyHistogram getEndToEnd() {
+            return endToEnd;
+        }
+
+        public PrintMetrics getMetrics() {
+            return metrics;
+        }
+
+        public String toJson() {
+            StringBuilder json = new StringBuilder(1024)
+                .append("{\"offeredRate\":").append(String.format(Locale.ROOT, "%.2f", offeredRate))
+                .append(",\"durationMs\":").append(durationMs)
+                .append(",\"printers\":").append(printers)
+                .append(",\"elapsedMs\":").append(elapsedMs)
+                .append(",\"completed\":").append(completed)
+                .append(",\"failed\":").append(failed)
+                .append(",\"unfinished\":").append(unfinished)
+                .append(",\"faults\":").append(faults)
+                .append(",\"peakQueued\":").append(peakQueued)
+                .append(",\"throughput\":").append(String.format(Locale.ROOT, "%.2f", getThroughput()))
+                .append(",\"bytesPerSecond\":").append(elapsedMs > 0 ? metrics.getBytesSent() * 1000 / elapsedMs : 0)
+                .append(",\"endToEnd\":").append(endToEnd.toJson())
+                .append(",\"byKind\":{");
+            for (int i = 0; i < kinds.length; i++) {
+                if (i > 0) json.append(',');
+                json.append('"').append(kinds[i]).append("\":").append(endToEndByKind[i].toJson());
+            }
+            return json.append("},\"metrics\":").append(metrics.toJson()).append('}').toString();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(1024)
+                .append(String.format(Locale.ROOT, "offered %.1f jobs/s for %d ms on %d printers%n",
+                    offeredRate, durationMs, printers))
+                .append(String.format(Locale.ROOT,
+                    "completed=%d failed=%d unfinished=%d faults=%d peakQueued=%d%n",
+                    completed, failed, unfinished, faults, peakQueued))
+                .append(String.format(Locale.ROOT, "throughput %.1f jobs/s, %d bytes/s over %d ms%n%n",
+                    getThroughput(), elapsedMs > 0 ? metrics.getBytesSent() * 1000 / elapsedMs : 0, elapsedMs))
+                .append(String.format(Locale.ROOT, "%-12s %8s %10s %10s %10s %10s %10s%n",
+                    "end-to-end", "count", "mean_us", "p50_us", "p90_us", "p99_us", "max_us"));
+            appendRow(out, "all", endToEnd);
+            for (int i = 0; i < kinds.length; i++) {
+                appendRow(out, kinds[i], endToEndByKind[i]);
+            }
+            return out.append('\n').append(metrics.dump()).toString();
+        }
+
+        private static void appendRow(StringBuilder out, String name, LatencyHistogram h) {
+            out.append(String.format(Locale.ROOT, "%-12s %8d %10d %10d %10d %10d %10d%n", name, h.getCount(),
+                h.getMeanMicros(), h.percentileMicros(0.5), h.percentileMicros(0.9),
+                h.percentileMicros(0.99), h.getMaxMicros()));
+        }
+    }
+
+    /**
+     * Runs a load test and prints the report. Options, all optional:
+     * <pre>
+     * --printers=2            simulated printers
+     * --rate=20               jobs per second
+     * --duration=30           seconds of submissions
+     * --mix=receipt=70,template=20,image=8,report=2
+     * --throughput=100000     bytes per second per printer, 0 for unlimited
+     * --latency-us=5000       fixed cost per send
+     * --disconnect-rate=0     chance a send drops the link
+     * --fault-interval-ms=0   time between injected faults, 0 for none
+     * --fault-duration-ms=5000
+     * --routing=least_queued  or round_robin
+     * --retry-attempts=5 --retry-base-ms=500 --retry-max-ms=30000
+     * --batch-window-ms=0     wait for small jobs to send together, 0 for off
+     * --batch-max-jobs=8 --batch-max-bytes=32768
+     * --lane-max-wait-ms=30000 longest a job waits behind more urgent lanes
+     * --chunk-bytes=16384     part size long jobs are split into at cuts, 0 for whole
+     * --stream-threshold=65536 payload size above which jobs are streamed, 0 for never
+     * --journal=path          journal jobs like the app does
+     * --seed=1 --json --verbose
+     * </pre>
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = parseOptions(args);
+        if (!options.containsKey("verbose")) {
+            // Held and rerouted jobs are logged per attempt; too noisy under load.
+            Logger.getLogger("").setLevel(Level.SEVERE);
+        }
+        JobMix mix = options.containsKey("mix") ? JobMix.parse(options.get("mix")) : JobMix.retail();
+        String journal = options.get("journal");
+        LoadGenerator generator = new LoadGenerator(intOption(options, "printers", 2), mix,
+            journal != null ? new File(journal) : null, longOption(options, "seed", 1));
+        generator.setRate(Double.parseDouble(options.getOrDefault("rate", "20")));
+        generator.setRoutingPolicy(RoutingPolicy.valueOf(
+            options.getOrDefault("routing", "least_queued").toUpperCase(Locale.ROOT)));
+        generator.setRetryPolicy(new RetryPolicy(
+            intOption(options, "retry-attempts", RetryPolicy.DEFAULT_MAX_ATTEMPTS),
+            longOption(options, "retry-base-ms", RetryPolicy.DEFAULT_BASE_DELAY_MS),
+            longOption(options, "retry-max-ms", RetryPolicy.DEFAULT_MAX_DELAY_MS)));
+        generator.setBatchPolicy(new BatchPolicy(longOption(options, "batch-window-ms", 0),
+            intOption(options, "batch-max-jobs", BatchPolicy.DEFAULT_MAX_JOBS),
+            intOption(options, "batch-max-bytes", BatchPolicy.DEFAULT_MAX_BYTES)));
+        generator.setScheduling(longOption(options, "lane-max-wait-ms", PrintJobQueue.DEFAULT_MAX_LANE_WAIT_MS),
+            intOption(options, "chunk-bytes", PrintPipeline.DEFAULT_CHUNK_BYTES),
+            intOption(options, "stream-threshold", PrintPipeline.DEFAULT_STREAM_THRESHOLD));
+        generator.setFaults(longOption(options, "fault-interval-ms", 0),
+            longOption(options, "fault-duration-ms", 5000));
+        double disconnectRate = Double.parseDouble(options.getOrDefault("disconnect-rate", "0"));
+        for (SimulatedPrinter printer : generator.getPrinters()) {
+            printer.setThroughput(longOption(options, "throughput", 100_000));
+            printer.setCommandLatencyMicros(longOption(options, "latency-us", 5000));
+            printer.setDisconnectRate(disconnectRate);
+        }
+
+        Report report = generator.run(TimeUnit.SECONDS.toMillis(longOption(options, "duration", 30)));
+        System.out.println(options.containsKey("json") ? report.toJson() : report.toString());
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return Collections.unmodifiableMap(options);
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private static long longOption(Map<String, String> options, String name, long defaultValue) {
+        String value = options.get(name);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+}
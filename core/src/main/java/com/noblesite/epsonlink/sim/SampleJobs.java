@@ -0,0 +1,122 @@
+package com.noblesite.epsonlink.sim;
+
+import com.noblesite.epsonlink.image.Dithering;
+import com.noblesite.epsonlink.image.RasterSource;
+
+import java.util.Locale;
+
+/**
+ * Job payloads shaped like what the kiosk pages send, for the benchmarks
+ * and the load generator.
+ */
+public final class SampleJobs {
+
+    public static final String TEMPLATE_ID = "receipt";
+    public static final int PRINT_WIDTH_DOTS = 512;
+
+    private SampleJobs() {
+    }
+
+    /**
+     * A typical till receipt: header, a dozen items, total, QR code, cut.
+     */
+    public static String smallReceipt() {
+        StringBuilder json = new StringBuilder("{\"lines\":[");
+        json.append("{\"type\":\"align\",\"value\":\"center\"},");
+        json.append("{\"type\":\"style\",\"bold\":true,\"width\":2,\"height\":2},");
+        json.append("{\"type\":\"text\",\"value\":\"NOBLESITE MARKET\"},");
+        json.append("{\"type\":\"style\"},{\"type\":\"align\",\"value\":\"left\"},");
+        for (int i = 1; i <= 12; i++) {
+            json.append("{\"type\":\"text\",\"value\":\"Item ").append(i)
+                .append("                     $").append(i).append(".99\"},");
+        }
+        json.append("{\"type\":\"text\",\"value\":\"TOTAL                       $83.88\"},");
+        json.append("{\"type\":\"qrcode\",\"value\":\"https://noblesite.net/r/000123\",\"size\":6},");
+        json.append("{\"type\":\"feed\",\"value\":3},{\"type\":\"cut\"}]}");
+        return json.toString();
+    }
+
+    /**
+     * An end-of-day report with the given number of text lines.
+     */
+    public static String report(int lines) {
+        StringBuilder json = new StringBuilder(lines * 64).append("{\"lines\":[");
+        for (int i = 0; i < lines; i++) {
+            json.append("{\"type\":\"text\",\"value\":\"")
+                .append(String.format(Locale.ROOT, "%05d  SKU-%06d  qty %3d  $%8.2f", i, i * 7, i % 40, i * 1.25))
+                .append("\"},");
+        }
+        json.append("{\"type\":\"cut\"}]}");
+        return json.toString();
+    }
+
+    /**
+     * An end-of-day report in the report lane, with a cut after each section
+     * so it can be sent in parts.
+     */
+    public static String report(int lines, int sectionLines) {
+        StringBuilder json = new StringBuilder(lines * 64).append("{\"priority\":\"report\",\"lines\":[");
+        for (int i = 0; i < lines; i++) {
+            json.append("{\"type\":\"text\",\"value\":\"")
+                .append(String.format(Locale.ROOT, "%05d  SKU-%06d  qty %3d  $%8.2f", i, i * 7, i % 40, i * 1.25))
+                .append("\"},");
+            if ((i + 1) % sectionLines == 0 && i + 1 < lines) {
+                json.append("{\"type\":\"feed\",\"value\":2},{\"type\":\"cut\"},");
+            }
+        }
+        json.append("{\"type\":\"cut\"}]}");
+        return json.toString();
+    }
+
+    /**
+     * A promotional slip made mostly of full-width images.
+     */
+    public static String imageHeavy(int images) {
+        StringBuilder json = new StringBuilder("{\"lines\":[");
+        for (int i = 0; i < images; i++) {
+            json.append("{\"type\":\"image\",\"asset\":\"promo-").append(i).append(".png\",\"width\":")
+                .append(PRINT_WIDTH_DOTS).append("},");
+            json.append("{\"type\":\"text\",\"value\":\"Offer ").append(i).append("\"},");
+        }
+        json.append("{\"type\":\"cut\"}]}");
+        return json.toString();
+    }
+
+    /**
+     * The layout registered as {@link #TEMPLATE_ID}.
+     */
+    public static String receiptTemplate() {
+        return "{\"lines\":[{\"type\":\"align\",\"value\":\"center\"},"
+            + "{\"type\":\"text\",\"value\":\"Store {{store}}\"},{\"type\":\"align\",\"value\":\"left\"},"
+            + "{\"type\":\"text\",\"value\":\"{{item1}}\"},{\"type\":\"text\",\"value\":\"{{item2}}\"},"
+            + "{\"type\":\"text\",\"value\":\"{{item3}}\"},{\"type\":\"text\",\"value\":\"Total: {{total}}\"},"
+            + "{\"type\":\"qrcode\",\"value\":\"https://noblesite.net/r/{{receipt}}\",\"size\":6},"
+            + "{\"type\":\"cut\"}]}";
+    }
+
+    /**
+     * A job that fills {@link #receiptTemplate()}.
+     */
+    public static String templateJob() {
+        return "{\"template\":\"" + TEMPLATE_ID + "\",\"vars\":{\"store\":\"#12\","
+            + "\"item1\":\"Coffee  $3.50\",\"item2\":\"Bagel  $2.25\",\"item3\":\"Juice  $4.00\","
+            + "\"total\":\"$9.75\",\"receipt\":\"000123\"}}";
+    }
+
+    /**
+     * Dithers a synthetic gradient on every load, like a cache miss in the
+     * app, so image jobs measure decoding-free raster work only.
+     */
+    public static RasterSource gradientSource(int height) {
+        return (source, width) -> {
+            int w = width > 0 ? width : PRINT_WIDTH_DOTS;
+            int[] luminance = new int[w * height];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < w; x++) {
+                    luminance[y * w + x] = (x * 255 / w + y) & 0xFF;
+                }
+            }
+            return Dithering.floydSteinberg(luminance, w, height);
+        };
+    }
+}
@@ -0,0 +1,71 @@
+package com.noblesite.epsonlink.sim;
+
+import com.noblesite.epsonlink.metrics.PrintMetrics;
+import com.noblesite.epsonlink.model.PrintJob;
+import com.noblesite.epsonlink.queue.JobDispatcher;
+import com.noblesite.epsonlink.queue.PrintJobQueue;
+import com.noblesite.epsonlink.queue.PrintJournal;
+import com.noblesite.epsonlink.transport.PrintPipeline;
+
+/**
+ * A {@link SimulatedPrinter} with its own queue, worker and metrics, routed
+ * to like the app's USB printer endpoints.
+ */
+public class SimulatedEndpoint implements JobDispatcher.Target {
+
+    private final SimulatedPrinter printer;
+    private final PrintJobQueue queue;
+    private final PrintMetrics metrics = new PrintMetrics();
+    private volatile String role;
+
+    /**
+     * @param journal Journal the jobs were recorded in, or null for none.
+     */
+    public SimulatedEndpoint(SimulatedPrinter printer, PrintPipeline pipeline, PrintJournal journal) {
+        this.printer = printer;
+        this.queue = new PrintJobQueue(printer.getName(), PrintJobQueue.DEFAULT_CAPACITY,
+            pipeline.processorFor(printer, metrics), journal);
+        this.queue.setLookahead(next -> pipeline.prepare(next, metrics));
+    }
+
+    public SimulatedPrinter getPrinter() {
+        return printer;
+    }
+
+    public PrintJobQueue getQueue() {
+        return queue;
+    }
+
+    public PrintMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    /**
+     * Out of paper or cover open makes the printer unavailable; a dropped
+     * link does not, since the next job reconnects.
+     */
+    @Override
+    public boolean isAvailable() {
+        SimulatedPrinter.Fault fault = printer.getFault();
+        return fault == null || fault == SimulatedPrinter.Fault.DISCONNECTED;
+    }
+
+    @Override
+    public int queuedJobs() {
+        return queue.size();
+    }
+
+    @Override
+    public boolean offer(PrintJob job) {
+        return queue.offer(job);
+    }
+}
@@ -0,0 +1,228 @@
+package com.noblesite.epsonlink.sim;
+
+import com.noblesite.epsonlink.queue.PrinterUnavailableException;
+import com.noblesite.epsonlink.retry.ErrorDisposition;
+import com.noblesite.epsonlink.transport.PrinterTransport;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for a USB receipt printer, behind the same
+ * {@link PrinterTransport} as the real one. Each send takes a fixed
+ * per-command latency; the printer then stays busy for the time it takes
+ * to print the bytes at the configured throughput, like the real printer
+ * after sendData returns. Faults can be set and cleared, or injected at
+ * random, and the bytes received can be recorded for inspection.
+ */
+public class SimulatedPrinter implements PrinterTransport {
+
+    /**
+     * Printer conditions that stop a job, mapped to the same dispositions as the ePOS2 errors.
+     */
+    public enum Fault {
+        /** Needs an operator; jobs are held until the fault is cleared. */
+        PAPER_OUT("paper out", ErrorDisposition.NEEDS_OPERATOR),
+        /** Needs an operator; jobs are held until the fault is cleared. */
+        COVER_OPEN("cover open", ErrorDisposition.NEEDS_OPERATOR),
+        /** Link dropped; jobs are retried with backoff. */
+        DISCONNECTED("disconnected", ErrorDisposition.RETRYABLE);
+
+        final String description;
+        final ErrorDisposition disposition;
+
+        Fault(String description, ErrorDisposition disposition) {
+            this.description = description;
+            this.disposition = disposition;
+        }
+    }
+
+    /**
+     * Notified when a fault is cleared, as the real printer's status-change event would.
+     */
+    public interface Listener {
+        void onReady(SimulatedPrinter printer);
+    }
+
+    private final String name;
+    private final Random random;
+    private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+    private final AtomicLong jobsReceived = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong faultsRaised = new AtomicLong();
+    private final AtomicInteger pendingDisconnects = new AtomicInteger();
+    // Written and read only by the worker thread.
+    private long busyUntilNanos;
+    private volatile long bytesPerSecond;
+    private volatile long commandLatencyNanos;
+    private volatile double disconnectRate;
+    private volatile boolean recording;
+    private volatile Fault fault;
+    private volatile Listener listener;
+
+    /**
+     * Creates a printer with unlimited throughput, no latency and no faults.
+     * @param seed Seed for random disconnects, so runs can be repeated.
+     */
+    public SimulatedPrinter(String name, long seed) {
+        this.name = name;
+        this.random = new Random(seed);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param bytesPerSecond How fast the printer takes command bytes, 0 for unlimited.
+     */
+    public void setThroughput(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * @param latencyMicros Fixed cost of each send, independent of its size.
+     */
+    public void setCommandLatencyMicros(long latencyMicros) {
+        this.commandLatencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+    }
+
+    /**
+     * @param disconnectRate Chance, 0 to 1, that a send fails with a dropped link.
+     */
+    public void setDisconnectRate(double disconnectRate) {
+        this.disconnectRate = disconnectRate;
+    }
+
+    /**
+     * Fails the next sends with a dropped link, as a cable glitch would.
+     */
+    public void disconnectNext(int sends) {
+        pendingDisconnects.addAndGet(sends);
+    }
+
+    /**
+     * Keeps a copy of every byte received, for checking rendered output. Off by default.
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Raises a fault that lasts until {@link #clearFault()}.
+     */
+    public void setFault(Fault fault) {
+        if (fault != null && this.fault == null) {
+            faultsRaised.incrementAndGet();
+        }
+        this.fault = fault;
+    }
+
+    /**
+     * Clears the current fault and notifies the listener.
+     */
+    public void clearFault() {
+        fault = null;
+        Listener current = listener;
+        if (current != null) {
+            current.onReady(this);
+        }
+    }
+
+    public Fault getFault() {
+        return fault;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return Every byte received while recording, in order.
+     */
+    public byte[] getReceived() {
+        synchronized (received) {
+            return received.toByteArray();
+        }
+    }
+
+    public long getJobsReceived() {
+        return jobsReceived.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getFaultsRaised() {
+        return faultsRaised.get();
+    }
+
+    /**
+     * Always set up; faults are reported by {@link #send} like the real printer's status.
+     */
+    @Override
+    public void ensureReady() {
+    }
+
+    /**
+     * Waits until the previous job has finished printing.
+     */
+    @Override
+    public void awaitIdle() throws InterruptedException {
+        long remaining = busyUntilNanos - System.nanoTime();
+        if (remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    /**
+     * Waits for the command latency, records the job and starts printing it.
+     */
+    @Override
+    public void send(String jobId, byte[] commands) throws PrinterUnavailableException {
+        Fault current = fault;
+        if (current != null) {
+            throw new PrinterUnavailableException("Printer " + name + " " + current.description,
+                current.disposition, 0, null);
+        }
+        if (takeDisconnect()) {
+            throw new PrinterUnavailableException("Printer " + name + " dropped the connection",
+                ErrorDisposition.RETRYABLE, 0, null);
+        }
+        long latency = commandLatencyNanos;
+        if (latency > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(latency);
+            } catch (InterruptedException e) {
+                // The queue is stopping; hold the job rather than fail it.
+                Thread.currentThread().interrupt();
+                throw new PrinterUnavailableException("Printer " + name + " stopped");
+            }
+        }
+        if (recording) {
+            synchronized (received) {
+                received.write(commands, 0, commands.length);
+            }
+        }
+        jobsReceived.incrementAndGet();
+        bytesReceived.addAndGet(commands.length);
+        long throughput = bytesPerSecond;
+        if (throughput > 0) {
+            busyUntilNanos = System.nanoTime() + commands.length * 1_000_000_000L / throughput;
+        }
+    }
+
+    private boolean takeDisconnect() {
+        while (true) {
+            int pending = pendingDisconnects.get();
+            if (pending == 0) break;
+            if (pendingDisconnects.compareAndSet(pending, pending - 1)) return true;
+        }
+        double rate = disconnectRate;
+        return rate > 0 && random.nextDouble() < rate;
+    }
+}
@@ -0,0 +1,69 @@
+package com.noblesite.epsonlink.startup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs cold-start work as background stages that start as soon as the
+ * stages they depend on are done, instead of one after another on the main
+ * thread. Stages can also wait on signals raised from outside, such as a
+ * permission broadcast. Every stage and signal records a {@link StartupTrace} mark.
+ */
+public class StartupOrchestrator {
+
+    private final Executor executor;
+    private final StartupTrace trace;
+    private final Map<String, CompletableFuture<Void>> signals = new HashMap<>();
+
+    public StartupOrchestrator(Executor executor, StartupTrace trace) {
+        this.executor = executor;
+        this.trace = trace;
+    }
+
+    public StartupTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Runs {@code work} on the executor once every dependency has completed.
+     * If a dependency fails, so does this stage, without running.
+     * @param mark Recorded when the work finishes.
+     */
+    public CompletableFuture<Void> stage(String mark, Runnable work, CompletableFuture<?>... after) {
+        CompletableFuture<Void> ready = after.length == 0
+            ? CompletableFuture.completedFuture(null)
+            : CompletableFuture.allOf(after);
+        return ready.thenRunAsync(() -> {
+            work.run();
+            trace.mark(mark);
+        }, executor);
+    }
+
+    /**
+     * @return A future completed by {@link #signal(String)} with the same name.
+     */
+    public CompletableFuture<Void> await(String name) {
+        synchronized (signals) {
+            return signals.computeIfAbsent(name, key -> new CompletableFuture<>());
+        }
+    }
+
+    /**
+     * Completes the named signal and records its mark.
+     * @return true if this call completed it; false if it was already signalled.
+     */
+    public boolean signal(String name) {
+        if (!await(name).complete(null)) return false;
+        trace.mark(name);
+        return true;
+    }
+
+    /**
+     * @return true once the named signal has been raised.
+     */
+    public boolean isSignalled(String name) {
+        return await(name).isDone();
+    }
+}
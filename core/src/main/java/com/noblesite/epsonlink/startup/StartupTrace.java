@@ -0,0 +1,88 @@
+package com.noblesite.epsonlink.startup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Named timing marks for cold start, in milliseconds since the process
+ * started. Each mark is recorded once, so repeated events (a second page
+ * load, a reconnect) do not move it. Thread-safe.
+ */
+public class StartupTrace {
+
+    public static final String CONFIG_LOADED = "configLoaded";
+    public static final String FIRST_PAGE = "firstPage";
+    public static final String PRINTERS_DISCOVERED = "printersDiscovered";
+    public static final String USB_PERMISSION = "usbPermission";
+    public static final String PRINTER_INITIALIZED = "printerInitialized";
+    public static final String PRINTER_CONNECTED = "printerConnected";
+    public static final String PRINTER_READY = "printerReady";
+    public static final String FIRST_PRINT = "firstPrint";
+
+    /**
+     * Notified once per mark, on the thread that recorded it.
+     */
+    public interface Listener {
+        void onMark(String name, long elapsedMs);
+    }
+
+    private final long originMs;
+    private final LongSupplier clockMs;
+    private final Map<String, Long> marks = new LinkedHashMap<>();
+    private volatile Listener listener;
+
+    /**
+     * @param originMs Process start on the clock's time base.
+     * @param clockMs Monotonic millisecond clock, replaceable in tests.
+     */
+    public StartupTrace(long originMs, LongSupplier clockMs) {
+        this.originMs = originMs;
+        this.clockMs = clockMs;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Records a mark unless it was recorded before.
+     * @return true if this call recorded it.
+     */
+    public boolean mark(String name) {
+        long elapsed = clockMs.getAsLong() - originMs;
+        synchronized (marks) {
+            if (marks.containsKey(name)) return false;
+            marks.put(name, elapsed);
+        }
+        Listener current = listener;
+        if (current != null) {
+            current.onMark(name, elapsed);
+        }
+        return true;
+    }
+
+    /**
+     * @return Milliseconds from process start to the mark, or -1 if not reached yet.
+     */
+    public long get(String name) {
+        synchronized (marks) {
+            Long elapsed = marks.get(name);
+            return elapsed != null ? elapsed : -1;
+        }
+    }
+
+    /**
+     * @return The marks reached so far, in order, as a JSON object.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        synchronized (marks) {
+            for (Map.Entry<String, Long> mark : marks.entrySet()) {
+                if (json.length() > 1) json.append(',');
+                json.append('"').append(mark.getKey()).append("\":").append(mark.getValue());
+            }
+        }
+        return json.append('}').toString();
+    }
+}
@@ -0,0 +1,352 @@
+package com.noblesite.epsonlink.transport;
+
+import com.noblesite.epsonlink.metrics.PrintMetrics;
+import com.noblesite.epsonlink.model.PrintDocument;
+import com.noblesite.epsonlink.model.PrintJob;
+import com.noblesite.epsonlink.model.StreamPosition;
+import com.noblesite.epsonlink.parser.PrintJobFormatException;
+import com.noblesite.epsonlink.parser.PrintJobParser;
+import com.noblesite.epsonlink.queue.BatchJobException;
+import com.noblesite.epsonlink.queue.PrintJobQueue;
+import com.noblesite.epsonlink.queue.PrinterUnavailableException;
+import com.noblesite.epsonlink.render.JobRenderer;
+import com.noblesite.epsonlink.render.TemplateCache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Turns a queued job into printer commands and hands them to a
+ * {@link PrinterTransport}: parse, render (directly or from a cached
+ * template), wait for the printer, send. Records each stage and the job
+ * outcome in the printer's {@link PrintMetrics}. Shared by all printers;
+ * each worker thread parses with its own parser.
+ *
+ * Pipelined with {@link PrintJobQueue.Lookahead}: while the printer is
+ * still printing job N, {@link #prepare} renders job N+1, which is then
+ * sent as soon as the printer is idle.
+ *
+ * Long jobs are rendered in parts split at cuts (see
+ * {@link JobRenderer#render(PrintDocument, int, List)}); {@link #print}
+ * sends one part per call and the queue schedules the rest.
+ *
+ * Jobs whose payload is over the stream threshold are never held whole:
+ * they are parsed, rendered and sent {@link #STREAM_LINES} lines at a time,
+ * each batch waiting for the printer to finish the one before. Memory use
+ * stays the same however long the report, and paper starts moving as soon
+ * as the first batch is rendered.
+ */
+public class PrintPipeline {
+    private static final Logger LOG = Logger.getLogger("PrintPipeline");
+    public static final int DEFAULT_CHUNK_BYTES = 16 * 1024;
+    public static final int DEFAULT_STREAM_THRESHOLD = 64 * 1024;
+    // Lines parsed, rendered and sent at a time when a job is streamed.
+    static final int STREAM_LINES = 512;
+
+    private final ThreadLocal<PrintJobParser> jobParser = ThreadLocal.withInitial(PrintJobParser::new);
+    private final ThreadLocal<PrintDocument> streamBatch = ThreadLocal.withInitial(() -> new PrintDocument(STREAM_LINES));
+    private final JobRenderer jobRenderer;
+    private final TemplateCache templateCache;
+    private volatile int chunkBytes = DEFAULT_CHUNK_BYTES;
+    private volatile int streamThreshold = DEFAULT_STREAM_THRESHOLD;
+
+    public PrintPipeline(JobRenderer jobRenderer, TemplateCache templateCache) {
+        this.jobRenderer = jobRenderer;
+        this.templateCache = templateCache;
+    }
+
+    public JobRenderer getRenderer() {
+        return jobRenderer;
+    }
+
+    public TemplateCache getTemplateCache() {
+        return templateCache;
+    }
+
+    /**
+     * @param chunkBytes Smallest part a job is split into at a cut, so other jobs can print between parts; 0 to never split.
+     */
+    public void setChunkBytes(int chunkBytes) {
+        this.chunkBytes = Math.max(0, chunkBytes);
+    }
+
+    /**
+     * @param streamThreshold Payload length, in characters, above which a job is streamed instead of rendered whole; 0 to never stream.
+     */
+    public void setStreamThreshold(int streamThreshold) {
+        this.streamThreshold = Math.max(0, streamThreshold);
+    }
+
+    /**
+     * @return A queue processor that prints through the given transport, singly or in batches.
+     */
+    public PrintJobQueue.Processor processorFor(PrinterTransport transport, PrintMetrics metrics) {
+        return new PrintJobQueue.Processor() {
+            @Override
+            public void process(PrintJob job) throws Exception {
+                print(job, transport, metrics);
+            }
+
+            @Override
+            public void processBatch(List<PrintJob> jobs) throws Exception {
+                printBatch(jobs, transport, metrics);
+            }
+        };
+    }
+
+    /**
+     * Prints a job, or its next part, and records its stage timings. Runs on the printer's worker thread.
+     * @param job The queued print job.
+     * @param transport The printer the job was routed to.
+     * @param metrics The printer's metrics.
+     * @throws Exception if the job could not be printed; see {@link PrinterTransport#send}.
+     */
+    public void print(PrintJob job, PrinterTransport transport, PrintMetrics metrics) throws Exception {
+        if (job.markStarted()) {
+            metrics.recordQueueWait(job.getPriority(), System.nanoTime() - job.getEnqueuedAtNanos());
+        }
+        try {
+            transport.ensureReady();
+            if (job.getCommands() == null) {
+                if (streams(job)) {
+                    stream(job, transport, metrics);
+                    return;
+                }
+                renderJob(job, metrics);
+            }
+            int chunks = job.getChunkCount();
+            String id = chunks > 1 ? job.getId() + " part " + (job.getChunksSent() + 1) + "/" + chunks : job.getId();
+            transmit(id, job.nextChunk(), transport, metrics);
+            job.chunkSent();
+            if (chunks > 1) {
+                metrics.chunkSent();
+                if (job.hasUnsentChunks()) return;
+            }
+            metrics.jobCompleted(job.getCommands().length);
+        } catch (PrinterUnavailableException e) {
+            metrics.retried();
+            throw e;
+        } catch (Exception e) {
+            metrics.jobFailed();
+            throw e;
+        }
+    }
+
+    /**
+     * Prints several jobs in one transmission, saving a round trip per job.
+     * Each job starts with its own printer reset and keeps its own cut, so
+     * the output matches sending them one by one.
+     * @throws BatchJobException if one job cannot be rendered; nothing was sent.
+     * @throws Exception if the transmission failed; see {@link PrinterTransport#send}.
+     */
+    public void printBatch(List<PrintJob> jobs, PrinterTransport transport, PrintMetrics metrics) throws Exception {
+        long now = System.nanoTime();
+        for (PrintJob job : jobs) {
+            if (job.markStarted()) {
+                metrics.recordQueueWait(job.getPriority(), now - job.getEnqueuedAtNanos());
+            }
+        }
+        try {
+            transport.ensureReady();
+            int total = 0;
+            for (PrintJob job : jobs) {
+                if (job.getCommands() == null) {
+                    try {
+                        // Sent whole: the batch holds no job that was rendered in parts.
+                        job.setCommands(render(job.getPayload(), metrics));
+                    } catch (Exception e) {
+                        throw new BatchJobException(job, e);
+                    }
+                }
+                total += job.getCommands().length;
+            }
+            byte[] commands = new byte[total];
+            int offset = 0;
+            for (PrintJob job : jobs) {
+                byte[] part = job.getCommands();
+                System.arraycopy(part, 0, commands, offset, part.length);
+                offset += part.length;
+            }
+            transmit(jobs.get(0).getId() + "+" + (jobs.size() - 1), commands, transport, metrics);
+            metrics.batchSent(jobs.size());
+            for (PrintJob job : jobs) {
+                metrics.jobCompleted(job.getCommands().length);
+            }
+        } catch (BatchJobException e) {
+            metrics.jobFailed();
+            throw e;
+        } catch (PrinterUnavailableException e) {
+            metrics.retried();
+            throw e;
+        } catch (Exception e) {
+            for (int i = 0; i < jobs.size(); i++) {
+                metrics.jobFailed();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the next batches of a streamed job. A batch is rendered while the
+     * printer prints the one before and sent when the printer reports it
+     * done, so the printer's pace, not the job's length, bounds how much is
+     * held. Like a job rendered in parts, it returns after a cut once
+     * {@code chunkBytes} have been sent, and the queue schedules the rest.
+     */
+    private void stream(PrintJob job, PrinterTransport transport, PrintMetrics metrics) throws Exception {
+        PrintJobParser parser = jobParser.get();
+        PrintDocument batch = streamBatch.get();
+        StreamPosition position = job.getStreamPosition();
+        if (position == null) {
+            metrics.jobStreamed();
+            position = new StreamPosition(0, -1, -1, 0);
+        }
+        int offset = position.getOffset();
+        int alignment = position.getAlignment();
+        int style = position.getStyle();
+        int bytesSent = position.getBytesSent();
+        int partBytes = chunkBytes;
+        int sent = 0;
+        long parseNanos = 0;
+        long renderNanos = 0;
+        try {
+            while (true) {
+                long stageStart = System.nanoTime();
+                int next = parser.parseLines(job.getPayload(), offset, batch, STREAM_LINES,
+                    partBytes > 0 && sent >= partBytes);
+                long parsed = System.nanoTime();
+                parseNanos += parsed - stageStart;
+                if (batch.getSkippedLines() > 0) {
+                    LOG.warning("stream: Skipped " + batch.getSkippedLines() + " lines with unsupported types");
+                }
+                // The first batch of each call resets the printer, since other jobs may have printed since.
+                byte[] commands = jobRenderer.renderLines(batch, sent == 0, alignment, style);
+                renderNanos += System.nanoTime() - parsed;
+                transmit(job.getId() + " at " + offset, commands, transport, metrics);
+                metrics.chunkSent();
+                sent += commands.length;
+                bytesSent += commands.length;
+                for (int i = 0; i < batch.size(); i++) {
+                    if (batch.op(i) == PrintDocument.OP_ALIGN) {
+                        alignment = batch.arg(i);
+                    } else if (batch.op(i) == PrintDocument.OP_STYLE) {
+                        style = batch.arg(i);
+                    }
+                }
+                if (next < 0) {
+                    job.setStreamPosition(null);
+                    metrics.jobCompleted(bytesSent);
+                    return;
+                }
+                offset = next;
+                job.setStreamPosition(new StreamPosition(offset, alignment, style, bytesSent));
+                int last = batch.size() - 1;
+                if (partBytes > 0 && sent >= partBytes && last >= 0 && batch.op(last) == PrintDocument.OP_CUT) {
+                    return;
+                }
+            }
+        } finally {
+            batch.clear();
+            metrics.record(PrintMetrics.Stage.PARSE, parseNanos);
+            metrics.record(PrintMetrics.Stage.RENDER, renderNanos);
+        }
+    }
+
+    /**
+     * Decides, once, whether the job is too large to render whole.
+     */
+    private boolean streams(PrintJob job) {
+        int threshold = streamThreshold;
+        if (!job.isStreamed() && threshold > 0 && job.getPayload() != null
+                && job.getPayload().length() > threshold) {
+            job.setStreamed(true);
+        }
+        return job.isStreamed();
+    }
+
+    /**
+     * Waits for the printer to finish the previous transmission, then sends.
+     */
+    private void transmit(String id, byte[] commands, PrinterTransport transport, PrintMetrics metrics)
+            throws Exception {
+        long stageStart = System.nanoTime();
+        try {
+            transport.awaitIdle();
+        } catch (InterruptedException e) {
+            // The queue is stopping; keep the job rather than fail it.
+            Thread.currentThread().interrupt();
+            throw new PrinterUnavailableException("Interrupted waiting for the printer");
+        }
+        metrics.record(PrintMetrics.Stage.PRINTER_WAIT, System.nanoTime() - stageStart);
+        stageStart = System.nanoTime();
+        transport.send(id, commands);
+        metrics.record(PrintMetrics.Stage.SEND, System.nanoTime() - stageStart);
+    }
+
+    /**
+     * Renders a job ahead of time, while the printer is busy with the one
+     * before it. Errors are left for {@link #print} to report. A job that
+     * is streamed is left alone; its batches are rendered as it prints.
+     * @param job The next job in the printer's queue.
+     * @param metrics Receives the parse and render timings.
+     */
+    public void prepare(PrintJob job, PrintMetrics metrics) {
+        if (job.getCommands() != null || streams(job)) return;
+        try {
+            renderJob(job, metrics);
+        } catch (Exception e) {
+            // Rendered again, and failed properly, when the job is printed.
+            LOG.fine("prepare: Could not render job " + job.getId() + " ahead: " + e);
+        }
+    }
+
+    /**
+     * Parses and renders a job payload into one pre-sized ESC/POS buffer.
+     * @param payload The JSON print job.
+     * @param metrics Receives the parse and render timings.
+     * @return The job's command bytes.
+     * @throws PrintJobFormatException if the payload is not a valid job.
+     * @throws IllegalArgumentException if the job names a template that is not registered.
+     * @throws IOException if an image cannot be loaded.
+     */
+    public byte[] render(String payload, PrintMetrics metrics) throws PrintJobFormatException, IOException {
+        return render(payload, 0, null, metrics);
+    }
+
+    /**
+     * Renders a job, in parts if it is long enough, and keeps the commands on the job.
+     */
+    private void renderJob(PrintJob job, PrintMetrics metrics) throws PrintJobFormatException, IOException {
+        List<Integer> chunkEnds = new ArrayList<>();
+        byte[] commands = render(job.getPayload(), chunkBytes, chunkEnds, metrics);
+        int[] ends = new int[chunkEnds.size()];
+        for (int i = 0; i < ends.length; i++) {
+            ends[i] = chunkEnds.get(i);
+        }
+        job.setCommands(commands, ends);
+    }
+
+    private byte[] render(String payload, int chunkBytes, List<Integer> chunkEnds, PrintMetrics metrics)
+            throws PrintJobFormatException, IOException {
+        long stageStart = System.nanoTime();
+        PrintDocument document = jobParser.get().parse(payload);
+        metrics.record(PrintMetrics.Stage.PARSE, System.nanoTime() - stageStart);
+        if (document.getSkippedLines() > 0) {
+            LOG.warning("render: Skipped " + document.getSkippedLines() + " lines with unsupported types");
+        }
+        stageStart = System.nanoTime();
+        byte[] commands;
+        if (document.getTemplateId() != null) {
+            commands = templateCache.render(document);
+            if (commands == null) {
+                throw new IllegalArgumentException("Unknown template: " + document.getTemplateId());
+            }
+        } else {
+            commands = jobRenderer.render(document, chunkBytes, chunkEnds);
+        }
+        metrics.record(PrintMetrics.Stage.RENDER, System.nanoTime() - stageStart);
+        return commands;
+    }
+}
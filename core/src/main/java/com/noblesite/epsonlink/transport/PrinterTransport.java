@@ -0,0 +1,36 @@
+package com.noblesite.epsonlink.transport;
+
+import com.noblesite.epsonlink.queue.PrinterUnavailableException;
+
+/**
+ * Delivers rendered ESC/POS commands to one printer. The app implements it
+ * over the ePOS2 SDK; tests and benchmarks supply their own. Called only
+ * from the printer's worker thread, which renders the next job between
+ * {@link #send} and {@link #awaitIdle}.
+ */
+public interface PrinterTransport {
+
+    /**
+     * Cheap check made before a job is parsed and rendered, so a printer that
+     * is not set up does not waste the work on every retry.
+     * @throws PrinterUnavailableException if the printer cannot take a job right now.
+     */
+    void ensureReady() throws PrinterUnavailableException;
+
+    /**
+     * Waits until the printer has finished the job sent before, so the next
+     * one can be sent. Transports that print synchronously return at once.
+     */
+    default void awaitIdle() throws InterruptedException {
+    }
+
+    /**
+     * Sends one job's commands and returns once the printer has accepted them,
+     * possibly before it has finished printing them.
+     * @param jobId The job the commands belong to, for logging.
+     * @param commands The complete command stream of the job.
+     * @throws PrinterUnavailableException if the job should be held or moved to another printer.
+     * @throws Exception if the job cannot be printed.
+     */
+    void send(String jobId, byte[] commands) throws Exception;
+}
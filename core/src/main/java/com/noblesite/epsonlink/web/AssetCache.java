@@ -0,0 +1,358 @@
+package com.noblesite.epsonlink.web;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Disk cache of web responses for the kiosk page, so it loads from local
+ * storage and keeps working when the network drops. Each response is a
+ * body file plus a small metadata file with its URL, content type and
+ * validators; the index is rebuilt from the metadata files on first use.
+ * LRU bounded by total body bytes. Thread-safe.
+ */
+public class AssetCache {
+
+    private static final int META_MAGIC = 0x45504C57; // "EPLW"
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * A stored response. The body file may be replaced by a newer response
+     * at any time; a stream already opened on it keeps reading the old one.
+     */
+    public static final class Entry {
+        private final String url;
+        private final String contentType;
+        private final String etag;
+        private final String lastModified;
+        private final String allowOrigin;
+        private final File body;
+        private final long length;
+        private volatile long validatedAtMs;
+
+        Entry(String url, String contentType, String etag, String lastModified, String allowOrigin,
+              File body, long length, long validatedAtMs) {
+            this.url = url;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.allowOrigin = allowOrigin;
+            this.body = body;
+            this.length = length;
+            this.validatedAtMs = validatedAtMs;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return The Content-Type header, or null if the server sent none.
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * @return The ETag header, or null.
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return The Last-Modified header, or null.
+         */
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return The Access-Control-Allow-Origin header, or null.
+         */
+        public String getAllowOrigin() {
+            return allowOrigin;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return When the server last confirmed this response, 0 if not since the app started.
+         */
+        public long getValidatedAtMs() {
+            return validatedAtMs;
+        }
+
+        /**
+         * @return A stream over the body; the caller closes it.
+         */
+        public InputStream open() throws IOException {
+            return new FileInputStream(body);
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final File dir;
+    private final long maxBytes;
+    private boolean loaded;
+    private long totalBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public AssetCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Builds the file name for a URL: a 64-bit FNV-1a hash plus its length.
+     */
+    static String fileName(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return Long.toHexString(hash) + "-" + Integer.toHexString(url.length());
+    }
+
+    /**
+     * @return The stored response, or null on a miss.
+     */
+    public synchronized Entry get(String url) {
+        loadIfNeeded();
+        Entry entry = entries.get(url);
+        if (entry == null || !entry.body.isFile()) {
+            if (entry != null) {
+                remove(entry);
+            }
+            misses++;
+            return null;
+        }
+        hits++;
+        // Touch the file so the order survives a restart.
+        entry.body.setLastModified(System.currentTimeMillis());
+        return entry;
+    }
+
+    /**
+     * Like {@link #get}, but does not count as a use: no stats, no reordering.
+     * @return The stored response, or null.
+     */
+    public synchronized Entry peek(String url) {
+        loadIfNeeded();
+        Entry entry = entries.get(url);
+        return entry != null && entry.body.isFile() ? entry : null;
+    }
+
+    /**
+     * Stores a response, replacing any earlier one for the URL. The body is
+     * streamed to disk, so a large asset is never held in memory.
+     * @return The stored entry, or null if the body is larger than the whole cache.
+     * @throws IOException if the body cannot be read or written.
+     */
+    public Entry put(String url, String contentType, String etag, String lastModified, String allowOrigin,
+                     InputStream body) throws IOException {
+        synchronized (this) {
+            loadIfNeeded();
+        }
+        String name = fileName(url);
+        File tmp = File.createTempFile(name, TMP_SUFFIX, dir);
+        long length = 0;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = body.read(buffer)) > 0) {
+                length += read;
+                if (length > maxBytes) {
+                    tmp.delete();
+                    return null;
+                }
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+
+        synchronized (this) {
+            File bodyFile = new File(dir, name + BODY_SUFFIX);
+            Entry entry = new Entry(url, contentType, etag, lastModified, allowOrigin,
+                bodyFile, length, System.currentTimeMillis());
+            try {
+                writeMeta(new File(dir, name + META_SUFFIX), entry);
+            } catch (IOException e) {
+                tmp.delete();
+                throw e;
+            }
+            if (!tmp.renameTo(bodyFile)) {
+                tmp.delete();
+                throw new IOException("Cannot store " + url);
+            }
+            Entry previous = entries.put(url, entry);
+            if (previous != null) {
+                totalBytes -= previous.length;
+            }
+            totalBytes += length;
+            trim(url);
+            return entry;
+        }
+    }
+
+    /**
+     * Records that the server confirmed the stored response is still current.
+     */
+    public void markValidated(Entry entry) {
+        entry.validatedAtMs = System.currentTimeMillis();
+    }
+
+    public synchronized int size() {
+        loadIfNeeded();
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        loadIfNeeded();
+        return totalBytes;
+    }
+
+    /**
+     * @return Entry count, bytes, hits, misses and evictions as JSON.
+     */
+    public synchronized String statsJson() {
+        loadIfNeeded();
+        return "{\"entries\":" + entries.size()
+            + ",\"bytes\":" + totalBytes
+            + ",\"hits\":" + hits
+            + ",\"misses\":" + misses
+            + ",\"evictions\":" + evictions + "}";
+    }
+
+    private void trim(String keep) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            if (eldest.url.equals(keep)) continue;
+            it.remove();
+            deleteFiles(eldest);
+            totalBytes -= eldest.length;
+            evictions++;
+        }
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.url);
+        deleteFiles(entry);
+        totalBytes -= entry.length;
+    }
+
+    private void deleteFiles(Entry entry) {
+        String name = fileName(entry.url);
+        new File(dir, name + META_SUFFIX).delete();
+        entry.body.delete();
+    }
+
+    /**
+     * Rebuilds the index from the metadata files, least recently used first.
+     * Runs on first use rather than in the constructor, so it stays off the main thread.
+     */
+    private void loadIfNeeded() {
+        if (loaded) return;
+        loaded = true;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalStateException("Cannot create asset cache " + dir);
+        }
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        List<Entry> found = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TMP_SUFFIX)) {
+                // Left by a write that did not finish.
+                file.delete();
+            } else if (name.endsWith(META_SUFFIX)) {
+                Entry entry = readMeta(file);
+                if (entry != null) {
+                    found.add(entry);
+                } else {
+                    file.delete();
+                    new File(dir, name.substring(0, name.length() - META_SUFFIX.length()) + BODY_SUFFIX).delete();
+                }
+            }
+        }
+        Collections.sort(found, Comparator.comparingLong(entry -> entry.body.lastModified()));
+        for (Entry entry : found) {
+            entries.put(entry.url, entry);
+            totalBytes += entry.length;
+        }
+        trim(null);
+    }
+
+    private static void writeMeta(File file, Entry entry) throws IOException {
+        File tmp = new File(file.getPath() + TMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(META_MAGIC);
+            out.writeUTF(entry.url);
+            writeOptional(out, entry.contentType);
+            writeOptional(out, entry.etag);
+            writeOptional(out, entry.lastModified);
+            writeOptional(out, entry.allowOrigin);
+            out.writeLong(entry.length);
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot write " + file);
+        }
+    }
+
+    /**
+     * @return The entry, or null if the file is damaged or its body is missing.
+     */
+    private Entry readMeta(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != META_MAGIC) return null;
+            String url = in.readUTF();
+            String contentType = readOptional(in);
+            String etag = readOptional(in);
+            String lastModified = readOptional(in);
+            String allowOrigin = readOptional(in);
+            long length = in.readLong();
+            File body = new File(dir, fileName(url) + BODY_SUFFIX);
+            if (!body.isFile() || body.length() != length) return null;
+            // Not validated since this start, so the first use revalidates it.
+            return new Entry(url, contentType, etag, lastModified, allowOrigin, body, length, 0);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeOptional(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readOptional(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
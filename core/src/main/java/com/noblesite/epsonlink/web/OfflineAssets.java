@@ -0,0 +1,385 @@
+package com.noblesite.epsonlink.web;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the kiosk page and its assets from an {@link AssetCache}, so the
+ * page loads from local storage and keeps working while the network is down.
+ * Only GET requests whose URL matches a configured pattern are handled; the
+ * print and status actions never are. A stored response is returned at once
+ * and, if the server has not confirmed it for a minute, revalidated in the
+ * background with its ETag or Last-Modified date. A miss is fetched, stored
+ * and served; a response that may not be stored is passed through once. Plain Java (HttpURLConnection), so it is testable off-device.
+ */
+public class OfflineAssets {
+    private static final Logger LOG = Logger.getLogger("OfflineAssets");
+    public static final long REVALIDATE_AFTER_MS = 60_000;
+    private static final int CONNECT_TIMEOUT_MS = 5_000;
+    private static final int READ_TIMEOUT_MS = 15_000;
+
+    /**
+     * A response for the WebView. The caller closes the body.
+     */
+    public static final class Response {
+        private final String mimeType;
+        private final String encoding;
+        private final String allowOrigin;
+        private final InputStream body;
+
+        Response(String contentType, String allowOrigin, InputStream body) {
+            String mime = "application/octet-stream";
+            String charset = null;
+            if (contentType != null) {
+                String[] parts = contentType.split(";");
+                if (!parts[0].trim().isEmpty()) mime = parts[0].trim().toLowerCase(Locale.ROOT);
+                for (int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim();
+                    if (param.regionMatches(true, 0, "charset=", 0, 8)) {
+                        charset = param.substring(8).replace("\"", "").trim();
+                    }
+                }
+            }
+            this.mimeType = mime;
+            this.encoding = charset;
+            this.allowOrigin = allowOrigin;
+            this.body = body;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * @return The charset from the Content-Type header, or null.
+         */
+        public String getEncoding() {
+            return encoding;
+        }
+
+        /**
+         * @return The Access-Control-Allow-Origin header to send back, or null.
+         */
+        public String getAllowOrigin() {
+            return allowOrigin;
+        }
+
+        public InputStream getBody() {
+            return body;
+        }
+    }
+
+    private final AssetCache cache;
+    private final List<Pattern> patterns;
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+    private final ExecutorService background = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "OfflineAssets");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * @param patterns URL globs, where {@code *} matches any run of characters
+     *                 (e.g. {@code https://pos.example.com/*}).
+     */
+    public OfflineAssets(AssetCache cache, List<String> patterns) {
+        this.cache = cache;
+        List<Pattern> compiled = new ArrayList<>();
+        for (String glob : patterns) {
+            compiled.add(compileGlob(glob));
+        }
+        this.patterns = compiled;
+    }
+
+    /**
+     * Splits a comma-separated pattern list, dropping blanks.
+     */
+    public static List<String> parsePatterns(String csv) {
+        if (csv == null) return Collections.emptyList();
+        List<String> result = new ArrayList<>();
+        for (String part : csv.split(",")) {
+            if (!part.trim().isEmpty()) result.add(part.trim());
+        }
+        return result;
+    }
+
+    static Pattern compileGlob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        int star;
+        while ((star = glob.indexOf('*', start)) >= 0) {
+            regex.append(Pattern.quote(glob.substring(start, star))).append(".*");
+            start = star + 1;
+        }
+        regex.append(Pattern.quote(glob.substring(start)));
+        return Pattern.compile(regex.toString());
+    }
+
+    public AssetCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return true if the URL matches a pattern and is not a print or status action.
+     */
+    public boolean matches(String url) {
+        if (url == null || url.contains("/action=")) return false;
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(url).matches()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param headers The request headers; a request for a byte range is left to the WebView.
+     * @return true if the request should go through {@link #open}.
+     */
+    public boolean handles(String method, String url, Map<String, String> headers) {
+        if (!"GET".equalsIgnoreCase(method) || !matches(url)) return false;
+        if (headers != null) {
+            for (String name : headers.keySet()) {
+                if ("Range".equalsIgnoreCase(name)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Serves a request from the cache, fetching and storing it on a miss.
+     * Blocks on a miss, so call it from the WebView's request thread, not the main thread.
+     * @param headers Request headers to pass on when fetching (cookies, user agent).
+     * @return The response, or null to let the WebView load the URL itself.
+     */
+    public Response open(String url, Map<String, String> headers) {
+        AssetCache.Entry entry = cache.get(url);
+        if (entry != null) {
+            if (System.currentTimeMillis() - entry.getValidatedAtMs() > REVALIDATE_AFTER_MS) {
+                revalidateLater(url, headers, entry);
+            }
+            Response response = response(entry);
+            if (response != null) return response;
+        }
+        HttpURLConnection connection = null;
+        boolean passedOn = false;
+        try {
+            connection = connect(url, headers);
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) return null;
+            if (!cacheable(url, connection)) {
+                // Hand over the live body rather than have the WebView download it again.
+                passedOn = true;
+                return new Response(connection.getContentType(),
+                    connection.getHeaderField("Access-Control-Allow-Origin"),
+                    new DisconnectOnClose(connection));
+            }
+            entry = store(url, connection);
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Cannot fetch " + url, e);
+            return null;
+        } finally {
+            if (connection != null && !passedOn) connection.disconnect();
+        }
+        return entry != null ? response(entry) : null;
+    }
+
+    /**
+     * Caches every listed asset that matches a pattern, revalidating those
+     * already stored. Blocks; see {@link #precacheInBackground}.
+     * @return How many of the assets are now cached and current.
+     */
+    public int precache(List<String> urls) {
+        int cached = 0;
+        for (String url : urls) {
+            if (!matches(url)) continue;
+            try {
+                if (fetch(url, null, cache.peek(url)) != null) cached++;
+            } catch (IOException e) {
+                LOG.log(Level.FINE, "Cannot precache " + url, e);
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Reads the precache manifest, if any, and caches the listed assets and
+     * {@code urls} on a background thread.
+     * @param manifestUrl The manifest's URL, or null or empty for none.
+     */
+    public void precacheInBackground(String manifestUrl, List<String> urls) {
+        background.execute(() -> {
+            List<String> all = new ArrayList<>(urls);
+            if (manifestUrl != null && !manifestUrl.isEmpty()) {
+                try {
+                    all.addAll(readManifest(manifestUrl));
+                } catch (IOException e) {
+                    LOG.warning("Cannot read precache manifest " + manifestUrl + ": " + e.getMessage());
+                }
+            }
+            int cached = precache(all);
+            LOG.info("Precached " + cached + " of " + all.size() + " assets");
+        });
+    }
+
+    /**
+     * Fetches a precache manifest: plain text, one URL per line, relative
+     * URLs resolved against the manifest's own. Blank lines and lines
+     * starting with {@code #} are skipped.
+     * @throws IOException if the manifest cannot be fetched.
+     */
+    public static List<String> readManifest(String manifestUrl) throws IOException {
+        URL base = new URL(manifestUrl);
+        HttpURLConnection connection = connect(manifestUrl, null);
+        try {
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + status);
+            }
+            List<String> urls = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    urls.add(new URL(base, line).toString());
+                }
+            }
+            return urls;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    public void shutdown() {
+        background.shutdownNow();
+    }
+
+    private void revalidateLater(String url, Map<String, String> headers, AssetCache.Entry entry) {
+        if (!revalidating.add(url)) return;
+        background.execute(() -> {
+            try {
+                fetch(url, headers, entry);
+            } catch (IOException e) {
+                // Offline: keep serving what is stored.
+                LOG.log(Level.FINE, "Cannot revalidate " + url, e);
+            } finally {
+                revalidating.remove(url);
+            }
+        });
+    }
+
+    /**
+     * Fetches a URL, conditionally if {@code cached} is given, and stores a cacheable response.
+     * @return The stored or confirmed entry, or null if the response is not cacheable.
+     */
+    private AssetCache.Entry fetch(String url, Map<String, String> headers, AssetCache.Entry cached)
+            throws IOException {
+        HttpURLConnection connection = connect(url, headers);
+        try {
+            if (cached != null) {
+                if (cached.getEtag() != null) {
+                    connection.setRequestProperty("If-None-Match", cached.getEtag());
+                }
+                if (cached.getLastModified() != null) {
+                    connection.setRequestProperty("If-Modified-Since", cached.getLastModified());
+                }
+            }
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                cache.markValidated(cached);
+                return cached;
+            }
+            if (status != HttpURLConnection.HTTP_OK || !cacheable(url, connection)) return null;
+            return store(url, connection);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Stores the body of a 200 response.
+     * @return The new entry, or null if the body is too large to keep.
+     */
+    private AssetCache.Entry store(String url, HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            return cache.put(url, connection.getContentType(),
+                connection.getHeaderField("ETag"),
+                connection.getHeaderField("Last-Modified"),
+                connection.getHeaderField("Access-Control-Allow-Origin"),
+                in);
+        }
+    }
+
+    /**
+     * A response that sets a cookie, forbids storing, or came from a redirect
+     * (often a login page) is served once but not kept.
+     */
+    private static boolean cacheable(String url, HttpURLConnection connection) {
+        if (!connection.getURL().toString().equals(url)) return false;
+        if (connection.getHeaderField("Set-Cookie") != null) return false;
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        return cacheControl == null || !cacheControl.toLowerCase(Locale.ROOT).contains("no-store");
+    }
+
+    private static HttpURLConnection connect(String url, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setUseCaches(false);
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                String name = header.getKey();
+                if ("If-None-Match".equalsIgnoreCase(name) || "If-Modified-Since".equalsIgnoreCase(name)) continue;
+                connection.setRequestProperty(name, header.getValue());
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * A passed-through body that releases its connection once the WebView closes it.
+     */
+    private static final class DisconnectOnClose extends FilterInputStream {
+        private final HttpURLConnection connection;
+
+        DisconnectOnClose(HttpURLConnection connection) throws IOException {
+            super(connection.getInputStream());
+            this.connection = connection;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static Response response(AssetCache.Entry entry) {
+        try {
+            return new Response(entry.getContentType(), entry.getAllowOrigin(), entry.open());
+        } catch (IOException e) {
+            // Evicted between lookup and open.
+            return null;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.noblesite.epsonlink.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class DitheringTest {
+
+    @Test
+    public void floydSteinberg_keepsSolidColours() {
+        int[] black = new int[10 * 3];
+        int[] white = new int[10 * 3];
+        Arrays.fill(white, 255);
+
+        MonoRaster dark = Dithering.floydSteinberg(black, 10, 3);
+        MonoRaster light = Dithering.floydSteinberg(white, 10, 3);
+
+        assertEquals(2, dark.getRowBytes());
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 10; x++) {
+                assertTrue(dark.isBlack(x, y));
+                assertFalse(light.isBlack(x, y));
+            }
+        }
+        // Padding bits past the image width stay clear.
+        assertEquals((byte) 0xC0, dark.getData()[1]);
+    }
+
+    @Test
+    public void floydSteinberg_midGreyIsAboutHalfBlack() {
+        int width = 32;
+        int height = 32;
+        int[] grey = new int[width * height];
+        Arrays.fill(grey, 128);
+
+        MonoRaster raster = Dithering.floydSteinberg(grey, width, height);
+        int black = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (raster.isBlack(x, y)) black++;
+            }
+        }
+        assertEquals(width * height / 2.0, black, width * height * 0.05);
+    }
+
+    @Test
+    public void luminance_compositesTransparentPixelsOverWhite() {
+        int[] lum = Dithering.luminance(new int[] {0x00000000, 0xFF000000, 0xFFFFFFFF});
+        assertEquals(255, lum[0]);
+        assertEquals(0, lum[1]);
+        assertEquals(255, lum[2]);
+    }
+}
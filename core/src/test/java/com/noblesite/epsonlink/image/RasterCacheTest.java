@@ -0,0 +1,54 @@
+package com.noblesite.epsonlink.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class RasterCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void get_readsBackFromDiskInNewInstance() throws Exception {
+        File dir = folder.newFolder("raster");
+        MonoRaster raster = new MonoRaster(12, 2, new byte[] {(byte) 0x80, 0x10, 0x00, (byte) 0xF0});
+        String key = RasterCache.key("asset:logo.png", 12);
+
+        new RasterCache(1024, dir, 1024).put(key, raster);
+        MonoRaster loaded = new RasterCache(1024, dir, 1024).get(key);
+
+        assertNotNull(loaded);
+        assertEquals(12, loaded.getWidth());
+        assertEquals(2, loaded.getHeight());
+        assertArrayEquals(raster.getData(), loaded.getData());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedFromMemory() {
+        RasterCache cache = new RasterCache(8, null, 0);
+        cache.put("a", new MonoRaster(8, 4, new byte[4]));
+        cache.put("b", new MonoRaster(8, 4, new byte[4]));
+        cache.get("a");
+        cache.put("c", new MonoRaster(8, 4, new byte[4]));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void key_dependsOnSourceAndWidth() {
+        assertEquals(RasterCache.key("abc", 100), RasterCache.key("abc", 100));
+        assertNotEquals(RasterCache.key("abc", 100), RasterCache.key("abd", 100));
+        assertNotEquals(RasterCache.key("abc", 100), RasterCache.key("abc", 200));
+    }
+}
@@ -0,0 +1,60 @@
+package com.noblesite.epsonlink.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void index_roundTripsThroughLowerBound() {
+        for (long v : new long[] {0, 1, 15, 16, 17, 31, 32, 1000, 123_456, 86_400_000_000L}) {
+            int index = LatencyHistogram.index(v);
+            long lower = LatencyHistogram.lowerBound(index);
+            assertTrue(v + " >= " + lower, v >= lower);
+            assertTrue(v + " < next", v < LatencyHistogram.lowerBound(index + 1));
+        }
+    }
+
+    @Test
+    public void percentiles_areWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int us = 1; us <= 10_000; us++) {
+            histogram.recordMicros(us);
+        }
+
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(5_000, histogram.getMeanMicros());
+        assertWithin(5_000, histogram.percentileMicros(0.50));
+        assertWithin(9_900, histogram.percentileMicros(0.99));
+        assertEquals(10_000, histogram.percentileMicros(1.0));
+        assertEquals(10_000, histogram.getMaxMicros());
+    }
+
+    @Test
+    public void merge_addsSamplesAndKeepsMax() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.recordMicros(10);
+        a.recordMicros(20);
+        b.recordMicros(5_000);
+
+        a.merge(b);
+
+        assertEquals(3, a.getCount());
+        assertEquals(5_000, a.getMaxMicros());
+        assertWithin(20, a.percentileMicros(0.5));
+    }
+
+    @Test
+    public void empty_reportsZeros() {
+        assertEquals("{\"count\":0,\"meanUs\":0,\"p50Us\":0,\"p90Us\":0,\"p99Us\":0,\"maxUs\":0}",
+            new LatencyHistogram().toJson());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " not within 12.5% of " + expected,
+            Math.abs(actual - expected) <= expected / 8);
+    }
+}
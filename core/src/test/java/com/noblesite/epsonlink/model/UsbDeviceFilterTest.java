@@ -0,0 +1,34 @@
+package com.noblesite.epsonlink.model;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class UsbDeviceFilterTest {
+
+    @Test
+    public void matches_vendorEntryMatchesAnyProduct() {
+        UsbDeviceFilter filter = new UsbDeviceFilter().add(1208, UsbDeviceFilter.ANY_PRODUCT);
+
+        assertTrue(filter.matches(1208, 0x0202));
+        assertTrue(filter.matches(1208, 0x0e28));
+        assertFalse(filter.matches(1209, 0x0202));
+    }
+
+    @Test
+    public void matches_productEntryMatchesOnlyThatProduct() {
+        UsbDeviceFilter filter = new UsbDeviceFilter().add(1208, 0x0202);
+
+        assertTrue(filter.matches(1208, 0x0202));
+        assertFalse(filter.matches(1208, 0x0203));
+        assertFalse(filter.matches(0x0202, 1208));
+    }
+
+    @Test
+    public void isEmpty_untilEntryAdded() {
+        UsbDeviceFilter filter = new UsbDeviceFilter();
+        assertTrue(filter.isEmpty());
+        assertFalse(filter.add(1208, UsbDeviceFilter.ANY_PRODUCT).isEmpty());
+    }
+}
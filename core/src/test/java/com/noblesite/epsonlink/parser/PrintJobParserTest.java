@@ -0,0 +1,257 @@
+package com.noblesite.epsonlink.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.noblesite.epsonlink.model.JobPriority;
+import com.noblesite.epsonlink.model.PrintDocument;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the streaming parser produces the same commands as the
+ * original JSONObject-based job handling.
+ */
+public class PrintJobParserTest {
+
+    private final PrintJobParser parser = new PrintJobParser();
+
+    /**
+     * The original PrinterRepository.sendPrintJob logic, recording commands instead of printing.
+     */
+    private static List<String> referenceCommands(String payload) throws JSONException {
+        List<String> commands = new ArrayList<>();
+        JSONObject jobJson = new JSONObject(payload);
+        JSONArray lines = jobJson.getJSONArray("lines");
+        for (int i = 0; i < lines.length(); i++) {
+            JSONObject line = lines.getJSONObject(i);
+            String type = line.optString("type", "text");
+            switch (type) {
+                case "text":
+                    commands.add("text:" + line.optString("value", "") + "\n");
+                    break;
+                case "cut":
+                    commands.add("cut");
+                    break;
+                default:
+                    break;
+            }
+        }
+        return commands;
+    }
+
+    private List<String> parsedCommands(String payload) throws PrintJobFormatException {
+        PrintDocument document = parser.parse(payload);
+        List<String> commands = new ArrayList<>();
+        for (int i = 0; i < document.size(); i++) {
+            switch (document.op(i)) {
+                case PrintDocument.OP_TEXT:
+                    commands.add("text:" + document.text(i));
+                    break;
+                case PrintDocument.OP_CUT:
+                    commands.add("cut");
+                    break;
+            }
+        }
+        return commands;
+    }
+
+    private void assertEquivalent(String payload) throws Exception {
+        assertEquals(payload, referenceCommands(payload), parsedCommands(payload));
+    }
+
+    @Test
+    public void readmeSample_matchesReference() throws Exception {
+        assertEquivalent("{\"lines\":[{\"type\":\"text\",\"value\":\"Welcome to EpsonLink!\"},"
+            + "{\"type\":\"text\",\"value\":\"Total: $9.99\"},{\"type\":\"cut\"}]}");
+    }
+
+    @Test
+    public void escapesAndUnicode_matchReference() throws Exception {
+        assertEquivalent("{\"lines\":[{\"type\":\"text\",\"value\":\"Quote \\\" slash \\\\ \\/ tab\\t nl\\n \\u00e9\\u20AC\"}]}");
+    }
+
+    @Test
+    public void keyOrderAndDefaults_matchReference() throws Exception {
+        assertEquivalent("{ \"copies\": 2, \"lines\" : [\n"
+            + "  { \"value\": \"type after value\", \"type\": \"text\" },\n"
+            + "  { \"value\": \"no type defaults to text\" },\n"
+            + "  { \"type\": \"text\" },\n"
+            + "  { },\n"
+            + "  { \"value\": \"cut ignores value\", \"type\": \"cut\" },\n"
+            + "  { \"type\": \"unknown\", \"value\": \"skipped\" },\n"
+            + "  { \"type\": 5 },\n"
+            + "  { \"t\\u0079pe\": \"cut\" }\n"
+            + "], \"meta\": { \"nested\": [1, {\"a\": \"]}\"}], \"flag\": true } }");
+    }
+
+    @Test
+    public void nonStringValues_matchReference() throws Exception {
+        assertEquivalent("{\"lines\":[{\"value\":42},{\"value\":-7},{\"value\":true},{\"value\":false},"
+            + "{\"value\":12345678901}]}");
+    }
+
+    @Test
+    public void emptyLines_matchReference() throws Exception {
+        assertEquivalent("{\"lines\":[]}");
+    }
+
+    @Test
+    public void largeReport_matchesReference() throws Exception {
+        StringBuilder payload = new StringBuilder("{\"lines\":[");
+        for (int i = 0; i < 5000; i++) {
+            if (i > 0) payload.append(',');
+            if (i % 500 == 499) {
+                payload.append("{\"type\":\"cut\"}");
+            } else {
+                payload.append("{\"type\":\"text\",\"value\":\"Item ").append(i).append("\\t$").append(i % 97).append(".99\"}");
+            }
+        }
+        payload.append("]}");
+        assertEquivalent(payload.toString());
+    }
+
+    @Test
+    public void skippedLines_areCounted() throws Exception {
+        PrintDocument document = parser.parse("{\"lines\":[{\"type\":\"image\"},{\"type\":\"text\"}]}");
+        assertEquals(1, document.size());
+        assertEquals(1, document.getSkippedLines());
+    }
+
+    @Test
+    public void invalidPayloads_areRejectedLikeReference() {
+        String[] payloads = {
+            "",
+            "[]",
+            "{}",
+            "{\"lines\":{}}",
+            "{\"lines\":[\"text\"]}",
+            "{\"lines\":[{\"type\":\"text\"}",
+            "{\"lines\":[{\"value\":\"unterminated}]}",
+        };
+        for (String payload : payloads) {
+            try {
+                referenceCommands(payload);
+                fail("Reference accepted " + payload);
+            } catch (JSONException expected) {
+                // Both implementations must reject the payload.
+            }
+            try {
+                parser.parse(payload);
+                fail("Parser accepted " + payload);
+            } catch (PrintJobFormatException expected) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void parseLines_readsJobInBatches() throws Exception {
+        StringBuilder payload = new StringBuilder("{\"priority\":\"report\",\"lines\":[");
+        for (int i = 0; i < 1000; i++) {
+            if (i > 0) payload.append(',');
+            payload.append(i % 100 == 99 ? "{\"type\":\"cut\"}" : "{\"type\":\"text\",\"value\":\"Item " + i + "\"}");
+        }
+        payload.append("]}");
+        PrintDocument whole = parser.parse(payload.toString());
+
+        PrintDocument batch = new PrintDocument(64);
+        int index = 0;
+        int batches = 0;
+        int offset = 0;
+        do {
+            offset = parser.parseLines(payload.toString(), offset, batch, 64, false);
+            assertTrue(batch.size() <= 64);
+            for (int i = 0; i < batch.size(); i++, index++) {
+                assertEquals(whole.op(index), batch.op(i));
+                assertEquals(whole.text(index), batch.text(i));
+            }
+            batches++;
+        } while (offset >= 0);
+        assertEquals(whole.size(), index);
+        assertEquals(16, batches);
+    }
+
+    @Test
+    public void parseLines_stopsAfterCutWhenAsked() throws Exception {
+        String payload = "{\"lines\":[{\"type\":\"text\",\"value\":\"One\"},{\"type\":\"cut\"},"
+            + "{\"type\":\"text\",\"value\":\"Two\"}]}";
+        PrintDocument batch = new PrintDocument(4);
+
+        int offset = parser.parseLines(payload, 0, batch, 64, true);
+        assertEquals(2, batch.size());
+        assertEquals(PrintDocument.OP_CUT, batch.op(1));
+        assertEquals(-1, parser.parseLines(payload, offset, batch, 64, true));
+        assertEquals("Two\n", batch.text(0));
+        assertEquals(-1, parser.parseLines("{\"lines\":[]}", 0, batch, 64, false));
+        assertEquals(0, batch.size());
+    }
+
+    @Test
+    public void parseLines_rejectsTemplateAndMissingLines() {
+        String[] payloads = {"{\"template\":\"receipt\",\"vars\":{}}", "{}", "{\"lines\":{}}", "not json"};
+        for (String payload : payloads) {
+            try {
+                parser.parseLines(payload, 0, new PrintDocument(4), 64, false);
+                fail("Parser accepted " + payload);
+            } catch (PrintJobFormatException expected) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void readPriority_findsLaneAnywhereInJob() {
+        assertEquals(JobPriority.REPORT, PrintJobParser.readPriority(
+            "{\"lines\":[{\"type\":\"text\",\"value\":\"\\\"priority\\\":\\\"kitchen\\\"\"}],"
+            + " \"priority\" : \"report\"}"));
+        assertEquals(JobPriority.KITCHEN, PrintJobParser.readPriority(
+            "{\"priority\":\"kitchen\",\"template\":\"receipt\",\"vars\":{}}"));
+    }
+
+    @Test
+    public void readIdempotencyKey_findsKeyOrReturnsNull() {
+        assertEquals("order-42", PrintJobParser.readIdempotencyKey(
+            "{\"lines\":[{\"type\":\"text\",\"value\":\"Hi\"}],\"idempotencyKey\":\"order-42\"}"));
+        String[] payloads = {null, "{\"lines\":[]}", "{\"idempotencyKey\":\"\",\"lines\":[]}",
+            "{\"idempotencyKey\":42,\"lines\":[]}", "not json"};
+        for (String payload : payloads) {
+            assertNull(payload, PrintJobParser.readIdempotencyKey(payload));
+        }
+    }
+
+    @Test
+    public void readHeader_readsPriorityAndKeyTogether() {
+        PrintJobParser.Header header = PrintJobParser.readHeader(
+            "{\"idempotencyKey\":\"order-7\",\"lines\":[],\"priority\":\"kitchen\"}");
+        assertEquals(JobPriority.KITCHEN, header.getPriority());
+        assertEquals("order-7", header.getIdempotencyKey());
+
+        PrintJobParser.Header empty = PrintJobParser.readHeader("{\"lines\":[]}");
+        assertEquals(JobPriority.DEFAULT, empty.getPriority());
+        assertNull(empty.getIdempotencyKey());
+    }
+
+    @Test
+    public void readPriority_defaultsWhenMissingUnknownOrInvalid() {
+        String[] payloads = {
+            null,
+            "{\"lines\":[]}",
+            "{\"priority\":\"urgent\",\"lines\":[]}",
+            "{\"priority\":1,\"lines\":[]}",
+            "{\"lines\":[",
+            "not json",
+        };
+        for (String payload : payloads) {
+            assertEquals(payload, JobPriority.DEFAULT, PrintJobParser.readPriority(payload));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.noblesite.epsonlink.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.noblesite.epsonlink.interfaces.PrinterCallback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DedupIndexTest {
+
+    @Test
+    public void claim_returnsEarlierJobForRepeatedKey() {
+        DedupIndex index = new DedupIndex(16, 60_000);
+        DedupIndex.Entry first = index.claim("order-1", "job-1");
+        assertEquals("job-1", first.getJobId());
+
+        assertSame(first, index.claim("order-1", "job-2"));
+        assertEquals("job-3", index.claim("order-2", "job-3").getJobId());
+    }
+
+    @Test
+    public void claim_forgetsKeyAfterTtl() throws Exception {
+        DedupIndex index = new DedupIndex(16, 5);
+        index.claim("order-1", "job-1");
+        Thread.sleep(20);
+
+        assertEquals("job-2", index.claim("order-1", "job-2").getJobId());
+    }
+
+    @Test
+    public void recordingOutcome_marksCompletedAndFreesKeyOnFailure() {
+        DedupIndex index = new DedupIndex(16, 60_000);
+        AtomicInteger calls = new AtomicInteger();
+        PrinterCallback counting = new PrinterCallback() {
+            @Override
+            public void onJobCompleted(String jobId) {
+                calls.incrementAndGet();
+            }
+
+            @Override
+            public void onJobFailed(String jobId, String error) {
+                calls.incrementAndGet();
+            }
+        };
+        DedupIndex.Entry printed = index.claim("order-1", "job-1");
+        DedupIndex.recordingOutcome(printed, counting).onJobCompleted("job-1");
+        DedupIndex.Entry failed = index.claim("order-2", "job-2");
+        DedupIndex.recordingOutcome(failed, counting).onJobFailed("job-2", "Paper out");
+
+        assertEquals(2, calls.get());
+        assertTrue(printed.isCompleted());
+        assertSame(printed, index.claim("order-1", "job-3"));
+        assertEquals("job-4", index.claim("order-2", "job-4").getJobId());
+    }
+
+    @Test
+    public void release_letsKeyBeClaimedAgain() {
+        DedupIndex index = new DedupIndex(16, 60_000);
+        DedupIndex.Entry rejected = index.claim("order-1", "job-1");
+        index.release(rejected);
+
+        assertEquals("job-2", index.claim("order-1", "job-2").getJobId());
+    }
+
+    @Test
+    public void claim_keepsAtMostEntriesPerSlot() {
+        // One slot, so every key competes for it.
+        DedupIndex index = new DedupIndex(1, 60_000);
+        DedupIndex.Entry oldest = index.claim("key-0", "job-0");
+        for (int i = 1; i <= DedupIndex.ENTRIES_PER_SLOT; i++) {
+            index.claim("key-" + i, "job-" + i);
+        }
+
+        assertNotSame(oldest, index.claim("key-0", "job-again"));
+        assertEquals("job-" + DedupIndex.ENTRIES_PER_SLOT,
+            index.claim("key-" + DedupIndex.ENTRIES_PER_SLOT, "other").getJobId());
+    }
+
+    @Test
+    public void follow_reportsOutcomeToRepeats() {
+        DedupIndex index = new DedupIndex(16, 60_000);
+        List<String> events = new ArrayList<>();
+        DedupIndex.Entry printed = index.claim("order-1", "job-1");
+        PrinterCallback original = DedupIndex.recordingOutcome(printed, null);
+        index.claim("order-1", "job-2").follow(recording(events, "waiting"));
+        original.onJobCompleted("job-1");
+        printed.follow(recording(events, "late"));
+
+        DedupIndex.Entry failed = index.claim("order-2", "job-3");
+        failed.follow(recording(events, "waiting"));
+        DedupIndex.recordingOutcome(failed, null).onJobFailed("job-3", "Paper out");
+
+        assertEquals(Arrays.asList("waiting completed job-1", "late completed job-1",
+            "waiting failed job-3 Paper out"), events);
+    }
+
+    private static PrinterCallback recording(List<String> events, String name) {
+        return new PrinterCallback() {
+            @Override
+            public void onJobCompleted(String jobId) {
+                events.add(name + " completed " + jobId);
+            }
+
+            @Override
+            public void onJobFailed(String jobId, String error) {
+                events.add(name + " failed " + jobId + " " + error);
+            }
+        };
+    }
+
+    @Test
+    public void claim_concurrentRepeatsPrintOnce() throws Exception {
+        int threads = 8;
+        // One slot holding every key, so nothing is evicted and a second winner can only be a lost race.
+        int keys = DedupIndex.ENTRIES_PER_SLOT;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < 200; round++) {
+                DedupIndex index = new DedupIndex(1, 60_000);
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<DedupIndex.Entry[]>> results = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    String jobId = "job-" + t;
+                    results.add(pool.submit(() -> {
+                        start.await();
+                        DedupIndex.Entry[] claimed = new DedupIndex.Entry[keys];
+                        for (int i = 0; i < keys; i++) {
+                            claimed[i] = index.claim("order-" + i, jobId);
+                        }
+                        return claimed;
+                    }));
+                }
+                start.countDown();
+
+                DedupIndex.Entry[] first = results.get(0).get(5, TimeUnit.SECONDS);
+                for (Future<DedupIndex.Entry[]> result : results) {
+                    DedupIndex.Entry[] claimed = result.get(5, TimeUnit.SECONDS);
+                    for (int i = 0; i < keys; i++) {
+                        assertSame("Key claimed twice", first[i], claimed[i]);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.noblesite.epsonlink.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.noblesite.epsonlink.model.JobPriority;
+import com.noblesite.epsonlink.model.PrintJob;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class JobDispatcherTest {
+
+    private static final class FakeTarget implements JobDispatcher.Target {
+        final String role;
+        final int capacity;
+        final List<PrintJob> jobs = new ArrayList<>();
+        boolean available = true;
+
+        FakeTarget(String role, int capacity) {
+            this.role = role;
+            this.capacity = capacity;
+        }
+
+        @Override
+        public String getRole() {
+            return role;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return available;
+        }
+
+        @Override
+        public int queuedJobs() {
+            return jobs.size();
+        }
+
+        @Override
+        public boolean offer(PrintJob job) {
+            if (jobs.size() >= capacity) return false;
+            return jobs.add(job);
+        }
+    }
+
+    private static PrintJob job(String role) {
+        return new PrintJob(PrintJob.newId(), "{\"lines\":[]}", null, role);
+    }
+
+    @Test
+    public void roundRobin_alternatesBetweenPrinters() {
+        JobDispatcher dispatcher = new JobDispatcher(8);
+        dispatcher.setPolicy(RoutingPolicy.ROUND_ROBIN);
+        FakeTarget a = new FakeTarget(null, 8);
+        FakeTarget b = new FakeTarget(null, 8);
+        dispatcher.addTarget(a);
+        dispatcher.addTarget(b);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(dispatcher.dispatch(job(null)));
+        }
+        assertEquals(2, a.jobs.size());
+        assertEquals(2, b.jobs.size());
+    }
+
+    @Test
+    public void leastQueued_picksShortestQueue() {
+        JobDispatcher dispatcher = new JobDispatcher(8);
+        FakeTarget busy = new FakeTarget(null, 8);
+        FakeTarget idle = new FakeTarget(null, 8);
+        busy.jobs.addAll(Arrays.asList(job(null), job(null)));
+        dispatcher.addTarget(busy);
+        dispatcher.addTarget(idle);
+
+        dispatcher.dispatch(job(null));
+        dispatcher.dispatch(job(null));
+
+        assertEquals(2, busy.jobs.size());
+        assertEquals(2, idle.jobs.size());
+    }
+
+    @Test
+    public void dispatch_pinsRoleToMatchingPrinter() {
+        JobDispatcher dispatcher = new JobDispatcher(8);
+        FakeTarget kitchen = new FakeTarget("kitchen", 8);
+        FakeTarget receipt = new FakeTarget("receipt", 8);
+        dispatcher.addTarget(kitchen);
+        dispatcher.addTarget(receipt);
+
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatch(job("kitchen"));
+        }
+
+        assertEquals(3, kitchen.jobs.size());
+        assertEquals(0, receipt.jobs.size());
+    }
+
+    @Test
+    public void dispatch_backlogsUntilPrinterAvailable() {
+        JobDispatcher dispatcher = new JobDispatcher(1);
+        FakeTarget printer = new FakeTarget(null, 8);
+        printer.available = false;
+        dispatcher.addTarget(printer);
+
+        PrintJob first = job(null);
+        assertTrue(dispatcher.dispatch(first));
+        assertFalse(dispatcher.dispatch(job(null)));
+        assertEquals(1, dispatcher.backlogSize());
+
+        printer.available = true;
+        dispatcher.drainBacklog();
+        assertEquals(0, dispatcher.backlogSize());
+        assertEquals(first, printer.jobs.get(0));
+    }
+
+    @Test
+    public void addRecovered_goesAheadOfBacklog() {
+        JobDispatcher dispatcher = new JobDispatcher(8);
+        PrintJob fresh = job(null);
+        dispatcher.dispatch(fresh);
+        PrintJob recovered = job(null);
+        dispatcher.addRecovered(Arrays.asList(recovered));
+
+        FakeTarget printer = new FakeTarget(null, 8);
+        dispatcher.addTarget(printer);
+
+        assertEquals(Arrays.asList(recovered, fresh), printer.jobs);
+    }
+
+    @Test
+    public void reroute_movesJobOffFailingPrinter() {
+        JobDispatcher dispatcher = new JobDispatcher(8);
+        FakeTarget failing = new FakeTarget("kitchen", 8);
+        FakeTarget spare = new FakeTarget("kitchen", 8);
+        FakeTarget other = new FakeTarget("receipt", 8);
+        dispatcher.addTarget(failing);
+        dispatcher.addTarget(spare);
+        dispatcher.addTarget(other);
+
+        assertTrue(dispatcher.reroute(job("kitchen"), failing));
+        assertEquals(1, spare.jobs.size());
+
+        spare.available = false;
+        assertFalse(dispatcher.reroute(job("kitchen"), failing));
+        assertEquals(0, other.jobs.size());
+    }
+
+    @Test
+    public void drainBacklog_handsOutUrgentJobsFirst() {
+        JobDispatcher dispatcher = new JobDispatcher(8);
+        PrintJob report = new PrintJob(PrintJob.newId(), "{\"lines\":[]}", null, null, JobPriority.REPORT);
+        PrintJob receipt = job(null);
+        dispatcher.dispatch(report);
+        dispatcher.dispatch(receipt);
+
+        FakeTarget printer = new FakeTarget(null, 1);
+        dispatcher.addTarget(printer);
+
+        assertEquals(Arrays.asList(receipt), printer.jobs);
+        assertEquals(1, dispatcher.backlogSize(JobPriority.REPORT));
+    }
+}
@@ -0,0 +1,120 @@
+package com.noblesite.epsonlink.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.noblesite.epsonlink.model.JobPriority;
+import com.noblesite.epsonlink.model.PrintJob;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class LaneQueueTest {
+
+    private static PrintJob job(JobPriority priority) {
+        return new PrintJob(PrintJob.newId(), "{\"lines\":[]}", null, null, priority);
+    }
+
+    @Test
+    public void poll_servesMostUrgentLaneFirst() {
+        LaneQueue queue = new LaneQueue(8, 0);
+        PrintJob report = job(JobPriority.REPORT);
+        PrintJob kitchen = job(JobPriority.KITCHEN);
+        PrintJob first = job(JobPriority.CUSTOMER);
+        PrintJob second = job(JobPriority.CUSTOMER);
+        queue.offer(report);
+        queue.offer(kitchen);
+        queue.offer(first);
+        queue.offer(second);
+
+        assertSame(first, queue.peek());
+        assertSame(first, queue.poll());
+        assertSame(second, queue.poll());
+        assertSame(kitchen, queue.poll());
+        assertSame(report, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void poll_jobWaitingPastLimitGoesFirst() throws Exception {
+        LaneQueue queue = new LaneQueue(8, 5);
+        PrintJob report = job(JobPriority.REPORT);
+        queue.offer(report);
+        Thread.sleep(20);
+        PrintJob receipt = job(JobPriority.CUSTOMER);
+        queue.offer(receipt);
+
+        assertSame(report, queue.poll());
+        assertSame(receipt, queue.poll());
+    }
+
+    @Test
+    public void addFirst_returnsJobToHeadOfItsLane() {
+        LaneQueue queue = new LaneQueue(1, 0);
+        PrintJob waiting = job(JobPriority.REPORT);
+        PrintJob partlySent = job(JobPriority.REPORT);
+        queue.offer(waiting);
+        queue.addFirst(partlySent);
+
+        assertEquals(2, queue.size());
+        assertEquals(2, queue.size(JobPriority.REPORT));
+        assertSame(partlySent, queue.poll());
+        assertSame(waiting, queue.poll());
+    }
+
+    @Test
+    public void addFirst_keepsWaitSinceSubmission() throws Exception {
+        LaneQueue queue = new LaneQueue(8, 5);
+        PrintJob report = job(JobPriority.REPORT);
+        queue.offer(report);
+        // First part sent; the rest goes back while receipts arrive.
+        assertSame(report, queue.poll());
+        Thread.sleep(20);
+        PrintJob receipt = job(JobPriority.CUSTOMER);
+        queue.offer(receipt);
+        queue.addFirst(report);
+
+        assertSame(report, queue.poll());
+        assertSame(receipt, queue.poll());
+    }
+
+    @Test
+    public void offer_sharesCapacityAcrossLanes() {
+        LaneQueue queue = new LaneQueue(2, 0);
+        assertTrue(queue.offer(job(JobPriority.REPORT)));
+        assertTrue(queue.offer(job(JobPriority.KITCHEN)));
+        assertFalse(queue.offer(job(JobPriority.CUSTOMER)));
+    }
+
+    @Test
+    public void drainTo_returnsMostUrgentLaneFirst() {
+        LaneQueue queue = new LaneQueue(8, 0);
+        PrintJob report = job(JobPriority.REPORT);
+        PrintJob receipt = job(JobPriority.CUSTOMER);
+        queue.offer(report);
+        queue.offer(receipt);
+
+        List<PrintJob> drained = new ArrayList<>();
+        queue.drainTo(drained);
+
+        assertEquals(Arrays.asList(receipt, report), drained);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void poll_waitsForAJob() throws Exception {
+        LaneQueue queue = new LaneQueue(8, 0);
+        PrintJob job = job(JobPriority.KITCHEN);
+        new Thread(() -> queue.offer(job)).start();
+
+        assertSame(job, queue.poll(5, TimeUnit.SECONDS));
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+}
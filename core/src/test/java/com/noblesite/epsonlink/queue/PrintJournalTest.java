@@ -0,0 +1,144 @@
+package com.noblesite.epsonlink.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.noblesite.epsonlink.model.PrintJob;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class PrintJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void awaitRecovered_replaysUnfinishedJobsInOrder() throws Exception {
+        File file = new File(folder.getRoot(), "journal.bin");
+        PrintJournal journal = open(file);
+        PrintJob a = new PrintJob("{\"lines\":[{\"value\":\"a\"}]}", null);
+        PrintJob b = new PrintJob("{\"lines\":[{\"value\":\"b\"}]}", null);
+        PrintJob c = new PrintJob("{\"lines\":[{\"value\":\"ç\"}]}", null);
+        journal.append(a);
+        journal.append(b);
+        journal.append(c);
+        journal.markDone(b.getId());
+        journal.close();
+
+        assertEquals(ids(a, c), ids(open(file).awaitRecovered()));
+    }
+
+    @Test
+    public void awaitRecovered_keepsPrinterRole() throws Exception {
+        File file = new File(folder.getRoot(), "journal.bin");
+        PrintJournal journal = open(file);
+        journal.append(new PrintJob(PrintJob.newId(), "{\"lines\":[]}", null, "kitchen"));
+        journal.append(new PrintJob("{\"lines\":[]}", null));
+        journal.close();
+
+        List<PrintJob> recovered = open(file).awaitRecovered();
+        assertEquals("kitchen", recovered.get(0).getRole());
+        assertNull(recovered.get(1).getRole());
+    }
+
+    @Test
+    public void awaitRecovered_discardsRecordTornByCrash() throws Exception {
+        File file = new File(folder.getRoot(), "journal.bin");
+        PrintJournal journal = open(file);
+        PrintJob a = new PrintJob("{\"lines\":[{\"value\":\"a\"}]}", null);
+        PrintJob b = new PrintJob("{\"lines\":[{\"value\":\"b\"}]}", null);
+        journal.append(a);
+        journal.flush();
+        byte[] before = Files.readAllBytes(file.toPath());
+        journal.append(b);
+        journal.close();
+
+        // Simulate a crash part way through b: its header is on disk but the body is not.
+        byte[] after = Files.readAllBytes(file.toPath());
+        int recordStart = 0;
+        while (before[recordStart] == after[recordStart]) recordStart++;
+        // The first differing byte is inside b's length field; back up to the record start.
+        recordStart -= recordStart % 4;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(recordStart + 8 + 10);
+            raf.write(new byte[40]);
+        }
+
+        PrintJournal recovered = open(file);
+        assertEquals(ids(a), ids(recovered.awaitRecovered()));
+
+        // New records go where the torn one was and survive the next restart.
+        PrintJob c = new PrintJob("{\"lines\":[{\"value\":\"c\"}]}", null);
+        recovered.append(c);
+        recovered.close();
+        assertEquals(ids(a, c), ids(open(file).awaitRecovered()));
+    }
+
+    @Test
+    public void compaction_keepsOnlyLiveJobs() throws Exception {
+        File file = new File(folder.getRoot(), "journal.bin");
+        PrintJournal journal = new PrintJournal(file, 4096);
+        journal.awaitRecovered();
+        StringBuilder payload = new StringBuilder("{\"lines\":[{\"value\":\"");
+        for (int i = 0; i < 200; i++) payload.append('x');
+        payload.append("\"}]}");
+
+        PrintJob keep = new PrintJob(payload.toString(), null);
+        journal.append(keep);
+        for (int i = 0; i < 100; i++) {
+            PrintJob done = new PrintJob(payload.toString(), null);
+            journal.append(done);
+            journal.markDone(done.getId());
+        }
+        journal.close();
+
+        // Compaction keeps the log under the threshold, so only a few of the 101 payloads remain.
+        String contents = new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1);
+        int copies = contents.split(Pattern.quote(payload.toString()), -1).length - 1;
+        assertTrue("payload copies: " + copies, copies < 4096 / payload.length());
+        List<PrintJob> recovered = open(file).awaitRecovered();
+        assertEquals(ids(keep), ids(recovered));
+        assertEquals(keep.getPayload(), recovered.get(0).getPayload());
+    }
+
+    @Test
+    public void append_groupsConcurrentWritesIntoFewerCommits() throws Exception {
+        File file = new File(folder.getRoot(), "journal.bin");
+        PrintJournal journal = open(file);
+        journal.awaitRecovered();
+        long batchesBefore = journal.getBatchCount();
+        for (int i = 0; i < 500; i++) {
+            journal.append(new PrintJob("{\"lines\":[]}", null));
+        }
+        journal.flush();
+
+        assertTrue(journal.getBatchCount() - batchesBefore < 500);
+        journal.close();
+        assertEquals(500, open(file).awaitRecovered().size());
+    }
+
+    private static PrintJournal open(File file) {
+        return new PrintJournal(file, PrintJournal.DEFAULT_COMPACT_THRESHOLD_BYTES);
+    }
+
+    private static List<String> ids(PrintJob... jobs) {
+        List<String> ids = new ArrayList<>();
+        for (PrintJob job : jobs) ids.add(job.getId());
+        return ids;
+    }
+
+    private static List<String> ids(List<PrintJob> jobs) {
+        return ids(jobs.toArray(new PrintJob[0]));
+    }
+}
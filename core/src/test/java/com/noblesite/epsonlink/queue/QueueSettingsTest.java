@@ -0,0 +1,61 @@
+package com.noblesite.epsonlink.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.noblesite.epsonlink.interfaces.PrinterCallback;
+import com.noblesite.epsonlink.model.JobPriority;
+import com.noblesite.epsonlink.model.PrintJob;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class QueueSettingsTest {
+
+    @Test
+    public void applyTo_queueCreatedAfterConfigBatches() throws Exception {
+        // Configured first, as the service reads its configuration before any printer is registered.
+        QueueSettings settings = new QueueSettings();
+        settings.setBatchPolicy(new BatchPolicy(200, 4, BatchPolicy.DEFAULT_MAX_BYTES));
+
+        List<Integer> sends = new CopyOnWriteArrayList<>();
+        PrintJobQueue queue = new PrintJobQueue("late", 8, new PrintJobQueue.Processor() {
+            @Override
+            public void process(PrintJob job) {
+                sends.add(1);
+            }
+
+            @Override
+            public void processBatch(List<PrintJob> jobs) {
+                sends.add(jobs.size());
+            }
+        });
+        settings.applyTo(queue);
+
+        CountDownLatch done = new CountDownLatch(4);
+        PrinterCallback callback = new PrinterCallback() {
+            @Override
+            public void onJobCompleted(String jobId) {
+                done.countDown();
+            }
+
+            @Override
+            public void onJobFailed(String jobId, String error) {
+            }
+        };
+        try {
+            for (int i = 0; i < 4; i++) {
+                queue.offer(new PrintJob(PrintJob.newId(), "{\"lines\":[]}", callback, null, JobPriority.CUSTOMER));
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(1, sends.size());
+            assertEquals(4, (int) sends.get(0));
+        } finally {
+            queue.shutdown();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.noblesite.epsonlink.render;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.noblesite.epsonlink.image.MonoRaster;
+import com.noblesite.epsonlink.image.RasterSource;
+import com.noblesite.epsonlink.model.PrintDocument;
+import com.noblesite.epsonlink.parser.PrintJobParser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class JobRendererTest {
+
+    private final JobRenderer renderer = new JobRenderer(new EscPosEncoder(StandardCharsets.ISO_8859_1));
+
+    @Test
+    public void render_encodesAllCommandTypes() throws Exception {
+        PrintDocument document = new PrintJobParser().parse("{\"lines\":["
+            + "{\"type\":\"align\",\"value\":\"center\"},"
+            + "{\"type\":\"style\",\"bold\":true,\"width\":2,\"height\":2},"
+            + "{\"type\":\"text\",\"value\":\"Hi\"},"
+            + "{\"type\":\"feed\",\"value\":3},"
+            + "{\"type\":\"cut\"}]}");
+
+        byte[] expected = {
+            0x1B, '@',
+            0x1B, 'a', 1,
+            0x1B, 'E', 1, 0x1B, '-', 0, 0x1D, '!', 0x11,
+            'H', 'i', '\n',
+            0x1B, 'd', 3,
+            0x1D, 'V', 66, 0
+        };
+        assertArrayEquals(expected, renderer.render(document));
+    }
+
+    @Test
+    public void render_presizesExactlyForSingleByteText() throws Exception {
+        PrintDocument document = new PrintDocument(4);
+        document.addText("Café\n");
+        document.addFeed(600);
+        byte[] bytes = renderer.render(document);
+        // ESC @ + 5 text bytes + three ESC d chunks for 600 lines.
+        assertEquals(2 + 5 + 9, bytes.length);
+        assertEquals((byte) 0xE9, bytes[5]);
+    }
+
+    @Test
+    public void render_encodesImagesAsRasterBands() throws Exception {
+        MonoRaster logo = new MonoRaster(16, 300, new byte[2 * 300]);
+        RasterSource source = (src, width) -> {
+            assertEquals("asset:logo.png", src);
+            assertEquals(16, width);
+            return logo;
+        };
+        PrintDocument document = new PrintDocument(1);
+        document.addImage("asset:logo.png", 16);
+
+        byte[] bytes = new JobRenderer(new EscPosEncoder(), source).render(document);
+
+        // ESC @, then a 256-row band and a 44-row band, each with an 8 byte GS v 0 header.
+        assertEquals(2 + 8 + 2 * 256 + 8 + 2 * 44, bytes.length);
+        assertArrayEquals(new byte[] {0x1D, 'v', '0', 0, 2, 0, 0, 1}, Arrays.copyOfRange(bytes, 2, 10));
+        int second = 10 + 2 * 256;
+        assertArrayEquals(new byte[] {0x1D, 'v', '0', 0, 2, 0, 44, 0}, Arrays.copyOfRange(bytes, second, second + 8));
+    }
+
+    @Test(expected = IOException.class)
+    public void render_rejectsImagesWithoutSource() throws Exception {
+        PrintDocument document = new PrintDocument(1);
+        document.addImage("asset:logo.png", 16);
+        renderer.render(document);
+    }
+
+    @Test
+    public void render_encodesBarcodeWithCode128Prefix() throws Exception {
+        PrintDocument document = new PrintJobParser().parse("{\"lines\":["
+            + "{\"type\":\"barcode\",\"value\":\"A1\",\"width\":2,\"height\":50,\"hri\":\"none\"}]}");
+
+        byte[] expected = {
+            0x1B, '@',
+            0x1D, 'h', 50, 0x1D, 'w', 2, 0x1D, 'H', 0,
+            0x1D, 'k', 73, 4, '{', 'B', 'A', '1'
+        };
+        assertArrayEquals(expected, renderer.render(document));
+    }
+
+    @Test
+    public void render_memoizesRepeatedSymbols() throws Exception {
+        SymbolCache cache = new SymbolCache(8, 4096);
+        JobRenderer memoizing = new JobRenderer(new EscPosEncoder(), null, cache);
+        PrintDocument document = new PrintJobParser().parse("{\"lines\":["
+            + "{\"type\":\"qrcode\",\"value\":\"https://example.com/l/42\",\"level\":\"h\"}]}");
+
+        byte[] first = memoizing.render(document);
+        byte[] second = memoizing.render(document);
+
+        assertArrayEquals(first, second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        // GS ( k function 169 selects level H.
+        assertEquals(51, first[2 + 9 + 8 + 8 - 1]);
+    }
+
+    @Test
+    public void render_drawsSymbolsAsRasterWhenEnabled() throws Exception {
+        JobRenderer rasterRenderer = new JobRenderer(new EscPosEncoder());
+        rasterRenderer.setSymbolsAsRaster(true);
+        PrintDocument document = new PrintJobParser().parse("{\"lines\":["
+            + "{\"type\":\"qrcode\",\"value\":\"hello\",\"size\":2}]}");
+
+        byte[] bytes = rasterRenderer.render(document);
+
+        // Version 1 QR: 21 modules plus a 4 module quiet zone each side, 2 dots per module.
+        assertArrayEquals(new byte[] {0x1D, 'v', '0', 0, 8, 0, 58, 0}, Arrays.copyOfRange(bytes, 2, 10));
+        assertEquals(2 + 8 + 8 * 58, bytes.length);
+    }
+
+    @Test
+    public void render_splitsLongJobsAtCutsAndRestoresState() throws Exception {
+        PrintDocument document = new PrintJobParser().parse("{\"lines\":["
+            + "{\"type\":\"align\",\"value\":\"center\"},"
+            + "{\"type\":\"text\",\"value\":\"One\"},{\"type\":\"cut\"},"
+            + "{\"type\":\"text\",\"value\":\"Two\"},{\"type\":\"cut\"}]}");
+        List<Integer> chunkEnds = new ArrayList<>();
+
+        byte[] bytes = renderer.render(document, 1, chunkEnds);
+
+        byte[] expected = {
+            0x1B, '@', 0x1B, 'a', 1, 'O', 'n', 'e', '\n', 0x1D, 'V', 66, 0,
+            0x1B, '@', 0x1B, 'a', 1, 'T', 'w', 'o', '\n', 0x1D, 'V', 66, 0
+        };
+        assertArrayEquals(expected, bytes);
+        // No split after the final cut.
+        assertEquals(Arrays.asList(13), chunkEnds);
+    }
+
+    @Test
+    public void render_keepsPartsAtLeastChunkBytes() throws Exception {
+        PrintDocument document = new PrintJobParser().parse("{\"lines\":["
+            + "{\"type\":\"text\",\"value\":\"A\"},{\"type\":\"cut\"},"
+            + "{\"type\":\"text\",\"value\":\"B\"},{\"type\":\"cut\"},"
+            + "{\"type\":\"text\",\"value\":\"C\"},{\"type\":\"cut\"}]}");
+        List<Integer> chunkEnds = new ArrayList<>();
+
+        renderer.render(document, 12, chunkEnds);
+
+        // ESC @ + "A\n" + cut is 8 bytes, too small on its own; the part ends after "B".
+        assertEquals(Arrays.asList(14), chunkEnds);
+        assertArrayEquals(renderer.render(document), renderer.render(document, 0, null));
+    }
+}
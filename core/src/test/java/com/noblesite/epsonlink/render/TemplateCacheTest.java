@@ -0,0 +1,68 @@
+package com.noblesite.epsonlink.render;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.noblesite.epsonlink.model.PrintDocument;
+import com.noblesite.epsonlink.parser.PrintJobParser;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class TemplateCacheTest {
+
+    private final EscPosEncoder encoder = new EscPosEncoder(StandardCharsets.ISO_8859_1);
+    private final PrintJobParser parser = new PrintJobParser();
+
+    @Test
+    public void render_matchesFullJobWithSubstitutedValues() throws Exception {
+        TemplateCache cache = new TemplateCache(new JobRenderer(encoder), 4, 4096);
+        cache.register("receipt", "{\"lines\":[{\"type\":\"align\",\"value\":\"center\"},"
+            + "{\"value\":\"Store {{store}}\"},{\"value\":\"Total: {{ total }} {{currency}}\"},{\"type\":\"cut\"}]}");
+
+        PrintDocument job = parser.parse("{\"template\":\"receipt\",\"vars\":{\"store\":\"#12\",\"total\":9.5}}");
+        PrintDocument expected = parser.parse("{\"lines\":[{\"type\":\"align\",\"value\":\"center\"},"
+            + "{\"value\":\"Store #12\"},{\"value\":\"Total: 9.5 \"},{\"type\":\"cut\"}]}");
+
+        assertArrayEquals(new JobRenderer(encoder).render(expected), cache.render(job));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void render_unknownTemplateCountsMiss() throws Exception {
+        TemplateCache cache = new TemplateCache(new JobRenderer(encoder), 4, 4096);
+        assertNull(cache.render(parser.parse("{\"template\":\"missing\"}")));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void register_evictsLeastRecentlyUsed() throws Exception {
+        TemplateCache cache = new TemplateCache(new JobRenderer(encoder), 2, 4096);
+        cache.register("a", "{\"lines\":[{\"value\":\"A\"}]}");
+        cache.register("b", "{\"lines\":[{\"value\":\"B\"}]}");
+        cache.render(parser.parse("{\"template\":\"a\"}"));
+        cache.register("c", "{\"lines\":[{\"value\":\"C\"}]}");
+
+        assertTrue(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+        assertTrue(cache.contains("c"));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void render_substitutesQrCodePlaceholders() throws Exception {
+        TemplateCache cache = new TemplateCache(new JobRenderer(encoder), 4, 4096);
+        cache.register("loyalty", "{\"lines\":[{\"value\":\"Thanks {{name}}\"},"
+            + "{\"type\":\"qrcode\",\"value\":\"https://example.com/l/{{member}}\",\"size\":4}]}");
+
+        PrintDocument job = parser.parse("{\"template\":\"loyalty\",\"vars\":{\"name\":\"Ann\",\"member\":\"42\"}}");
+        PrintDocument expected = parser.parse("{\"lines\":[{\"value\":\"Thanks Ann\"},"
+            + "{\"type\":\"qrcode\",\"value\":\"https://example.com/l/42\",\"size\":4}]}");
+
+        assertArrayEquals(new JobRenderer(encoder).render(expected), cache.render(job));
+    }
+}
@@ -0,0 +1,39 @@
+package com.noblesite.epsonlink.retry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+    private final RetryPolicy policy = new RetryPolicy(4, 100, 1000);
+
+    @Test
+    public void ceiling_doublesUntilCapped() {
+        assertEquals(100, policy.ceilingMs(1));
+        assertEquals(200, policy.ceilingMs(2));
+        assertEquals(800, policy.ceilingMs(4));
+        assertEquals(1000, policy.ceilingMs(5));
+        assertEquals(1000, policy.ceilingMs(200));
+    }
+
+    @Test
+    public void backoff_isJitteredWithinCeiling() {
+        boolean varied = false;
+        long first = policy.backoffMs(3);
+        for (int i = 0; i < 200; i++) {
+            long delay = policy.backoffMs(3);
+            assertTrue(delay >= 0 && delay <= 400);
+            varied |= delay != first;
+        }
+        assertTrue(varied);
+    }
+
+    @Test
+    public void shouldRetry_stopsAfterMaxAttempts() {
+        assertTrue(policy.shouldRetry(4));
+        assertFalse(policy.shouldRetry(5));
+    }
+}
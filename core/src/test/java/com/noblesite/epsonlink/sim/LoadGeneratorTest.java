@@ -0,0 +1,98 @@
+package com.noblesite.epsonlink.sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.noblesite.epsonlink.metrics.LatencyHistogram;
+import com.noblesite.epsonlink.model.JobPriority;
+import com.noblesite.epsonlink.queue.BatchPolicy;
+import com.noblesite.epsonlink.retry.RetryPolicy;
+
+import org.junit.Test;
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void run_printsEveryJobOnce() throws Exception {
+        LoadGenerator generator = new LoadGenerator(2, JobMix.parse("receipt=3,template=1"), null, 7);
+        generator.setRate(200);
+        for (SimulatedPrinter printer : generator.getPrinters()) {
+            printer.setRecording(true);
+        }
+
+        LoadGenerator.Report report = generator.run(250);
+
+        long received = 0;
+        for (SimulatedPrinter printer : generator.getPrinters()) {
+            received += printer.getJobsReceived();
+        }
+        assertEquals(0, report.getFailed());
+        assertEquals(0, report.getUnfinished());
+        assertEquals(report.getCompleted(), received);
+        assertEquals(report.getCompleted(), report.getEndToEnd().getCount());
+        assertTrue(report.getCompleted() >= 40);
+    }
+
+    @Test
+    public void run_heldJobsFinishAfterFaultsClear() throws Exception {
+        LoadGenerator generator = new LoadGenerator(2, JobMix.parse("receipt"), null, 7);
+        generator.setRate(100);
+        generator.setRetryPolicy(new RetryPolicy(3, 10, 100));
+        generator.setFaults(50, 100);
+        for (SimulatedPrinter printer : generator.getPrinters()) {
+            printer.disconnectNext(1);
+        }
+
+        LoadGenerator.Report report = generator.run(300);
+
+        assertEquals(0, report.getFailed());
+        assertEquals(0, report.getUnfinished());
+        assertTrue(report.getMetrics().getRetries() > 0);
+    }
+
+    @Test
+    public void run_drainsBacklogAfterBurst() throws Exception {
+        // One printer that cannot keep up, so the burst overflows its queue into the backlog.
+        LoadGenerator generator = new LoadGenerator(1, JobMix.parse("receipt"), null, 7);
+        generator.setRate(400);
+        generator.getPrinters().get(0).setThroughput(50_000);
+
+        LoadGenerator.Report report = generator.run(300);
+
+        assertEquals(0, report.getUnfinished());
+        assertTrue(report.getCompleted() > 100);
+    }
+
+    @Test
+    public void run_batchesBurstsOfSmallJobs() throws Exception {
+        LoadGenerator generator = new LoadGenerator(1, JobMix.parse("receipt"), null, 7);
+        generator.setRate(400);
+        generator.setBatchPolicy(new BatchPolicy(20, 8, BatchPolicy.DEFAULT_MAX_BYTES));
+        SimulatedPrinter printer = generator.getPrinters().get(0);
+        printer.setCommandLatencyMicros(5000);
+
+        LoadGenerator.Report report = generator.run(300);
+
+        assertEquals(0, report.getFailed());
+        assertEquals(0, report.getUnfinished());
+        assertTrue(report.getMetrics().getBatches() > 0);
+        assertTrue(printer.getJobsReceived() < report.getCompleted());
+    }
+
+    @Test
+    public void run_receiptsPrintBetweenReportParts() throws Exception {
+        LoadGenerator generator = new LoadGenerator(1, JobMix.parse("receipt=9,report=1"), null, 3);
+        generator.setRate(40);
+        // A 5,000-line report takes about half a second to print, each of its sections 50 ms.
+        generator.getPrinters().get(0).setThroughput(400_000);
+
+        LoadGenerator.Report report = generator.run(500);
+
+        assertEquals(0, report.getFailed());
+        assertEquals(0, report.getUnfinished());
+        assertTrue(report.getMetrics().getChunks() > 1);
+        LatencyHistogram receipts = report.getMetrics().getQueueWait(JobPriority.CUSTOMER);
+        assertTrue(receipts.getCount() > 0);
+        assertTrue("Receipt waited " + receipts.getMaxMicros() + " us", receipts.getMaxMicros() < 400_000);
+    }
+}
@@ -0,0 +1,96 @@
+package com.noblesite.epsonlink.sim;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.noblesite.epsonlink.queue.PrinterUnavailableException;
+import com.noblesite.epsonlink.retry.ErrorDisposition;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SimulatedPrinterTest {
+
+    @Test
+    public void send_recordsBytesInOrder() throws Exception {
+        SimulatedPrinter printer = new SimulatedPrinter("sim", 1);
+        printer.setRecording(true);
+        printer.send("a", new byte[] {1, 2});
+        printer.send("b", new byte[] {3});
+
+        assertArrayEquals(new byte[] {1, 2, 3}, printer.getReceived());
+        assertEquals(2, printer.getJobsReceived());
+        assertEquals(3, printer.getBytesReceived());
+    }
+
+    @Test
+    public void send_returnsBeforeThePrinterIsIdle() throws Exception {
+        SimulatedPrinter printer = new SimulatedPrinter("sim", 1);
+        printer.setThroughput(2_000);
+        printer.setCommandLatencyMicros(20_000);
+
+        long start = System.nanoTime();
+        printer.send("a", new byte[1000]);
+        long sentMs = (System.nanoTime() - start) / 1_000_000;
+        printer.awaitIdle();
+        long idleMs = (System.nanoTime() - start) / 1_000_000;
+
+        // 20 ms latency, then 1000 bytes at 2 kB/s = 500 ms of printing.
+        assertTrue("send took " + sentMs + " ms", sentMs >= 20 && sentMs < 300);
+        assertTrue("idle after " + idleMs + " ms", idleMs >= 520);
+    }
+
+    @Test
+    public void send_faultsMapToErrorDispositions() throws Exception {
+        SimulatedPrinter printer = new SimulatedPrinter("sim", 1);
+        assertDisposition(printer, SimulatedPrinter.Fault.PAPER_OUT, ErrorDisposition.NEEDS_OPERATOR);
+        assertDisposition(printer, SimulatedPrinter.Fault.COVER_OPEN, ErrorDisposition.NEEDS_OPERATOR);
+        assertDisposition(printer, SimulatedPrinter.Fault.DISCONNECTED, ErrorDisposition.RETRYABLE);
+        assertEquals(0, printer.getJobsReceived());
+        assertEquals(3, printer.getFaultsRaised());
+    }
+
+    @Test
+    public void clearFault_notifiesListenerAndAcceptsJobs() throws Exception {
+        SimulatedPrinter printer = new SimulatedPrinter("sim", 1);
+        AtomicInteger ready = new AtomicInteger();
+        printer.setListener(p -> ready.incrementAndGet());
+        printer.setFault(SimulatedPrinter.Fault.PAPER_OUT);
+        printer.clearFault();
+
+        printer.send("a", new byte[1]);
+        assertEquals(1, ready.get());
+        assertEquals(1, printer.getJobsReceived());
+    }
+
+    @Test
+    public void disconnectNext_failsOnlyThatManySends() throws Exception {
+        SimulatedPrinter printer = new SimulatedPrinter("sim", 1);
+        printer.disconnectNext(2);
+        int dropped = 0;
+        for (int i = 0; i < 4; i++) {
+            try {
+                printer.send("a", new byte[1]);
+            } catch (PrinterUnavailableException e) {
+                dropped++;
+            }
+        }
+        assertEquals(2, dropped);
+        assertEquals(2, printer.getJobsReceived());
+    }
+
+    private static void assertDisposition(SimulatedPrinter printer, SimulatedPrinter.Fault fault,
+                                          ErrorDisposition expected) {
+        printer.setFault(fault);
+        try {
+            printer.send("a", new byte[1]);
+            fail("Expected " + fault + " to stop the job");
+        } catch (PrinterUnavailableException e) {
+            assertEquals(expected, e.getDisposition());
+        }
+        printer.clearFault();
+    }
+}
@@ -0,0 +1,73 @@
+package com.noblesite.epsonlink.startup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class StartupOrchestratorTest {
+
+    private final AtomicLong clock = new AtomicLong(1000);
+    private final StartupTrace trace = new StartupTrace(900, clock::get);
+    // Runs stages inline so the test controls ordering.
+    private final StartupOrchestrator startup = new StartupOrchestrator(Runnable::run, trace);
+
+    @Test
+    public void stage_waitsForSignalBeforeRunning() throws Exception {
+        List<String> ran = new ArrayList<>();
+        CompletableFuture<Void> discovered = startup.stage("discovered", () -> ran.add("discover"));
+        CompletableFuture<Void> initialized = startup.stage("initialized", () -> ran.add("init"),
+            discovered, startup.await("permission"));
+
+        assertEquals(List.of("discover"), ran);
+        assertFalse(initialized.isDone());
+
+        clock.set(1250);
+        assertTrue(startup.signal("permission"));
+        initialized.get(1, TimeUnit.SECONDS);
+
+        assertEquals(List.of("discover", "init"), ran);
+        assertEquals(100, trace.get("discovered"));
+        assertEquals(350, trace.get("permission"));
+        assertEquals(350, trace.get("initialized"));
+    }
+
+    @Test
+    public void signal_onlyCompletesOnce() {
+        assertTrue(startup.signal("permission"));
+        assertFalse(startup.signal("permission"));
+        assertTrue(startup.isSignalled("permission"));
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void stage_failsWhenDependencyFails() throws Exception {
+        CompletableFuture<Void> broken = startup.stage("broken", () -> {
+            throw new IllegalStateException("no printer");
+        });
+        List<String> ran = new ArrayList<>();
+        CompletableFuture<Void> next = startup.stage("next", () -> ran.add("next"), broken);
+        try {
+            next.get(1, TimeUnit.SECONDS);
+        } finally {
+            assertTrue(ran.isEmpty());
+            assertEquals(-1, trace.get("next"));
+        }
+    }
+
+    @Test
+    public void trace_keepsFirstMark() {
+        assertTrue(trace.mark(StartupTrace.FIRST_PAGE));
+        clock.set(5000);
+        assertFalse(trace.mark(StartupTrace.FIRST_PAGE));
+        assertEquals(100, trace.get(StartupTrace.FIRST_PAGE));
+        assertEquals("{\"firstPage\":100}", trace.toJson());
+    }
+}
@@ -0,0 +1,284 @@
+package com.noblesite.epsonlink.transport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.noblesite.epsonlink.metrics.PrintMetrics;
+import com.noblesite.epsonlink.model.JobPriority;
+import com.noblesite.epsonlink.model.PrintJob;
+import com.noblesite.epsonlink.parser.PrintJobFormatException;
+import com.noblesite.epsonlink.parser.PrintJobParser;
+import com.noblesite.epsonlink.queue.BatchJobException;
+import com.noblesite.epsonlink.queue.PrinterUnavailableException;
+import com.noblesite.epsonlink.render.EscPosEncoder;
+import com.noblesite.epsonlink.render.JobRenderer;
+import com.noblesite.epsonlink.render.TemplateCache;
+import com.noblesite.epsonlink.sim.SampleJobs;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class PrintPipelineTest {
+
+    private static final String JOB = "{\"lines\":[{\"type\":\"text\",\"value\":\"Hi\"},{\"type\":\"cut\"}]}";
+
+    private final JobRenderer renderer = new JobRenderer(new EscPosEncoder(StandardCharsets.ISO_8859_1));
+    private final PrintPipeline pipeline = new PrintPipeline(renderer, new TemplateCache(renderer, 4, 4096));
+    private final PrintMetrics metrics = new PrintMetrics();
+
+    @Test
+    public void print_sendsRenderedCommandsAndRecordsStages() throws Exception {
+        RecordingTransport transport = new RecordingTransport(false);
+
+        pipeline.print(new PrintJob(JOB, null), transport, metrics);
+
+        assertArrayEquals(renderer.render(new PrintJobParser().parse(JOB)), transport.sent);
+        assertEquals(1, metrics.getCompleted());
+        assertEquals(transport.sent.length, metrics.getBytesSent());
+        for (PrintMetrics.Stage stage : new PrintMetrics.Stage[] {
+            PrintMetrics.Stage.QUEUE_WAIT, PrintMetrics.Stage.PARSE,
+            PrintMetrics.Stage.RENDER, PrintMetrics.Stage.SEND}) {
+            assertEquals(stage.name(), 1, metrics.getHistogram(stage).getCount());
+        }
+    }
+
+    @Test
+    public void print_unreadyTransportSkipsRenderingAndCountsRetry() throws Exception {
+        RecordingTransport transport = new RecordingTransport(true);
+        try {
+            pipeline.print(new PrintJob("not json", null), transport, metrics);
+            fail("Expected the job to be held");
+        } catch (PrinterUnavailableException expected) {
+            // Held, not failed: the payload was never parsed.
+        }
+        assertNull(transport.sent);
+        assertEquals(1, metrics.getRetries());
+        assertEquals(0, metrics.getFailed());
+    }
+
+    @Test
+    public void print_unknownTemplateFailsJob() throws Exception {
+        RecordingTransport transport = new RecordingTransport(false);
+        try {
+            pipeline.print(new PrintJob("{\"template\":\"missing\"}", null), transport, metrics);
+            fail("Expected the job to fail");
+        } catch (IllegalArgumentException expected) {
+            // Unknown template.
+        }
+        assertNull(transport.sent);
+        assertEquals(1, metrics.getFailed());
+    }
+
+    @Test
+    public void print_queueWaitRecordedOnlyOnFirstAttempt() throws Exception {
+        PrintJob job = new PrintJob(JOB, null);
+        pipeline.print(job, new RecordingTransport(false), metrics);
+        pipeline.print(job, new RecordingTransport(false), metrics);
+
+        assertEquals(1, metrics.getHistogram(PrintMetrics.Stage.QUEUE_WAIT).getCount());
+        assertEquals(2, metrics.getHistogram(PrintMetrics.Stage.SEND).getCount());
+    }
+
+    @Test
+    public void prepare_rendersAheadSoPrintOnlySends() throws Exception {
+        PrintJob job = new PrintJob(JOB, null);
+        pipeline.prepare(job, metrics);
+        RecordingTransport transport = new RecordingTransport(false);
+
+        pipeline.print(job, transport, metrics);
+
+        assertSame(job.getCommands(), transport.sent);
+        assertEquals(1, metrics.getHistogram(PrintMetrics.Stage.PARSE).getCount());
+        assertEquals(1, metrics.getHistogram(PrintMetrics.Stage.RENDER).getCount());
+    }
+
+    @Test
+    public void prepare_leavesInvalidJobsForPrintToFail() throws Exception {
+        PrintJob job = new PrintJob("not json", null);
+        pipeline.prepare(job, metrics);
+
+        assertNull(job.getCommands());
+        try {
+            pipeline.print(job, new RecordingTransport(false), metrics);
+            fail("Expected the job to fail");
+        } catch (PrintJobFormatException expected) {
+            // Reported by print, not by prepare.
+        }
+        assertEquals(1, metrics.getFailed());
+    }
+
+    @Test
+    public void print_waitsForPrinterBeforeSending() throws Exception {
+        StringBuilder calls = new StringBuilder();
+        PrinterTransport transport = new PrinterTransport() {
+            @Override
+            public void ensureReady() {
+                calls.append("ready,");
+            }
+
+            @Override
+            public void awaitIdle() {
+                calls.append("idle,");
+            }
+
+            @Override
+            public void send(String jobId, byte[] commands) {
+                calls.append("send");
+            }
+        };
+
+        pipeline.print(new PrintJob(JOB, null), transport, metrics);
+
+        assertEquals("ready,idle,send", calls.toString());
+        assertEquals(1, metrics.getHistogram(PrintMetrics.Stage.PRINTER_WAIT).getCount());
+    }
+
+    @Test
+    public void printBatch_sendsJobsBackToBackInOneTransmission() throws Exception {
+        PrintJob first = new PrintJob(JOB, null);
+        PrintJob second = new PrintJob(JOB, null);
+        pipeline.prepare(first, metrics);
+        RecordingTransport transport = new RecordingTransport(false);
+
+        pipeline.printBatch(Arrays.asList(first, second), transport, metrics);
+
+        byte[] single = renderer.render(new PrintJobParser().parse(JOB));
+        byte[] expected = new byte[single.length * 2];
+        System.arraycopy(single, 0, expected, 0, single.length);
+        System.arraycopy(single, 0, expected, single.length, single.length);
+        assertArrayEquals(expected, transport.sent);
+        assertEquals(1, transport.sends);
+        assertEquals(2, metrics.getCompleted());
+        assertEquals(1, metrics.getBatches());
+        assertEquals(2, metrics.getHistogram(PrintMetrics.Stage.QUEUE_WAIT).getCount());
+    }
+
+    @Test
+    public void printBatch_invalidJobIsReportedAndNothingSent() throws Exception {
+        PrintJob good = new PrintJob(JOB, null);
+        PrintJob bad = new PrintJob("not json", null);
+        RecordingTransport transport = new RecordingTransport(false);
+        try {
+            pipeline.printBatch(Arrays.asList(good, bad), transport, metrics);
+            fail("Expected the bad job to be reported");
+        } catch (BatchJobException expected) {
+            assertSame(bad, expected.getJob());
+        }
+        assertNull(transport.sent);
+        assertEquals(1, metrics.getFailed());
+        assertEquals(0, metrics.getCompleted());
+    }
+
+    @Test
+    public void print_sendsLongJobOnePartPerCall() throws Exception {
+        pipeline.setChunkBytes(1);
+        PrintJob job = new PrintJob(PrintJob.newId(),
+            "{\"priority\":\"report\",\"lines\":[{\"type\":\"text\",\"value\":\"One\"},{\"type\":\"cut\"},"
+            + "{\"type\":\"text\",\"value\":\"Two\"},{\"type\":\"cut\"}]}", null, null, JobPriority.REPORT);
+        RecordingTransport transport = new RecordingTransport(false);
+
+        pipeline.print(job, transport, metrics);
+        assertEquals(2, job.getChunkCount());
+        assertTrue(job.hasUnsentChunks());
+        assertEquals(0, metrics.getCompleted());
+        byte[] first = transport.sent;
+
+        pipeline.print(job, transport, metrics);
+        assertFalse(job.hasUnsentChunks());
+        assertEquals(1, metrics.getCompleted());
+        assertEquals(2, metrics.getChunks());
+        assertEquals(job.getCommands().length, first.length + transport.sent.length);
+        assertEquals(1, metrics.getQueueWait(JobPriority.REPORT).getCount());
+    }
+
+    @Test
+    public void print_streamsLargeJobInBatches() throws Exception {
+        pipeline.setStreamThreshold(1);
+        pipeline.setChunkBytes(0);
+        String payload = SampleJobs.report(1000);
+        PrintJob job = new PrintJob(payload, null);
+        RecordingTransport transport = new RecordingTransport(false);
+
+        pipeline.print(job, transport, metrics);
+
+        // 1,001 lines, STREAM_LINES at a time.
+        assertEquals((1001 + PrintPipeline.STREAM_LINES - 1) / PrintPipeline.STREAM_LINES, transport.sends);
+        assertArrayEquals(renderer.render(new PrintJobParser().parse(payload)), transport.all.toByteArray());
+        assertNull(job.getCommands());
+        assertFalse(job.isPartlySent());
+        assertEquals(1, metrics.getStreamed());
+        assertEquals(1, metrics.getCompleted());
+        assertEquals(transport.all.size(), metrics.getBytesSent());
+    }
+
+    @Test
+    public void print_streamedJobYieldsAfterCutAndRestoresState() throws Exception {
+        pipeline.setStreamThreshold(1);
+        pipeline.setChunkBytes(1);
+        // The first section runs past the first batch, so the second batch ends at its cut.
+        StringBuilder payload = new StringBuilder("{\"lines\":[{\"type\":\"align\",\"value\":\"center\"},"
+            + "{\"type\":\"style\",\"bold\":true}");
+        for (int i = 0; i < PrintPipeline.STREAM_LINES + 40; i++) {
+            payload.append(",{\"type\":\"text\",\"value\":\"Line ").append(i).append("\"}");
+        }
+        payload.append(",{\"type\":\"cut\"},{\"type\":\"text\",\"value\":\"Two\"},{\"type\":\"cut\"}]}");
+        PrintJob job = new PrintJob(payload.toString(), null);
+        RecordingTransport transport = new RecordingTransport(false);
+
+        pipeline.print(job, transport, metrics);
+        assertTrue(job.isPartlySent());
+        assertEquals(2, transport.sends);
+        assertEquals(0, metrics.getCompleted());
+
+        pipeline.print(job, transport, metrics);
+        assertFalse(job.isPartlySent());
+        assertEquals(1, metrics.getCompleted());
+        assertEquals(3, transport.sends);
+        // The same bytes as the job rendered whole in parts.
+        assertArrayEquals(renderer.render(new PrintJobParser().parse(payload.toString()), 1, new ArrayList<>()),
+            transport.all.toByteArray());
+    }
+
+    @Test
+    public void prepare_leavesStreamedJobUnrendered() {
+        pipeline.setStreamThreshold(JOB.length() - 1);
+        PrintJob job = new PrintJob(JOB, null);
+
+        pipeline.prepare(job, metrics);
+
+        assertTrue(job.isStreamed());
+        assertNull(job.getCommands());
+    }
+
+    private static final class RecordingTransport implements PrinterTransport {
+        private final boolean unavailable;
+        final ByteArrayOutputStream all = new ByteArrayOutputStream();
+        byte[] sent;
+        int sends;
+
+        RecordingTransport(boolean unavailable) {
+            this.unavailable = unavailable;
+        }
+
+        @Override
+        public void ensureReady() throws PrinterUnavailableException {
+            if (unavailable) throw new PrinterUnavailableException("Printer not initialized");
+        }
+
+        @Override
+        public void send(String jobId, byte[] commands) {
+            sent = commands;
+            all.write(commands, 0, commands.length);
+            sends++;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.noblesite.epsonlink.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+public class AssetCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static InputStream body(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(AssetCache.Entry entry) throws Exception {
+        try (InputStream in = entry.open()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void get_readsBackFromDiskInNewInstance() throws Exception {
+        File dir = folder.newFolder("assets");
+        new AssetCache(dir, 1024).put("https://pos/app.js", "text/javascript", "\"v1\"",
+            "Mon, 05 Oct 2026 10:00:00 GMT", null, body("console.log(1)"));
+
+        AssetCache.Entry entry = new AssetCache(dir, 1024).get("https://pos/app.js");
+
+        assertNotNull(entry);
+        assertEquals("text/javascript", entry.getContentType());
+        assertEquals("\"v1\"", entry.getEtag());
+        assertEquals("Mon, 05 Oct 2026 10:00:00 GMT", entry.getLastModified());
+        assertNull(entry.getAllowOrigin());
+        assertEquals(0, entry.getValidatedAtMs());
+        assertEquals("console.log(1)", read(entry));
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedBeyondMaxBytes() throws Exception {
+        AssetCache cache = new AssetCache(folder.newFolder("assets"), 10);
+        cache.put("a", null, null, null, null, body("aaaa"));
+        cache.put("b", null, null, null, null, body("bbbb"));
+        cache.get("a");
+        cache.put("c", null, null, null, null, body("cccc"));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(8, cache.getBytes());
+    }
+
+    @Test
+    public void put_replacesEarlierBodyAndSkipsOversized() throws Exception {
+        AssetCache cache = new AssetCache(folder.newFolder("assets"), 10);
+        cache.put("a", null, null, null, null, body("old"));
+        cache.put("a", null, null, null, null, body("newer"));
+
+        assertNull(cache.put("big", null, null, null, null, body("01234567890")));
+        assertEquals("newer", read(cache.get("a")));
+        assertEquals(1, cache.size());
+        assertEquals(5, cache.getBytes());
+    }
+}
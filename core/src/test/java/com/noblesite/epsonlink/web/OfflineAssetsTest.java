@@ -0,0 +1,198 @@
+package com.noblesite.epsonlink.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OfflineAssetsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, String> files = new ConcurrentHashMap<>();
+    private final Map<String, String[]> extraHeaders = new ConcurrentHashMap<>();
+    private final Map<String, String> redirects = new ConcurrentHashMap<>();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger served = new AtomicInteger();
+    private HttpServer server;
+    private String base;
+
+    @Before
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::serve);
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    /**
+     * Serves {@link #files} with their hash as ETag, answering 304 to a matching If-None-Match.
+     * Paths in {@link #redirects} answer 302; {@link #extraHeaders} adds a header to a path.
+     */
+    private void serve(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String target = redirects.get(path);
+        if (target != null) {
+            exchange.getResponseHeaders().add("Location", base + target);
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+            return;
+        }
+        String body = files.get(path);
+        if (body == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        String etag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModified.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        exchange.getResponseHeaders().add("ETag", etag);
+        String[] extra = extraHeaders.get(path);
+        if (extra != null) {
+            exchange.getResponseHeaders().add(extra[0], extra[1]);
+        }
+        served.incrementAndGet();
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private OfflineAssets assets() throws Exception {
+        return new OfflineAssets(new AssetCache(folder.getRoot(), 1024 * 1024),
+            Collections.singletonList(base + "/*"));
+    }
+
+    private static String read(OfflineAssets.Response response) throws Exception {
+        try (InputStream in = response.getBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void open_servesStoredPageWhenServerIsGone() throws Exception {
+        files.put("/index.html", "<h1>Menu</h1>");
+        OfflineAssets assets = assets();
+
+        OfflineAssets.Response online = assets.open(base + "/index.html", null);
+        assertEquals("text/html", online.getMimeType());
+        assertEquals("utf-8", online.getEncoding());
+        assertEquals("<h1>Menu</h1>", read(online));
+        server.stop(0);
+
+        OfflineAssets.Response offline = assets().open(base + "/index.html", null);
+        assertNotNull(offline);
+        assertEquals("<h1>Menu</h1>", read(offline));
+        assertNull(assets.open(base + "/missing.js", null));
+    }
+
+    /**
+     * Opens a response that must not be stored and checks it was downloaded once and not kept.
+     */
+    private void assertServedOnceNotStored(String path, String body) throws Exception {
+        OfflineAssets assets = assets();
+
+        OfflineAssets.Response response = assets.open(base + path, null);
+
+        assertNotNull(response);
+        assertEquals(body, read(response));
+        assertEquals(1, served.get());
+        assertEquals(0, assets.getCache().size());
+    }
+
+    @Test
+    public void open_passesThroughResponseSettingCookie() throws Exception {
+        files.put("/session.js", "var user = 'anna';");
+        extraHeaders.put("/session.js", new String[] {"Set-Cookie", "sid=1; Path=/"});
+
+        assertServedOnceNotStored("/session.js", "var user = 'anna';");
+    }
+
+    @Test
+    public void open_passesThroughNoStoreResponse() throws Exception {
+        files.put("/menu.html", "<h1>Today</h1>");
+        extraHeaders.put("/menu.html", new String[] {"Cache-Control", "private, no-store"});
+
+        assertServedOnceNotStored("/menu.html", "<h1>Today</h1>");
+    }
+
+    @Test
+    public void open_passesThroughRedirectedResponse() throws Exception {
+        files.put("/login.html", "<form>Sign in</form>");
+        redirects.put("/index.html", "/login.html");
+
+        assertServedOnceNotStored("/index.html", "<form>Sign in</form>");
+    }
+
+    @Test
+    public void precache_revalidatesWithEtag() throws Exception {
+        files.put("/app.js", "v1");
+        OfflineAssets assets = assets();
+        List<String> urls = Collections.singletonList(base + "/app.js");
+
+        assertEquals(1, assets.precache(urls));
+        assertEquals(1, assets.precache(urls));
+        assertEquals(1, notModified.get());
+
+        files.put("/app.js", "v2");
+        assertEquals(1, assets.precache(urls));
+        assertEquals("v2", read(assets.open(base + "/app.js", null)));
+    }
+
+    @Test
+    public void readManifest_resolvesRelativeUrlsAndSkipsComments() throws Exception {
+        files.put("/offline.txt", "# kiosk shell\n/index.html\n\nstyle.css\n" + base + "/js/app.js\n");
+
+        assertEquals(Arrays.asList(base + "/index.html", base + "/style.css", base + "/js/app.js"),
+            OfflineAssets.readManifest(base + "/offline.txt"));
+    }
+
+    @Test
+    public void handles_onlyMatchingGetsOutsideActions() throws Exception {
+        OfflineAssets assets = new OfflineAssets(new AssetCache(folder.getRoot(), 1024),
+            OfflineAssets.parsePatterns(" https://pos.example.com/*.js , https://pos.example.com/index.html,"));
+
+        assertTrue(assets.handles("GET", "https://pos.example.com/js/app.js", null));
+        assertTrue(assets.handles("GET", "https://pos.example.com/index.html", null));
+        assertFalse(assets.handles("POST", "https://pos.example.com/js/app.js", null));
+        assertFalse(assets.handles("GET", "https://pos.example.com/logo.png", null));
+        assertFalse(assets.handles("GET", "https://pos.example.com/action=Status?x.js", null));
+        assertFalse(assets.handles("GET", "https://pos.example.com/js/app.js",
+            Collections.singletonMap("range", "bytes=0-")));
+    }
+}